@@ -48,12 +48,14 @@ public class DemuxerExample {
 		Demuxer demuxer = new Demuxer();
 		demuxer.open(video);
 
+		BufferedImage image = null;
 		MediaFrame mediaFrame;
 		while (reading && (mediaFrame = demuxer.readFrame()) != null) {
 			if (mediaFrame.getType() == MediaFrame.Type.VIDEO) {
 				VideoFrame videoFrame = (VideoFrame) mediaFrame;
 
-				frame.showImage(Image.createImage(videoFrame, BufferedImage.TYPE_3BYTE_BGR));
+				image = Image.createImage(videoFrame, BufferedImage.TYPE_3BYTE_BGR, image);
+				frame.showImage(image);
 
 				//Thread.sleep((long) (1000 / (demuxer.getFrameRate())));
 			}
@@ -61,6 +63,8 @@ public class DemuxerExample {
 				//AudioFrame audioFrame = (AudioFrame) mediaFrame;
 				//Audio.getAudio16(audioFrame);
 			}
+
+			mediaFrame.release();
 		}
 
 		demuxer.close();
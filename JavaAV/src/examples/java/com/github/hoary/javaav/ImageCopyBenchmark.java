@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2013 Alex Andres
+ *
+ * This file is part of JavaAV.
+ *
+ * JavaAV is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version (subject to the "Classpath"
+ * exception as provided in the LICENSE file that accompanied
+ * this code).
+ *
+ * JavaAV is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaAV. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.github.hoary.javaav;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+/**
+ * Compares the bulk row copy of {@link Image} with the previous per-sample copy loop
+ * for a 1080p BGR picture, with matching and with padded row strides.
+ */
+public class ImageCopyBenchmark {
+
+	private static final int WIDTH = 1920;
+
+	private static final int HEIGHT = 1080;
+
+	private static final int WARMUP = 200;
+
+	private static final int ITERATIONS = 500;
+
+
+	public static void main(String[] args) {
+		int step = WIDTH * 3;
+		int paddedStep = step + 64;
+
+		ByteBuffer frame = ByteBuffer.allocateDirect(paddedStep * HEIGHT);
+		byte[] image = new byte[step * HEIGHT];
+
+		benchmark("equal stride ", frame, step, image, step);
+		benchmark("padded stride", frame, paddedStep, image, step);
+
+		// conversion of a whole frame into a new image
+		ByteBuffer data = ByteBuffer.allocateDirect(step * HEIGHT);
+
+		for (int i = 0; i < WARMUP; i++)
+			Image.createImage(data, WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+
+		long start = System.nanoTime();
+
+		for (int i = 0; i < ITERATIONS; i++)
+			Image.createImage(data, WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+
+		System.out.printf("createImage   : %7.3f ms per frame%n", (System.nanoTime() - start) / 1e6 / ITERATIONS);
+	}
+
+	private static void benchmark(String name, ByteBuffer src, int srcStep, byte[] dst, int dstStep) {
+		for (int i = 0; i < WARMUP; i++) {
+			loopCopy(reset(src), srcStep, ByteBuffer.wrap(dst), dstStep, false);
+			Image.copy(reset(src), srcStep, ByteBuffer.wrap(dst), dstStep, false);
+		}
+
+		long start = System.nanoTime();
+
+		for (int i = 0; i < ITERATIONS; i++)
+			loopCopy(reset(src), srcStep, ByteBuffer.wrap(dst), dstStep, false);
+
+		double loop = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+
+		start = System.nanoTime();
+
+		for (int i = 0; i < ITERATIONS; i++)
+			Image.copy(reset(src), srcStep, ByteBuffer.wrap(dst), dstStep, false);
+
+		double bulk = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+
+		System.out.printf("%s : loop %7.3f ms, bulk %7.3f ms per frame, %5.1fx%n", name, loop, bulk, loop / bulk);
+	}
+
+	private static ByteBuffer reset(ByteBuffer buffer) {
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * The previous per-sample copy loop of {@code Image}.
+	 */
+	private static void loopCopy(ByteBuffer srcBuf, int srcStep, ByteBuffer dstBuf, int dstStep, boolean signed) {
+		int w = Math.min(srcStep, dstStep);
+		int srcLine = srcBuf.position();
+		int dstLine = dstBuf.position();
+
+		while (srcLine < srcBuf.capacity() && dstLine < dstBuf.capacity()) {
+			srcBuf.position(srcLine);
+			dstBuf.position(dstLine);
+
+			w = Math.min(Math.min(w, srcBuf.remaining()), dstBuf.remaining());
+
+			for (int x = 0; x < w; x++) {
+				int in = signed ? srcBuf.get() : srcBuf.get() & 0xFF;
+				byte out = (byte) in;
+				dstBuf.put(out);
+			}
+
+			srcLine += srcStep;
+			dstLine += dstStep;
+		}
+	}
+
+}
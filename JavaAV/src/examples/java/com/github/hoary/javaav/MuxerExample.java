@@ -52,6 +52,8 @@ public class MuxerExample {
 				AudioFrame frame = (AudioFrame) mediaFrame;
 				muxer.addSamples(frame);
 			}
+
+			mediaFrame.release();
 		}
 
 		demuxer.close();
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2013 Alex Andres
+ *
+ * This file is part of JavaAV.
+ *
+ * JavaAV is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version (subject to the "Classpath"
+ * exception as provided in the LICENSE file that accompanied
+ * this code).
+ *
+ * JavaAV is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaAV. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.hoary.javaav;
+
+public class RemuxExample {
+
+	public static void main(String[] args) throws Exception {
+		Demuxer demuxer = new Demuxer();
+		demuxer.open("src/examples/resources/bunny.mp4");
+
+		Muxer muxer = new Muxer("src/examples/resources/bunny.mkv");
+
+		for (int i = 0; i < demuxer.getStreamCount(); i++) {
+			MediaType type = demuxer.getStreamMediaType(i);
+
+			if (type == MediaType.VIDEO || type == MediaType.AUDIO)
+				muxer.addStream(demuxer, i);
+		}
+
+		muxer.open();
+
+		MediaPacket packet;
+		while ((packet = demuxer.readPacket()) != null) {
+			MediaType type = demuxer.getStreamMediaType(packet.getStreamIndex());
+
+			if (type == MediaType.VIDEO || type == MediaType.AUDIO)
+				muxer.addPacket(packet);
+
+			packet.clear();
+		}
+
+		demuxer.close();
+		muxer.close();
+	}
+
+}
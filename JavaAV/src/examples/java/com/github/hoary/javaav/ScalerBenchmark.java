@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2013 Alex Andres
+ *
+ * This file is part of JavaAV.
+ *
+ * JavaAV is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version (subject to the "Classpath"
+ * exception as provided in the LICENSE file that accompanied
+ * this code).
+ *
+ * JavaAV is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaAV. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.github.hoary.javaav;
+
+import org.bytedeco.javacpp.avcodec.AVPicture;
+
+import static org.bytedeco.javacpp.avcodec.avpicture_alloc;
+import static org.bytedeco.javacpp.avcodec.avpicture_free;
+
+/**
+ * Compares single-threaded and parallel banded picture conversion of a 4K picture
+ * from YUV420P to BGR24.
+ */
+public class ScalerBenchmark {
+
+	private static final int WIDTH = 3840;
+
+	private static final int HEIGHT = 2160;
+
+	private static final int WARMUP = 10;
+
+	private static final int ITERATIONS = 100;
+
+
+	public static void main(String[] args) throws Exception {
+		PictureFormat srcFormat = new PictureFormat(WIDTH, HEIGHT, PixelFormat.YUV420P);
+		PictureFormat dstFormat = new PictureFormat(WIDTH, HEIGHT, PixelFormat.BGR24);
+
+		AVPicture srcPicture = new AVPicture();
+		AVPicture dstPicture = new AVPicture();
+
+		if (avpicture_alloc(srcPicture, srcFormat.getFormat().value(), WIDTH, HEIGHT) < 0)
+			throw new JavaAVException("Could not allocate input picture.");
+		if (avpicture_alloc(dstPicture, dstFormat.getFormat().value(), WIDTH, HEIGHT) < 0)
+			throw new JavaAVException("Could not allocate output picture.");
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		int[] threadCounts = { 1, 2, 4, cores };
+
+		for (int threads : threadCounts) {
+			PictureResampler resampler = new PictureResampler();
+			resampler.setThreadCount(threads);
+			resampler.open(srcFormat, dstFormat);
+
+			for (int i = 0; i < WARMUP; i++)
+				resampler.resample(srcPicture, dstPicture);
+
+			long start = System.nanoTime();
+
+			for (int i = 0; i < ITERATIONS; i++)
+				resampler.resample(srcPicture, dstPicture);
+
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			System.out.printf("%2d thread(s): %7.2f ms per picture, %6.1f pictures/s%n",
+					threads, seconds * 1000 / ITERATIONS, ITERATIONS / seconds);
+
+			resampler.close();
+		}
+
+		avpicture_free(srcPicture);
+		avpicture_free(dstPicture);
+	}
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2013 Alex Andres
+ *
+ * This file is part of JavaAV.
+ *
+ * JavaAV is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version (subject to the "Classpath"
+ * exception as provided in the LICENSE file that accompanied
+ * this code).
+ *
+ * JavaAV is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaAV. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.github.hoary.javaav;
+
+import org.bytedeco.javacpp.avcodec.AVPicture;
+
+import java.nio.ByteBuffer;
+
+import static org.bytedeco.javacpp.avcodec.avpicture_alloc;
+import static org.bytedeco.javacpp.avcodec.avpicture_free;
+
+/**
+ * Compares the throughput and quality of the scaler profiles. Each profile scales a
+ * synthetic 4K picture down to 1080p. The quality is measured as the luma PSNR of a
+ * picture that was scaled down and up again with the same profile.
+ */
+public class ScalerProfileBenchmark {
+
+	private static final int SRC_WIDTH = 3840;
+
+	private static final int SRC_HEIGHT = 2160;
+
+	private static final int DST_WIDTH = 1920;
+
+	private static final int DST_HEIGHT = 1080;
+
+	private static final int WARMUP = 5;
+
+	private static final int ITERATIONS = 50;
+
+
+	public static void main(String[] args) throws Exception {
+		PictureFormat srcFormat = new PictureFormat(SRC_WIDTH, SRC_HEIGHT, PixelFormat.YUV420P);
+		PictureFormat dstFormat = new PictureFormat(DST_WIDTH, DST_HEIGHT, PixelFormat.YUV420P);
+
+		AVPicture source = allocate(srcFormat);
+		AVPicture scaled = allocate(dstFormat);
+		AVPicture restored = allocate(srcFormat);
+
+		fillPicture(source);
+
+		for (ScalerProfile profile : ScalerProfile.values()) {
+			PictureResampler down = new PictureResampler();
+			down.setProfile(profile);
+			down.open(srcFormat, dstFormat);
+
+			PictureResampler up = new PictureResampler();
+			up.setProfile(profile);
+			up.open(dstFormat, srcFormat);
+
+			for (int i = 0; i < WARMUP; i++)
+				down.resample(source, scaled);
+
+			long start = System.nanoTime();
+
+			for (int i = 0; i < ITERATIONS; i++)
+				down.resample(source, scaled);
+
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			up.resample(scaled, restored);
+
+			System.out.printf("%-8s %7.2f ms per picture, %6.1f pictures/s, PSNR %5.2f dB%n",
+					profile, seconds * 1000 / ITERATIONS, ITERATIONS / seconds, psnr(source, restored));
+
+			down.close();
+			up.close();
+		}
+
+		avpicture_free(source);
+		avpicture_free(scaled);
+		avpicture_free(restored);
+	}
+
+	private static AVPicture allocate(PictureFormat format) throws JavaAVException {
+		AVPicture picture = new AVPicture();
+
+		if (avpicture_alloc(picture, format.getFormat().value(), format.getWidth(), format.getHeight()) < 0)
+			throw new JavaAVException("Could not allocate picture " + format);
+
+		return picture;
+	}
+
+	/**
+	 * Fill the picture with gradients and fine detail.
+	 */
+	private static void fillPicture(AVPicture picture) {
+		for (int plane = 0; plane < 3; plane++) {
+			int width = plane == 0 ? SRC_WIDTH : SRC_WIDTH / 2;
+			int height = plane == 0 ? SRC_HEIGHT : SRC_HEIGHT / 2;
+			int lineSize = picture.linesize(plane);
+			ByteBuffer data = picture.data(plane).capacity(lineSize * height).asBuffer();
+
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					double gradient = 96 + 64 * Math.sin((x + plane * 300) / 400.0) * Math.cos(y / 300.0);
+					double detail = 32 * Math.sin(x * x / 9000.0 + y / 7.0);
+
+					data.put(y * lineSize + x, (byte) Math.max(0, Math.min(255, (int) (gradient + detail))));
+				}
+			}
+		}
+	}
+
+	private static double psnr(AVPicture a, AVPicture b) {
+		int lineSizeA = a.linesize(0);
+		int lineSizeB = b.linesize(0);
+		ByteBuffer dataA = a.data(0).capacity(lineSizeA * SRC_HEIGHT).asBuffer();
+		ByteBuffer dataB = b.data(0).capacity(lineSizeB * SRC_HEIGHT).asBuffer();
+
+		double error = 0;
+
+		for (int y = 0; y < SRC_HEIGHT; y++) {
+			for (int x = 0; x < SRC_WIDTH; x++) {
+				int diff = (dataA.get(y * lineSizeA + x) & 0xFF) - (dataB.get(y * lineSizeB + x) & 0xFF);
+				error += diff * diff;
+			}
+		}
+
+		double mse = error / (SRC_WIDTH * SRC_HEIGHT);
+
+		return 10 * Math.log10(255 * 255 / mse);
+	}
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2013 Alex Andres
+ *
+ * This file is part of JavaAV.
+ *
+ * JavaAV is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version (subject to the "Classpath"
+ * exception as provided in the LICENSE file that accompanied
+ * this code).
+ *
+ * JavaAV is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaAV. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.github.hoary.javaav;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+
+/**
+ * Compares the startup time of the eager and the lazy startup mode. Each run
+ * starts a new JVM that initializes JavaAV and looks up a decoder, as a short-lived
+ * file transcoding worker would do.
+ */
+public class StartupBenchmark {
+
+	private static final int RUNS = 10;
+
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0) {
+			runWorker(StartupMode.valueOf(args[0]));
+			return;
+		}
+
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		String classPath = System.getProperty("java.class.path");
+
+		for (StartupMode mode : StartupMode.values()) {
+			long initTime = 0;
+			long processTime = 0;
+			String error = null;
+
+			for (int i = 0; i < RUNS; i++) {
+				long start = System.nanoTime();
+
+				Process process = new ProcessBuilder(java, "-cp", classPath, StartupBenchmark.class.getName(), mode.name())
+						.redirectErrorStream(true)
+						.start();
+
+				BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+				String line;
+				String first = null;
+				String result = null;
+
+				while ((line = reader.readLine()) != null) {
+					if (first == null)
+						first = line;
+
+					result = line;
+				}
+
+				if (process.waitFor() != 0) {
+					// e.g. device libraries with missing dependencies
+					error = first;
+					break;
+				}
+
+				processTime += System.nanoTime() - start;
+				initTime += Long.parseLong(result.trim());
+			}
+
+			if (error != null)
+				System.out.printf("%-5s: worker failed, %s%n", mode, error);
+			else
+				System.out.printf("%-5s: %7.2f ms init, %7.2f ms per worker JVM%n",
+						mode, initTime / 1e6 / RUNS, processTime / 1e6 / RUNS);
+		}
+	}
+
+	private static void runWorker(StartupMode mode) throws Exception {
+		long start = System.nanoTime();
+
+		JavaAV.setStartupMode(mode);
+
+		Codec codec = Codec.getDecoderById(CodecID.H264);
+
+		if (codec == null)
+			throw new Exception("Decoder not found.");
+
+		System.out.println(System.nanoTime() - start);
+	}
+
+}
@@ -149,4 +149,14 @@ public class AudioFormat {
 				channels == other.channels && sampleRate == other.sampleRate;
 	}
 
+	@Override
+	public int hashCode() {
+		int result = sampleFormat != null ? sampleFormat.hashCode() : 0;
+		result = 31 * result + (channelLayout != null ? channelLayout.hashCode() : 0);
+		result = 31 * result + channels;
+		result = 31 * result + sampleRate;
+
+		return result;
+	}
+
 }
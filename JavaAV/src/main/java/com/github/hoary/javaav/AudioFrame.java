@@ -50,6 +50,15 @@ public class AudioFrame extends MediaFrame {
 	/** The number of samples per audio plane. */
 	private int samples;
 
+	/** The number of samples the planes can hold. */
+	private final int capacity;
+
+	/** The pool this frame returns to when released, if any. */
+	private AudioFramePool pool;
+
+	/** Whether this frame is idle in its pool. */
+	private boolean idle;
+
 
 	/**
 	 * Creates a new {@code AudioFrame} with descriptive format and allocates memory
@@ -66,6 +75,7 @@ public class AudioFrame extends MediaFrame {
 
 		this.format = format;
 		this.samples = samples;
+		this.capacity = samples;
 		this.planePointers = new BytePointer[planes];
 		this.samplePointer = new PointerPointer(planes);
 
@@ -141,6 +151,15 @@ public class AudioFrame extends MediaFrame {
 		this.samples = samples;
 	}
 
+	/**
+	 * Get the number of samples the planes of this frame can hold.
+	 *
+	 * @return the sample capacity of this frame.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
 	/**
 	 * Get the number of samples in this frame.
 	 *
@@ -160,10 +179,52 @@ public class AudioFrame extends MediaFrame {
 		return planePointers != null && planePointers.length > 0;
 	}
 
+	/**
+	 * Release this frame. Frames obtained from a pool, e.g. frames returned by a
+	 * {@code Decoder}, return to their pool and must not be used afterwards. Other
+	 * frames free their sample buffers, see {@link #clear()}.
+	 */
+	@Override
+	public void release() {
+		AudioFramePool framePool;
+
+		synchronized (this) {
+			if (idle)
+				return;
+
+			framePool = pool;
+
+			if (framePool != null) {
+				pool = null;
+				idle = true;
+			}
+		}
+
+		if (framePool != null)
+			framePool.recycle(this);
+		else
+			clear();
+	}
+
+	/**
+	 * Assign the pool this frame returns to when released.
+	 *
+	 * @param pool the owning pool.
+	 */
+	synchronized void setPool(AudioFramePool pool) {
+		this.pool = pool;
+		this.idle = false;
+	}
+
 	/**
 	 * Free the memory of sample buffers.
 	 */
 	public void clear() {
+		synchronized (this) {
+			// a cleared frame must not return to its pool
+			pool = null;
+		}
+
 		if (planePointers != null) {
 			for (int i = 0; i < getPlaneCount(); i++) {
 				av_free(planePointers[i].position(0));
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2013 Alex Andres
+ *
+ * This file is part of JavaAV.
+ *
+ * JavaAV is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version (subject to the "Classpath"
+ * exception as provided in the LICENSE file that accompanied
+ * this code).
+ *
+ * JavaAV is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaAV. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.github.hoary.javaav;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.bytedeco.javacpp.avutil.AV_NOPTS_VALUE;
+
+/**
+ * {@code AudioFramePool} recycles {@code AudioFrame}s to avoid allocating and
+ * freeing native sample memory for each decoded frame. Frames are pooled by their
+ * {@code AudioFormat} and sample count. A frame obtained from the pool returns to it
+ * when the frame is released. The pool is thread-safe, thus frames may be released
+ * on any thread.
+ *
+ * @author Alex Andres
+ */
+class AudioFramePool {
+
+	/** The maximum number of idle frames kept per format and sample count. */
+	private static final int MAX_IDLE_FRAMES = 16;
+
+	/** Idle frames mapped by format and sample count. */
+	private final Map<Key, ArrayDeque<AudioFrame>> idleFrames = new HashMap<Key, ArrayDeque<AudioFrame>>();
+
+	/** Whether this pool is closed. Released frames are freed if closed. */
+	private boolean closed = false;
+
+
+	/**
+	 * Get a frame for the specified format and sample count. Returns an idle frame if
+	 * available, otherwise a new frame is allocated. The sample data of the returned
+	 * frame is undefined.
+	 *
+	 * @param format  the audio format.
+	 * @param samples the number of samples.
+	 *
+	 * @return an audio frame with the specified format and sample count.
+	 */
+	AudioFrame acquire(AudioFormat format, int samples) {
+		AudioFrame frame = null;
+
+		synchronized (this) {
+			ArrayDeque<AudioFrame> frames = idleFrames.get(new Key(format, samples));
+
+			if (frames != null)
+				frame = frames.poll();
+		}
+
+		if (frame == null)
+			frame = new AudioFrame(format, samples);
+
+		frame.setPool(this);
+		frame.setSampleCount(samples);
+		frame.setKeyFrame(false);
+		frame.setTimestamp(AV_NOPTS_VALUE);
+
+		return frame;
+	}
+
+	/**
+	 * Return a released frame to this pool. The frame is freed if this pool is closed
+	 * or enough idle frames of the same kind are available.
+	 *
+	 * @param frame the released frame.
+	 */
+	void recycle(AudioFrame frame) {
+		synchronized (this) {
+			if (!closed) {
+				Key key = new Key(frame.getAudioFormat(), frame.getCapacity());
+				ArrayDeque<AudioFrame> frames = idleFrames.get(key);
+
+				if (frames == null) {
+					frames = new ArrayDeque<AudioFrame>();
+					idleFrames.put(key, frames);
+				}
+
+				if (frames.size() < MAX_IDLE_FRAMES) {
+					frames.add(frame);
+					return;
+				}
+			}
+		}
+
+		frame.clear();
+	}
+
+	/**
+	 * Free all idle frames. Frames released after closing are freed immediately.
+	 */
+	synchronized void close() {
+		for (ArrayDeque<AudioFrame> frames : idleFrames.values()) {
+			for (AudioFrame frame : frames)
+				frame.clear();
+		}
+
+		idleFrames.clear();
+		closed = true;
+	}
+
+
+	/**
+	 * Identifies frames with equal format and sample count.
+	 */
+	private static class Key {
+
+		private final SampleFormat sampleFormat;
+
+		private final ChannelLayout channelLayout;
+
+		private final int channels;
+
+		private final int sampleRate;
+
+		private final int samples;
+
+
+		Key(AudioFormat format, int samples) {
+			this.sampleFormat = format.getSampleFormat();
+			this.channelLayout = format.getChannelLayout();
+			this.channels = format.getChannels();
+			this.sampleRate = format.getSampleRate();
+			this.samples = samples;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+
+			Key other = (Key) obj;
+
+			return sampleFormat == other.sampleFormat && channelLayout == other.channelLayout &&
+					channels == other.channels && sampleRate == other.sampleRate &&
+					samples == other.samples;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = sampleFormat != null ? sampleFormat.hashCode() : 0;
+			result = 31 * result + (channelLayout != null ? channelLayout.hashCode() : 0);
+			result = 31 * result + channels;
+			result = 31 * result + sampleRate;
+			result = 31 * result + samples;
+
+			return result;
+		}
+
+	}
+
+}
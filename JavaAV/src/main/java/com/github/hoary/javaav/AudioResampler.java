@@ -21,28 +21,34 @@
 
 package com.github.hoary.javaav;
 
+import org.bytedeco.javacpp.BytePointer;
 import org.bytedeco.javacpp.PointerPointer;
 import org.bytedeco.javacpp.swresample.SwrContext;
 
-import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
-import static org.bytedeco.javacpp.avutil.AV_ROUND_DOWN;
+import static org.bytedeco.javacpp.avutil.AV_NOPTS_VALUE;
+import static org.bytedeco.javacpp.avutil.AV_ROUND_UP;
 import static org.bytedeco.javacpp.avutil.AV_SAMPLE_FMT_NONE;
 import static org.bytedeco.javacpp.avutil.av_get_bytes_per_sample;
 import static org.bytedeco.javacpp.avutil.av_get_channel_layout_nb_channels;
 import static org.bytedeco.javacpp.avutil.av_opt_set_int;
+import static org.bytedeco.javacpp.avutil.av_rescale;
 import static org.bytedeco.javacpp.avutil.av_rescale_rnd;
 import static org.bytedeco.javacpp.avutil.av_sample_fmt_is_planar;
 import static org.bytedeco.javacpp.swresample.swr_alloc;
 import static org.bytedeco.javacpp.swresample.swr_convert;
 import static org.bytedeco.javacpp.swresample.swr_free;
+import static org.bytedeco.javacpp.swresample.swr_get_delay;
 import static org.bytedeco.javacpp.swresample.swr_init;
+import static org.bytedeco.javacpp.swresample.swr_next_pts;
 
 /**
  * The AudioResampler converts audio samples from one audio format to another.
+ * Converted samples are written directly into frames taken from a pool of this
+ * resampler. Samples that do not fill a whole output frame are kept until the next
+ * invocation.
  *
  * @author Alex Andres
  */
@@ -51,12 +57,30 @@ public class AudioResampler {
 	/** The re-sample context */
 	private SwrContext convertContext;
 
-	/** Re-sampled sample buffer */
-	private RingBuffer buffer;
+	/** Pool of output frames */
+	private final AudioFramePool framePool = new AudioFramePool();
 
-	/** Amount of samples per output frame */
+	/** Output frame that is not completely filled yet */
+	private AudioFrame pendingFrame;
+
+	/** Amount of samples in the pending output frame */
+	private int pendingSamples;
+
+	/** Output pointers to the free space of the pending frame */
+	private PointerPointer outPointer;
+
+	/** Size of one output sample of one plane in bytes */
+	private int sampleSize;
+
+	/** Timestamp of the next converted sample in units of the output sample rate */
+	private long nextPts = AV_NOPTS_VALUE;
+
+	/** Amount of samples per output frame, or 0 for variable frame sizes */
 	private int frameSamples;
 
+	/** Reusable list of frames returned by {@link #resample(AudioFrame)} */
+	private final List<AudioFrame> frames = new ArrayList<AudioFrame>();
+
 	/** Input audio format */
 	private AudioFormat srcFormat;
 
@@ -72,7 +96,8 @@ public class AudioResampler {
 	 *
 	 * @param srcFormat the input audio format.
 	 * @param dstFormat the output audio format.
-	 * @param frameSamples amount of samples per output frame.
+	 * @param frameSamples amount of samples per output frame, or 0 to pass all converted
+	 *                     samples in frames of variable size.
 	 *
 	 * @throws JavaAVException if resampler cannot be opened.
 	 */
@@ -88,7 +113,7 @@ public class AudioResampler {
 		this.srcFormat = srcFormat;
 		this.dstFormat = dstFormat;
 
-		this.frameSamples = frameSamples;
+		this.frameSamples = Math.max(frameSamples, 0);
 
 		convertContext = swr_alloc();
 
@@ -112,7 +137,12 @@ public class AudioResampler {
 		if (swr_init(convertContext) < 0)
 			throw new JavaAVException("Could not initialize the conversion context.");
 
-		buffer = new RingBuffer(1024 * 1000, dstFormat.getChannels());
+		int outputChannels = dstFormat.getChannels();
+		int outputFormat = dstFormat.getSampleFormat().value();
+		boolean planar = av_sample_fmt_is_planar(outputFormat) != 0;
+
+		sampleSize = av_get_bytes_per_sample(outputFormat) * (planar ? 1 : outputChannels);
+		outPointer = new PointerPointer(planar ? outputChannels : 1);
 	}
 
 	/**
@@ -125,74 +155,198 @@ public class AudioResampler {
 	 * @param frame the audio frame with samples to be resampled.
 	 *
 	 * @return one or more audio frames with resampled audio.
+	 *
+	 * @throws JavaAVException if the samples could not be resampled.
+	 *
+	 * @see #resample(AudioFrame, List)
 	 */
-	public AudioFrame[] resample(AudioFrame frame) {
-		List<AudioFrame> frames = new ArrayList<AudioFrame>();
+	public AudioFrame[] resample(AudioFrame frame) throws JavaAVException {
+		frames.clear();
 
-		int outputChannels = dstFormat.getChannels();
-		int outputRate = dstFormat.getSampleRate();
-		int outputFormat = dstFormat.getSampleFormat().value();
-		int inputRate = srcFormat.getSampleRate();
+		resample(frame, frames);
+
+		AudioFrame[] result = frames.toArray(new AudioFrame[frames.size()]);
+
+		frames.clear();
+
+		return result;
+	}
 
-		int planes = av_sample_fmt_is_planar(outputFormat) != 0 ? outputChannels : 1;
-		int destSamples = Math.max(frameSamples, (int) av_rescale_rnd(frameSamples, outputRate, inputRate, AV_ROUND_DOWN));
+	/**
+	 * Resample audio samples within the provided audio frame and add the completed output
+	 * frames to the provided list. The list is not cleared, thus it can be reused between
+	 * calls. The audio format of the input audio frame must be equal to the audio format
+	 * previously specified with {@link #open(AudioFormat, AudioFormat, int)}. Samples are
+	 * converted straight into the output frames. Samples that do not fill a whole output
+	 * frame are kept until the next invocation. Passing {@code null} drains the resampler,
+	 * see {@link #flush(List)}.
+	 * <p/>
+	 * The output frames carry timestamps derived from the input timestamps. The delay
+	 * of the resampler is taken into account, thus the output timestamps stay in sync
+	 * with the input. Input frames without timestamp continue the previous timestamps.
+	 * <p/>
+	 * The output frames are taken from a pool of this resampler and should be released
+	 * with {@link AudioFrame#release()} when no longer needed. This way resampling does
+	 * not allocate memory once the pool is filled.
+	 *
+	 * @param frame  the audio frame with samples to be resampled.
+	 * @param frames the list that receives the resampled frames.
+	 *
+	 * @return the number of frames added to the list.
+	 *
+	 * @throws JavaAVException if the samples could not be resampled.
+	 */
+	public int resample(AudioFrame frame, List<? super AudioFrame> frames) throws JavaAVException {
+		if (frame == null)
+			return flush(frames);
 
-		// use enough space to avoid buffering
-		AudioFrame tempFrame = new AudioFrame(dstFormat, destSamples * 4);
+		if (convertContext == null)
+			throw new JavaAVException("Could not resample audio, resampler is not opened.");
 
-		int inSamples = 0;
-		int outSamples = frameSamples * 4; // make sure we get everything out
+		long timestamp = frame.getTimestamp();
 
-		PointerPointer inPointer = null;
+		if (timestamp != AV_NOPTS_VALUE) {
+			long inRate = srcFormat.getSampleRate();
+			long outRate = dstFormat.getSampleRate();
 
-		if (frame != null) {
-			inSamples = frame.getSampleCount();
-			inPointer = frame.getData();
-		}
+			// timestamps of swr are in units of 1 / (input rate * output rate)
+			long pts = swr_next_pts(convertContext, av_rescale(timestamp, inRate * outRate, 1000000));
 
-		if (outSamples <= 0)
-			outSamples = inSamples;
+			// the next converted sample follows the buffered samples
+			nextPts = av_rescale(pts, 1, inRate);
+		}
 
-		int resampled = swr_convert(convertContext, tempFrame.getData(), outSamples, inPointer, inSamples);
+		return convert(frame.getData(), frame.getSampleCount(), frames, false);
+	}
 
-		// re-sampled plane size
-		int limit = (resampled * outputChannels * av_get_bytes_per_sample(outputFormat)) / planes;
+	/**
+	 * Drain all samples buffered by the resampler at the end of a stream and add the
+	 * remaining output frames to the provided list. The last frame may contain fewer
+	 * samples than specified with {@link #open(AudioFormat, AudioFormat, int)}. The
+	 * frames are taken from the pool of this resampler, see {@link #resample(AudioFrame, List)}.
+	 *
+	 * @param frames the list that receives the resampled frames.
+	 *
+	 * @return the number of frames added to the list.
+	 *
+	 * @throws JavaAVException if the buffered samples could not be resampled.
+	 */
+	public int flush(List<? super AudioFrame> frames) throws JavaAVException {
+		if (convertContext == null)
+			throw new JavaAVException("Could not flush audio, resampler is not opened.");
 
-		// write samples into buffer in case the current frame cannot be fully filled
-		for (int i = 0; i < tempFrame.getPlaneCount(); i++) {
-			ByteBuffer buf = tempFrame.getPlane(i).asByteBuffer();
-			buf.limit(Math.min(limit, buf.capacity()));
+		int count = convert(null, 0, frames, true);
 
-			buffer.write(i, buf);
+		if (pendingFrame != null) {
+			if (pendingSamples > 0) {
+				completeFrame(frames);
+				count++;
+			}
+			else {
+				pendingFrame.release();
+				pendingFrame = null;
+			}
 		}
 
-		// output frame plane size
-		int bufferSize = (destSamples * outputChannels * av_get_bytes_per_sample(outputFormat)) / planes;
+		return count;
+	}
 
-		// get buffered samples that fit in one frame
-		while (buffer.available() >= bufferSize) {
-			AudioFrame outFrame = new AudioFrame(dstFormat, destSamples);
+	/**
+	 * Get the timestamp of the next resampled sample in microseconds. This timestamp
+	 * accounts for the samples buffered by the resampler.
+	 *
+	 * @return the timestamp of the next output sample.
+	 */
+	public long getNextTimestamp() {
+		if (nextPts == AV_NOPTS_VALUE)
+			return AV_NOPTS_VALUE;
 
-			// go through each buffered plane
-			for (int i = 0; i < planes; i++) {
-				byte[] data = new byte[bufferSize];
+		return av_rescale(nextPts - pendingSamples, 1000000, dstFormat.getSampleRate());
+	}
 
-				try {
-					buffer.read(i, data);
-				}
-				catch (IOException e) {
-					e.printStackTrace();
+	/**
+	 * Convert the provided input samples straight into output frames. Completed frames
+	 * are added to the list.
+	 *
+	 * @param inPointer the input sample planes, or {@code null} to drain the resampler.
+	 * @param inSamples the number of input samples.
+	 * @param frames    the list that receives completed frames.
+	 * @param flush     whether the resampler is drained.
+	 *
+	 * @return the number of frames added to the list.
+	 *
+	 * @throws JavaAVException if the samples could not be resampled.
+	 */
+	private int convert(PointerPointer inPointer, int inSamples, List<? super AudioFrame> frames,
+						boolean flush) throws JavaAVException {
+		int count = 0;
+
+		if (nextPts == AV_NOPTS_VALUE)
+			nextPts = 0;
+
+		while (true) {
+			if (pendingFrame == null) {
+				int samples = frameSamples;
+
+				if (samples == 0) {
+					// enough space for all buffered and provided samples
+					long delay = swr_get_delay(convertContext, srcFormat.getSampleRate());
+					samples = (int) av_rescale_rnd(delay + inSamples, dstFormat.getSampleRate(),
+							srcFormat.getSampleRate(), AV_ROUND_UP);
+
+					if (samples == 0)
+						break;
 				}
 
-				outFrame.getPlane(i).position(0).put(data);
+				pendingFrame = framePool.acquire(dstFormat, samples);
+				pendingSamples = 0;
 			}
 
-			outFrame.setSampleCount(frameSamples);
+			int space = pendingFrame.getCapacity() - pendingSamples;
+
+			for (int i = 0; i < pendingFrame.getPlaneCount(); i++) {
+				BytePointer plane = pendingFrame.getPlane(i);
+				outPointer.put(i, plane.position(pendingSamples * sampleSize));
+				plane.position(0);
+			}
 
-			frames.add(outFrame);
+			// the input samples are passed once, swr buffers what does not fit
+			int converted = swr_convert(convertContext, outPointer, space, inPointer, inSamples);
+
+			if (converted < 0)
+				throw new JavaAVException("Could not resample audio samples.");
+
+			inSamples = 0;
+			pendingSamples += converted;
+			nextPts += converted;
+
+			if (pendingSamples == pendingFrame.getCapacity() || (frameSamples == 0 && pendingSamples > 0)) {
+				completeFrame(frames);
+				count++;
+			}
+
+			if (converted < space || (frameSamples == 0 && !flush))
+				break;
 		}
 
-		return frames.toArray(new AudioFrame[0]);
+		return count;
+	}
+
+	/**
+	 * Pass the pending output frame with its timestamp to the list.
+	 *
+	 * @param frames the list that receives the frame.
+	 */
+	private void completeFrame(List<? super AudioFrame> frames) {
+		long pts = nextPts - pendingSamples;
+
+		pendingFrame.setSampleCount(pendingSamples);
+		pendingFrame.setTimestamp(av_rescale(pts, 1000000, dstFormat.getSampleRate()));
+
+		frames.add(pendingFrame);
+
+		pendingFrame = null;
+		pendingSamples = 0;
 	}
 
 	/**
@@ -204,6 +358,14 @@ public class AudioResampler {
 			swr_free(convertContext);
 			convertContext = null;
 		}
+
+		if (pendingFrame != null) {
+			pendingFrame.release();
+			pendingFrame = null;
+		}
+
+		framePool.close();
+		nextPts = AV_NOPTS_VALUE;
 	}
 	
 }
@@ -21,18 +21,32 @@
 
 package com.github.hoary.javaav;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This class is used to capture images from input devices. {@code Camera} is a
  * convenience class that makes use of {@code Demuxer} to retrieve images from
  * input devices.
+ * <p/>
+ * By default frames are read synchronously on the calling thread. If the caller
+ * is slower than the device, frames pile up in the device buffer and the latency
+ * grows. In asynchronous capture mode, see {@link #startCapture()}, a capture thread
+ * continuously reads frames and keeps only the newest one, thus consumers always get
+ * the most recent frame. Frames replaced before they were taken are counted as
+ * dropped frames.
  *
  * @author Alex Andres
  */
 public class Camera {
 
+	private final static Logger LOGGER = LoggerFactory.getLogger(Camera.class.getName());
+
 	/** Represents the current camera state: capturing or not. */
 	private final AtomicBoolean open = new AtomicBoolean(false);
 
@@ -45,6 +59,30 @@ public class Camera {
 	/** The input source, e.g. vfwcap, dshow (Windows) or video4linux2, v4l2 (Linux) */
 	private String format;
 
+	/** The listeners notified about captured frames. */
+	private final List<CameraListener> listeners = new CopyOnWriteArrayList<CameraListener>();
+
+	/** Guards the latest frame and the capture state. */
+	private final Object lock = new Object();
+
+	/** The capture thread. */
+	private Thread captureThread;
+
+	/** Whether the capture thread should continue to capture. */
+	private boolean capturing;
+
+	/** The newest captured frame that has not been taken yet. */
+	private VideoFrame latestFrame;
+
+	/** The error that stopped the capture thread. */
+	private JavaAVException captureError;
+
+	/** Number of frames captured by the capture thread. */
+	private long capturedFrames;
+
+	/** Number of captured frames replaced before they were taken. */
+	private long droppedFrames;
+
 
 	/**
 	 * Creates a new {@code Camera} capture for specified device that captures frames
@@ -73,11 +111,35 @@ public class Camera {
 	 * @return one picture from this camera, or {@code null} if an error occurs.
 	 */
 	public BufferedImage getImage() throws JavaAVException {
-		if (open.get()) {
+		return getImage(null);
+	}
+
+	/**
+	 * Retrieve one picture from this camera into the specified image. The image is
+	 * reused if it is of type {@code 3BYTE_BGR} and matches the captured picture size,
+	 * otherwise a new image is returned. Passing the returned image on every call
+	 * avoids allocating a new image per captured frame. In asynchronous capture mode
+	 * this method waits for the next frame captured since the last call.
+	 *
+	 * @param image the image to reuse, may be {@code null}.
+	 *
+	 * @return one picture from this camera, or {@code null} if an error occurs.
+	 */
+	public BufferedImage getImage(BufferedImage image) throws JavaAVException {
+		if (isCapturing()) {
+			VideoFrame videoFrame = takeFrame(0);
+			if (videoFrame != null) {
+				image = Image.createImage(videoFrame, BufferedImage.TYPE_3BYTE_BGR, image);
+				videoFrame.release();
+				return image;
+			}
+		}
+		else if (open.get()) {
 			MediaFrame mediaFrame = demuxer.readFrame();
-			if (mediaFrame.getType() == MediaFrame.Type.VIDEO) {
+			if (mediaFrame != null && mediaFrame.getType() == MediaFrame.Type.VIDEO) {
 				VideoFrame videoFrame = (VideoFrame) mediaFrame;
-				BufferedImage image = Image.createImage(videoFrame, BufferedImage.TYPE_3BYTE_BGR);
+				image = Image.createImage(videoFrame, BufferedImage.TYPE_3BYTE_BGR, image);
+				videoFrame.release();
 				return image;
 			}
 		}
@@ -95,7 +157,8 @@ public class Camera {
 	 */
 	public void open(int width, int height, double frameRate) throws JavaAVException {
 		if (!open.get()) {
-			String input = "video=" + device;
+			// only DirectShow expects the device type in front of the device name
+			String input = "dshow".equals(format) ? "video=" + device : device;
 
 			demuxer = new Demuxer();
 			demuxer.setInputFormat(format);
@@ -108,15 +171,189 @@ public class Camera {
 		}
 	}
 
+	/**
+	 * Start capturing frames on a dedicated thread. The capture thread reads frames
+	 * as fast as the device delivers them, notifies the registered listeners and
+	 * keeps only the newest frame, which can be retrieved with {@link #takeFrame(long)}
+	 * or {@link #getImage(BufferedImage)}.
+	 *
+	 * @throws JavaAVException if the camera is not opened.
+	 */
+	public void startCapture() throws JavaAVException {
+		if (!open.get())
+			throw new JavaAVException("Could not start capture, camera is not opened.");
+
+		synchronized (lock) {
+			if (captureThread != null)
+				return;
+
+			capturing = true;
+			captureError = null;
+
+			captureThread = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					capture();
+				}
+			}, "JavaAV Camera Capture");
+			captureThread.setDaemon(true);
+			captureThread.start();
+		}
+	}
+
+	/**
+	 * Stop the capture thread and release the frame that has not been taken. After
+	 * this method returns frames are read synchronously again.
+	 */
+	public void stopCapture() {
+		Thread thread;
+
+		synchronized (lock) {
+			capturing = false;
+			thread = captureThread;
+			captureThread = null;
+
+			lock.notifyAll();
+		}
+
+		if (thread != null) {
+			boolean interrupted = false;
+
+			// the capture thread finishes after reading the current frame
+			while (thread.isAlive()) {
+				try {
+					thread.join();
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+
+		synchronized (lock) {
+			if (latestFrame != null) {
+				latestFrame.release();
+				latestFrame = null;
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the asynchronous capture mode has been started. The capture
+	 * thread may have stopped already at the end of input or due to an error.
+	 *
+	 * @return true if asynchronous capturing has been started, false otherwise.
+	 */
+	public boolean isCapturing() {
+		synchronized (lock) {
+			return captureThread != null;
+		}
+	}
+
+	/**
+	 * Take the newest captured frame. Each frame is returned only once, thus this
+	 * method waits for a frame captured since the last call. The caller owns the
+	 * returned frame and has to release it.
+	 *
+	 * @param timeout the maximum time to wait in milliseconds, or 0 to wait until
+	 *                a frame is captured.
+	 *
+	 * @return the newest frame, or {@code null} if the timeout elapsed or capturing
+	 * has stopped.
+	 *
+	 * @throws JavaAVException if capturing failed or if interrupted while waiting.
+	 */
+	public VideoFrame takeFrame(long timeout) throws JavaAVException {
+		long deadline = System.currentTimeMillis() + timeout;
+
+		synchronized (lock) {
+			while (latestFrame == null) {
+				if (captureError != null) {
+					JavaAVException error = captureError;
+					captureError = null;
+					throw error;
+				}
+
+				if (!capturing)
+					return null;
+
+				long remaining = deadline - System.currentTimeMillis();
+
+				if (timeout > 0 && remaining <= 0)
+					return null;
+
+				try {
+					lock.wait(timeout > 0 ? remaining : 0);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new JavaAVException("Interrupted while waiting for frames.");
+				}
+			}
+
+			VideoFrame frame = latestFrame;
+			latestFrame = null;
+
+			return frame;
+		}
+	}
+
+	/**
+	 * Get the number of frames captured by the capture thread.
+	 *
+	 * @return the number of captured frames.
+	 */
+	public long getCapturedFrameCount() {
+		synchronized (lock) {
+			return capturedFrames;
+		}
+	}
+
+	/**
+	 * Get the number of captured frames that were replaced by a newer frame before
+	 * they were taken.
+	 *
+	 * @return the number of dropped frames.
+	 */
+	public long getDroppedFrameCount() {
+		synchronized (lock) {
+			return droppedFrames;
+		}
+	}
+
+	/**
+	 * Add a listener that is notified about frames captured by the capture thread.
+	 *
+	 * @param listener the listener to add.
+	 */
+	public void addCameraListener(CameraListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Remove a previously added listener.
+	 *
+	 * @param listener the listener to remove.
+	 */
+	public void removeCameraListener(CameraListener listener) {
+		listeners.remove(listener);
+	}
+
 	/**
 	 * Close the camera and free associated memory. Subsequent calls of {@link #getImage()}
 	 * will return {@code null}.
 	 */
-    public void close() {
-        if (open.compareAndSet(true, false) && demuxer != null) {
-            demuxer.close();
-        }
-    }
+	public void close() {
+		stopCapture();
+
+		if (open.compareAndSet(true, false) && demuxer != null) {
+			demuxer.close();
+		}
+	}
 
 	/**
 	 * Checks whether this camera is opened.
@@ -127,4 +364,89 @@ public class Camera {
 		return open.get();
 	}
 
+	/**
+	 * Read frames until capturing is stopped, the end of input is reached or an
+	 * error occurs. On every exit waiting consumers are woken up.
+	 */
+	private void capture() {
+		VideoFrame frame = null;
+
+		try {
+			while (true) {
+				MediaFrame mediaFrame;
+
+				try {
+					mediaFrame = demuxer.readFrame();
+				}
+				catch (JavaAVException e) {
+					synchronized (lock) {
+						captureError = e;
+					}
+					break;
+				}
+
+				if (mediaFrame == null)
+					break;
+
+				if (mediaFrame.getType() != MediaFrame.Type.VIDEO) {
+					mediaFrame.release();
+					continue;
+				}
+
+				frame = (VideoFrame) mediaFrame;
+
+				notifyListeners(frame);
+
+				synchronized (lock) {
+					if (!capturing)
+						break;
+
+					capturedFrames++;
+
+					if (latestFrame != null) {
+						latestFrame.release();
+						droppedFrames++;
+					}
+
+					latestFrame = frame;
+					frame = null;
+
+					lock.notifyAll();
+				}
+			}
+		}
+		catch (RuntimeException e) {
+			synchronized (lock) {
+				captureError = new JavaAVException("Capturing failed: " + e);
+			}
+			LOGGER.error("Capturing failed", e);
+		}
+		finally {
+			if (frame != null)
+				frame.release();
+
+			synchronized (lock) {
+				capturing = false;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Notify all listeners about a captured frame. A failing listener does not stop
+	 * capturing and does not prevent other listeners from being notified.
+	 *
+	 * @param frame the captured frame.
+	 */
+	private void notifyListeners(VideoFrame frame) {
+		for (CameraListener listener : listeners) {
+			try {
+				listener.frameCaptured(this, frame);
+			}
+			catch (RuntimeException e) {
+				LOGGER.error("Camera listener failed", e);
+			}
+		}
+	}
+
 }
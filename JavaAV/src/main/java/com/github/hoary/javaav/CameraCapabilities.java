@@ -110,7 +110,7 @@ public class CameraCapabilities {
 			}
 		};
 		// set the new resolution parser callback
-		JavaAV.loadLibrary();
+		JavaAV.loadDevices();
 		JavaAV.setLogCallback(callback);
 
 		AVFormatContext context = new AVFormatContext(null);
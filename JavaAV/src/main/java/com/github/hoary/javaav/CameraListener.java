@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2013 Alex Andres
+ *
+ * This file is part of JavaAV.
+ *
+ * JavaAV is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version (subject to the "Classpath"
+ * exception as provided in the LICENSE file that accompanied
+ * this code).
+ *
+ * JavaAV is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaAV. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.github.hoary.javaav;
+
+/**
+ * A {@code CameraListener} is notified about frames captured by a {@code Camera}
+ * running in asynchronous capture mode, see {@link Camera#startCapture()}.
+ *
+ * @author Alex Andres
+ */
+public interface CameraListener {
+
+	/**
+	 * Called on the capture thread for each captured frame. The frame is owned by
+	 * the camera and may be released after this method returns. To keep the frame,
+	 * create a reference with {@link VideoFrame#createReference()}. Implementations
+	 * should return quickly, since capturing is paused during the call. Runtime
+	 * exceptions thrown by this method are logged and do not stop capturing.
+	 *
+	 * @param camera the capturing camera.
+	 * @param frame  the captured frame.
+	 */
+	void frameCaptured(Camera camera, VideoFrame frame);
+
+}
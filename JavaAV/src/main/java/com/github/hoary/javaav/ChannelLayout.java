@@ -23,6 +23,9 @@ package com.github.hoary.javaav;
 
 import org.bytedeco.javacpp.avutil;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Enumeration of all supported channel layouts. A {@code ChannelLayout} can be
  * retrieved by passing a FFmpeg channel layout id to {@link #byId(long)}.
@@ -66,6 +69,17 @@ public enum ChannelLayout {
 	/** Channel layout description. */
 	private final String name;
 
+	/** Channel layouts mapped by FFmpeg id, see {@link #byId(long)}. */
+	private static final Map<Long, ChannelLayout> ID_MAP = new HashMap<Long, ChannelLayout>();
+
+	static {
+		// the first declared value wins for aliased ids
+		for (ChannelLayout value : values()) {
+			if (!ID_MAP.containsKey(value.id))
+				ID_MAP.put(value.id, value);
+		}
+	}
+
 
 	/**
 	 * Create a new {@code ChannelLayout}.
@@ -104,12 +118,7 @@ public enum ChannelLayout {
 	 * @return matching channel layout, or {@code null} if id is not defined.
 	 */
 	public static ChannelLayout byId(long id) {
-		for (ChannelLayout value : values()) {
-			if (value.id == id)
-				return value;
-		}
-
-		return null;
+		return ID_MAP.get(id);
 	}
 	
 }
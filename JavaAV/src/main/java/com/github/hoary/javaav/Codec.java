@@ -21,29 +21,16 @@
 
 package com.github.hoary.javaav;
 
-import org.bytedeco.javacpp.IntPointer;
-import org.bytedeco.javacpp.LongPointer;
 import org.bytedeco.javacpp.avcodec.AVCodec;
 import org.bytedeco.javacpp.avcodec.AVCodecContext;
 import org.bytedeco.javacpp.avutil.AVDictionary;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
-
 import static org.bytedeco.javacpp.avcodec.av_codec_is_decoder;
 import static org.bytedeco.javacpp.avcodec.av_codec_is_encoder;
-import static org.bytedeco.javacpp.avcodec.av_codec_next;
 import static org.bytedeco.javacpp.avcodec.avcodec_alloc_context3;
 import static org.bytedeco.javacpp.avcodec.avcodec_find_decoder;
-import static org.bytedeco.javacpp.avcodec.avcodec_find_decoder_by_name;
 import static org.bytedeco.javacpp.avcodec.avcodec_find_encoder;
-import static org.bytedeco.javacpp.avcodec.avcodec_find_encoder_by_name;
 import static org.bytedeco.javacpp.avcodec.avcodec_open2;
-import static org.bytedeco.javacpp.avutil.AVRational;
-import static org.bytedeco.javacpp.avutil.av_q2d;
 
 /**
  * {@code Codecs} are usually used by encoders and decoders. To create a {@code Codec} use
@@ -61,15 +48,21 @@ public class Codec {
 	/** The codec itself. */
 	private AVCodec avCodec;
 
+	/** The registry entry that describes the codec. */
+	private CodecRegistry.Entry entry;
+
 	/** The codec context. */
 	private AVCodecContext avContext;
 
 
 	/**
 	 * Private constructor to prevent creating an empty {@code Codec}.
+	 *
+	 * @param entry the registry entry of the codec.
 	 */
-	private Codec() {
-
+	private Codec(CodecRegistry.Entry entry) {
+		this.avCodec = entry.avCodec;
+		this.entry = entry;
 	}
 
 	/*
@@ -149,15 +142,20 @@ public class Codec {
 		if (codecId == null)
 			throw new NullPointerException("CodecID is null.");
 
-		AVCodec avCodec = avcodec_find_encoder(codecId.value());
+		CodecRegistry.Entry entry = CodecRegistry.getInstance().getEncoder(codecId.value());
 
-		if (avCodec == null || avCodec.isNull())
-			throw new JavaAVException("Encoder not found: " + codecId.toString());
+		if (entry == null) {
+			// deprecated codec ids are remapped by FFmpeg
+			AVCodec avCodec = avcodec_find_encoder(codecId.value());
 
-		Codec codec = new Codec();
-		codec.avCodec = avCodec;
+			if (avCodec != null && !avCodec.isNull())
+				entry = CodecRegistry.getInstance().getEncoder(avCodec.id());
+		}
 
-		return codec;
+		if (entry == null)
+			throw new JavaAVException("Encoder not found: " + codecId.toString());
+
+		return new Codec(entry);
 	}
 
 	/**
@@ -173,15 +171,20 @@ public class Codec {
 		if (codecId == null)
 			throw new NullPointerException("CodecID is null.");
 
-		AVCodec avCodec = avcodec_find_decoder(codecId.value());
+		CodecRegistry.Entry entry = CodecRegistry.getInstance().getDecoder(codecId.value());
 
-		if (avCodec == null || avCodec.isNull())
-			throw new JavaAVException("Decoder not found: " + codecId.toString());
+		if (entry == null) {
+			// deprecated codec ids are remapped by FFmpeg
+			AVCodec avCodec = avcodec_find_decoder(codecId.value());
+
+			if (avCodec != null && !avCodec.isNull())
+				entry = CodecRegistry.getInstance().getDecoder(avCodec.id());
+		}
 
-		Codec codec = new Codec();
-		codec.avCodec = avCodec;
+		if (entry == null)
+			throw new JavaAVException("Decoder not found: " + codecId.toString());
 
-		return codec;
+		return new Codec(entry);
 	}
 
 	/**
@@ -197,15 +200,12 @@ public class Codec {
 		if (avCodecName == null || avCodecName.isEmpty())
 			throw new NullPointerException("Codec name is null or empty.");
 
-		AVCodec avCodec = avcodec_find_encoder_by_name(avCodecName);
+		CodecRegistry.Entry entry = CodecRegistry.getInstance().getEncoder(avCodecName);
 
-		if (avCodec == null || avCodec.isNull())
+		if (entry == null)
 			throw new JavaAVException("Encoder not found: " + avCodecName);
 
-		Codec codec = new Codec();
-		codec.avCodec = avCodec;
-
-		return codec;
+		return new Codec(entry);
 	}
 
 	/**
@@ -221,15 +221,12 @@ public class Codec {
 		if (avCodecName == null || avCodecName.isEmpty())
 			throw new NullPointerException("Codec name is null or empty.");
 
-		AVCodec avCodec = avcodec_find_decoder_by_name(avCodecName);
+		CodecRegistry.Entry entry = CodecRegistry.getInstance().getDecoder(avCodecName);
 
-		if (avCodec == null || avCodec.isNull())
+		if (entry == null)
 			throw new JavaAVException("Decoder not found: " + avCodecName);
 
-		Codec codec = new Codec();
-		codec.avCodec = avCodec;
-
-		return codec;
+		return new Codec(entry);
 	}
 
 	/**
@@ -238,18 +235,7 @@ public class Codec {
 	 * @return short codec names that the current FFmpeg version supports.
 	 */
 	public static String[] getInstalledCodecs() {
-		Set<String> names = new TreeSet<String>();
-
-		AVCodec codec = null;
-		while ((codec = av_codec_next(codec)) != null) {
-			String shortName = codec.name().getString();
-			String type = MediaType.byId(codec.type()).toString().substring(0, 1);
-			String longName = codec.long_name().getString();
-
-			names.add(String.format("%-17s [%s] %s", shortName, type, longName));
-		}
-
-		return names.toArray(new String[0]);
+		return CodecRegistry.getInstance().getInstalledCodecs();
 	}
 
 	/**
@@ -258,10 +244,10 @@ public class Codec {
 	 * @return the short name of this {@code Codec}.
 	 */
 	public String getName() {
-		if (avCodec == null)
+		if (entry == null)
 			return null;
 
-		return avCodec.name().getString();
+		return entry.name;
 	}
 
 	/**
@@ -270,10 +256,10 @@ public class Codec {
 	 * @return the long name of this {@code Codec}.
 	 */
 	public String getNameLong() {
-		if (avCodec == null)
+		if (entry == null)
 			return null;
 
-		return avCodec.long_name().getString();
+		return entry.longName;
 	}
 
 	/**
@@ -282,10 +268,7 @@ public class Codec {
 	 * @return codec id.
 	 */
 	public CodecID getID() {
-		if (avCodec.isNull())
-			return null;
-
-		return CodecID.byId(avCodec.id());
+		return entry.id;
 	}
 
 	/**
@@ -294,10 +277,7 @@ public class Codec {
 	 * @return the media type of this {@code Codec}.
 	 */
 	public MediaType getType() {
-		if (avCodec.isNull())
-			return null;
-
-		return MediaType.byId(avCodec.type());
+		return entry.type;
 	}
 
 	/**
@@ -330,7 +310,7 @@ public class Codec {
 	 * @return codec capabilities.
 	 */
 	public int getCapabilities() {
-		return avCodec.capabilities();
+		return entry.capabilities;
 	}
 
 	/**
@@ -341,10 +321,7 @@ public class Codec {
 	 * @return true if codec has the specified capability, false otherwise.
 	 */
 	public boolean hasCapability(CodecCapability flag) {
-		if (avCodec.isNull())
-			return false;
-
-		return (avCodec.capabilities() & flag.value()) != 0;
+		return (entry.capabilities & flag.value()) != 0;
 	}
 
 	/**
@@ -354,19 +331,9 @@ public class Codec {
 	 * @return all supported sample formats by this {@code Codec}.
 	 */
 	public SampleFormat[] getSupportedSampleFormats() {
-		IntPointer sampleFormatsPointer = avCodec.sample_fmts();
-
-		if (getType() != MediaType.AUDIO || sampleFormatsPointer == null)
-			return null;
+		SampleFormat[] formats = entry.getSampleFormats();
 
-		List<SampleFormat> sampleFormats = new ArrayList<SampleFormat>();
-
-		int format;
-		int index = 0;
-		while ((format = sampleFormatsPointer.get(index++)) != -1)
-			sampleFormats.add(SampleFormat.byId(format));
-
-		return sampleFormats.toArray(new SampleFormat[0]);
+		return formats != null ? formats.clone() : null;
 	}
 
 	/**
@@ -377,22 +344,9 @@ public class Codec {
 	 * @return all supported sample rates by this {@code Codec}.
 	 */
 	public Integer[] getSupportedSampleRates() {
-		IntPointer sampleRatesPointer = avCodec.supported_samplerates();
+		Integer[] rates = entry.getSampleRates();
 
-		if (getType() != MediaType.AUDIO || sampleRatesPointer == null)
-			return null;
-
-		List<Integer> sampleRates = new ArrayList<Integer>();
-
-		int sampleRate;
-		int index = 0;
-		while ((sampleRate = sampleRatesPointer.get(index++)) != 0)
-			sampleRates.add(sampleRate);
-
-		// ascending order
-		Collections.sort(sampleRates);
-
-		return sampleRates.toArray(new Integer[0]);
+		return rates != null ? rates.clone() : null;
 	}
 
 	/**
@@ -403,22 +357,9 @@ public class Codec {
 	 * @return all supported frame rates by this {@code Codec}.
 	 */
 	public Integer[] getSupportedFrameRates() {
-		AVRational frameRates = avCodec.supported_framerates();
-
-		if (getType() != MediaType.VIDEO || frameRates == null)
-			return null;
+		Integer[] rates = entry.getFrameRates();
 
-		List<Integer> rates = new ArrayList<Integer>();
-
-		AVRational frameRate;
-		int index = 0;
-		while ((frameRate = frameRates.position(index++)) != null)
-			rates.add((int) av_q2d(frameRate));
-
-		// ascending order
-		Collections.sort(rates);
-
-		return rates.toArray(new Integer[0]);
+		return rates != null ? rates.clone() : null;
 	}
 
 	/**
@@ -428,19 +369,9 @@ public class Codec {
 	 * @return all supported channel layouts by this {@code Codec}.
 	 */
 	public ChannelLayout[] getSupportedChannelLayouts() {
-		LongPointer layoutsPointer = avCodec.channel_layouts();
-
-		if (getType() != MediaType.AUDIO || layoutsPointer == null)
-			return null;
-
-		List<ChannelLayout> layouts = new ArrayList<ChannelLayout>();
+		ChannelLayout[] layouts = entry.getChannelLayouts();
 
-		long layout;
-		int index = 0;
-		while ((layout = layoutsPointer.get(index++)) != 0)
-			layouts.add(ChannelLayout.byId(layout));
-
-		return layouts.toArray(new ChannelLayout[0]);
+		return layouts != null ? layouts.clone() : null;
 	}
 
 	/**
@@ -451,22 +382,9 @@ public class Codec {
 	 * @return all supported pixel formats by this {@code Codec}.
 	 */
 	public PixelFormat[] getSupportedPixelFormats() {
-		IntPointer formatsPointer = avCodec.pix_fmts();
-
-		if (getType() != MediaType.VIDEO || formatsPointer == null)
-			return null;
-
-		List<PixelFormat> pixelFormats = new ArrayList<PixelFormat>();
-
-		int format;
-		int index = 0;
-		while ((format = formatsPointer.get(index++)) != -1)
-			pixelFormats.add(PixelFormat.byId(format));
-
-		// ascending order
-		Collections.sort(pixelFormats);
+		PixelFormat[] formats = entry.getPixelFormats();
 
-		return pixelFormats.toArray(new PixelFormat[0]);
+		return formats != null ? formats.clone() : null;
 	}
 
 }
@@ -23,6 +23,9 @@ package com.github.hoary.javaav;
 
 import org.bytedeco.javacpp.avcodec;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Enumeration of all possible codec id's.
  * <p/>
@@ -448,6 +451,17 @@ public enum CodecID {
 	/** FFmpeg codec id. */
 	private int id;
 
+	/** Codec ids mapped by FFmpeg id, see {@link #byId(int)}. */
+	private static final Map<Integer, CodecID> ID_MAP = new HashMap<Integer, CodecID>();
+
+	static {
+		// the first declared value wins for aliased ids
+		for (CodecID value : values()) {
+			if (!ID_MAP.containsKey(value.id))
+				ID_MAP.put(value.id, value);
+		}
+	}
+
 
 	/**
 	 * Create a new {@code CodecID}.
@@ -455,8 +469,6 @@ public enum CodecID {
 	 * @param id FFmpeg codec id.
 	 */
 	private CodecID(int id) {
-		JavaAV.loadLibrary();
-
 		this.id = id;
 	}
 
@@ -477,12 +489,7 @@ public enum CodecID {
 	 * @return matching codec id, or {@code null} if id is not defined.
 	 */
 	public static CodecID byId(int id) {
-		for (CodecID value : values()) {
-			if (value.id == id)
-				return value;
-		}
-
-		return null;
+		return ID_MAP.get(id);
 	}
 
 }
@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2013 Alex Andres
+ *
+ * This file is part of JavaAV.
+ *
+ * JavaAV is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version (subject to the "Classpath"
+ * exception as provided in the LICENSE file that accompanied
+ * this code).
+ *
+ * JavaAV is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaAV. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.github.hoary.javaav;
+
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.javacpp.LongPointer;
+import org.bytedeco.javacpp.avcodec.AVCodec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.bytedeco.javacpp.avcodec.CODEC_CAP_EXPERIMENTAL;
+import static org.bytedeco.javacpp.avcodec.av_codec_is_decoder;
+import static org.bytedeco.javacpp.avcodec.av_codec_is_encoder;
+import static org.bytedeco.javacpp.avcodec.av_codec_next;
+import static org.bytedeco.javacpp.avutil.AVRational;
+import static org.bytedeco.javacpp.avutil.av_q2d;
+
+/**
+ * {@code CodecRegistry} is a process-wide index of all codecs compiled into FFmpeg.
+ * The registry is built once when the native libraries are loaded, thus looking up
+ * a codec by id or name does not walk the native codec list again. Supported formats
+ * of a codec are read from the native arrays on first access and kept afterwards.
+ *
+ * @author Alex Andres
+ */
+final class CodecRegistry {
+
+	/** The registry of the current process. */
+	private static CodecRegistry registry;
+
+	/** Encoders mapped by codec id. */
+	private final Map<Integer, Entry> encoders = new HashMap<Integer, Entry>();
+
+	/** Decoders mapped by codec id. */
+	private final Map<Integer, Entry> decoders = new HashMap<Integer, Entry>();
+
+	/** Encoders mapped by short codec name. */
+	private final Map<String, Entry> encoderNames = new HashMap<String, Entry>();
+
+	/** Decoders mapped by short codec name. */
+	private final Map<String, Entry> decoderNames = new HashMap<String, Entry>();
+
+	/** Descriptions of all codecs ordered by name. */
+	private final String[] installedCodecs;
+
+
+	/**
+	 * Build the registry from the codecs registered in FFmpeg.
+	 */
+	private CodecRegistry() {
+		Set<String> names = new TreeSet<String>();
+
+		AVCodec avCodec = null;
+		while ((avCodec = av_codec_next(avCodec)) != null) {
+			Entry entry = new Entry(avCodec);
+
+			// same order of preference as avcodec_find_encoder and avcodec_find_decoder
+			if (av_codec_is_encoder(avCodec) != 0) {
+				add(encoders, entry);
+
+				if (!encoderNames.containsKey(entry.name))
+					encoderNames.put(entry.name, entry);
+			}
+			if (av_codec_is_decoder(avCodec) != 0) {
+				add(decoders, entry);
+
+				if (!decoderNames.containsKey(entry.name))
+					decoderNames.put(entry.name, entry);
+			}
+
+			String type = entry.type.toString().substring(0, 1);
+
+			names.add(String.format("%-17s [%s] %s", entry.name, type, entry.longName));
+		}
+
+		installedCodecs = names.toArray(new String[0]);
+	}
+
+	/**
+	 * Build the registry, if not already built.
+	 */
+	static synchronized void load() {
+		if (registry == null)
+			registry = new CodecRegistry();
+	}
+
+	/**
+	 * Get the registry of the current process.
+	 *
+	 * @return the codec registry.
+	 */
+	static synchronized CodecRegistry getInstance() {
+		load();
+
+		return registry;
+	}
+
+	/**
+	 * Get the preferred encoder for the specified codec id.
+	 *
+	 * @param id the FFmpeg codec id.
+	 *
+	 * @return the encoder, or {@code null} if not found.
+	 */
+	Entry getEncoder(int id) {
+		return encoders.get(id);
+	}
+
+	/**
+	 * Get the preferred decoder for the specified codec id.
+	 *
+	 * @param id the FFmpeg codec id.
+	 *
+	 * @return the decoder, or {@code null} if not found.
+	 */
+	Entry getDecoder(int id) {
+		return decoders.get(id);
+	}
+
+	/**
+	 * Get the encoder with the specified short name.
+	 *
+	 * @param name the short codec name.
+	 *
+	 * @return the encoder, or {@code null} if not found.
+	 */
+	Entry getEncoder(String name) {
+		return encoderNames.get(name);
+	}
+
+	/**
+	 * Get the decoder with the specified short name.
+	 *
+	 * @param name the short codec name.
+	 *
+	 * @return the decoder, or {@code null} if not found.
+	 */
+	Entry getDecoder(String name) {
+		return decoderNames.get(name);
+	}
+
+	/**
+	 * Get the descriptions of all codecs ordered by name.
+	 *
+	 * @return codec descriptions.
+	 */
+	String[] getInstalledCodecs() {
+		return installedCodecs.clone();
+	}
+
+	/**
+	 * Add a codec to the id map. Like FFmpeg the first non-experimental codec is
+	 * preferred, otherwise the first experimental codec is used.
+	 */
+	private static void add(Map<Integer, Entry> map, Entry entry) {
+		Entry present = map.get(entry.avCodec.id());
+
+		if (present == null || (present.isExperimental() && !entry.isExperimental()))
+			map.put(entry.avCodec.id(), entry);
+	}
+
+
+
+	/**
+	 * Immutable description of a single codec.
+	 */
+	static final class Entry {
+
+		/** The native codec, owned by FFmpeg. */
+		final AVCodec avCodec;
+
+		/** The short codec name. */
+		final String name;
+
+		/** The long codec name. */
+		final String longName;
+
+		/** The codec id. */
+		final CodecID id;
+
+		/** The media type of the codec. */
+		final MediaType type;
+
+		/** The codec capabilities. */
+		final int capabilities;
+
+		/** Whether the supported formats have been read. */
+		private boolean formatsLoaded;
+
+		private SampleFormat[] sampleFormats;
+
+		private Integer[] sampleRates;
+
+		private Integer[] frameRates;
+
+		private ChannelLayout[] channelLayouts;
+
+		private PixelFormat[] pixelFormats;
+
+
+		Entry(AVCodec avCodec) {
+			this.avCodec = avCodec;
+			this.name = avCodec.name().getString();
+			this.longName = avCodec.long_name() != null ? avCodec.long_name().getString() : null;
+			this.id = CodecID.byId(avCodec.id());
+			this.type = MediaType.byId(avCodec.type());
+			this.capabilities = avCodec.capabilities();
+		}
+
+		boolean isExperimental() {
+			return (capabilities & CODEC_CAP_EXPERIMENTAL) != 0;
+		}
+
+		synchronized SampleFormat[] getSampleFormats() {
+			loadFormats();
+
+			return sampleFormats;
+		}
+
+		synchronized Integer[] getSampleRates() {
+			loadFormats();
+
+			return sampleRates;
+		}
+
+		synchronized Integer[] getFrameRates() {
+			loadFormats();
+
+			return frameRates;
+		}
+
+		synchronized ChannelLayout[] getChannelLayouts() {
+			loadFormats();
+
+			return channelLayouts;
+		}
+
+		synchronized PixelFormat[] getPixelFormats() {
+			loadFormats();
+
+			return pixelFormats;
+		}
+
+		/**
+		 * Read the supported formats from the native arrays of the codec.
+		 */
+		private void loadFormats() {
+			if (formatsLoaded)
+				return;
+
+			formatsLoaded = true;
+
+			if (type == MediaType.AUDIO) {
+				IntPointer sampleFormatsPointer = avCodec.sample_fmts();
+
+				if (sampleFormatsPointer != null) {
+					List<SampleFormat> formats = new ArrayList<SampleFormat>();
+
+					int format;
+					int index = 0;
+					while ((format = sampleFormatsPointer.get(index++)) != -1) {
+						SampleFormat sampleFormat = SampleFormat.byId(format);
+
+						if (sampleFormat != null)
+							formats.add(sampleFormat);
+					}
+
+					sampleFormats = formats.toArray(new SampleFormat[0]);
+				}
+
+				IntPointer sampleRatesPointer = avCodec.supported_samplerates();
+
+				if (sampleRatesPointer != null) {
+					List<Integer> rates = new ArrayList<Integer>();
+
+					int sampleRate;
+					int index = 0;
+					while ((sampleRate = sampleRatesPointer.get(index++)) != 0)
+						rates.add(sampleRate);
+
+					// ascending order
+					Collections.sort(rates);
+
+					sampleRates = rates.toArray(new Integer[0]);
+				}
+
+				LongPointer layoutsPointer = avCodec.channel_layouts();
+
+				if (layoutsPointer != null) {
+					List<ChannelLayout> layouts = new ArrayList<ChannelLayout>();
+
+					long layout;
+					int index = 0;
+					while ((layout = layoutsPointer.get(index++)) != 0) {
+						ChannelLayout channelLayout = ChannelLayout.byId(layout);
+
+						if (channelLayout != null)
+							layouts.add(channelLayout);
+					}
+
+					channelLayouts = layouts.toArray(new ChannelLayout[0]);
+				}
+			}
+			else if (type == MediaType.VIDEO) {
+				AVRational frameRatesPointer = avCodec.supported_framerates();
+
+				if (frameRatesPointer != null) {
+					List<Integer> rates = new ArrayList<Integer>();
+
+					// the array is terminated by a zero frame rate
+					AVRational frameRate;
+					int index = 0;
+					while ((frameRate = frameRatesPointer.position(index++)).num() != 0)
+						rates.add((int) av_q2d(frameRate));
+
+					// ascending order
+					Collections.sort(rates);
+
+					frameRates = rates.toArray(new Integer[0]);
+				}
+
+				IntPointer formatsPointer = avCodec.pix_fmts();
+
+				if (formatsPointer != null) {
+					List<PixelFormat> formats = new ArrayList<PixelFormat>();
+
+					int format;
+					int index = 0;
+					while ((format = formatsPointer.get(index++)) != -1) {
+						PixelFormat pixelFormat = PixelFormat.byId(format);
+
+						// formats unknown to this version are not supported
+						if (pixelFormat != null)
+							formats.add(pixelFormat);
+					}
+
+					// ascending order
+					Collections.sort(formats);
+
+					pixelFormats = formats.toArray(new PixelFormat[0]);
+				}
+			}
+		}
+
+	}
+
+}
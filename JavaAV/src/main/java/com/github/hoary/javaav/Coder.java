@@ -82,6 +82,9 @@ public abstract class Coder extends Configurable {
 	/** Current coder state. */
 	protected State state;
 
+	/** The number of threads received from the {@code ThreadBudget}. */
+	private int budgetThreads;
+
 
 	/**
 	 * Create a new {@code Coder} with specified codec and context.
@@ -153,6 +156,9 @@ public abstract class Coder extends Configurable {
 		if (profile > 0) {
 			avContext.profile(profile);
 		}
+		if (slices > 0) {
+			avContext.slices(slices);
+		}
 		if (quality > -10) {
 			avContext.flags(avContext.flags() | avcodec.CODEC_FLAG_QSCALE);
 			avContext.global_quality((int) Math.round(FF_QP2LAMBDA * quality));
@@ -160,6 +166,8 @@ public abstract class Coder extends Configurable {
 		for (CodecFlag flag : flags)
 			avContext.flags(avContext.flags() | flag.value());
 
+		configureThreads();
+
 		AVDictionary avDictionary = new AVDictionary(null);
 
 		if (getQuality() >= 0)
@@ -171,8 +179,10 @@ public abstract class Coder extends Configurable {
 			}
 		}
 
-		if (codec.open(avDictionary, avContext) < 0)
+		if (codec.open(avDictionary, avContext) < 0) {
+			releaseThreads();
 			throw new JavaAVException("Could not open codec.");
+		}
 
 		av_dict_free(avDictionary);
 
@@ -206,6 +216,8 @@ public abstract class Coder extends Configurable {
 			avContext = null;
 		}
 
+		releaseThreads();
+
 		state = State.Closed;
 	}
 	
@@ -317,6 +329,20 @@ public abstract class Coder extends Configurable {
 		return super.getQuality();
 	}
 
+	/**
+	 * Get the number of threads used by the codec. While this {@code Coder} is
+	 * opened, the number of threads granted by the {@code ThreadBudget} is returned.
+	 *
+	 * @return the number of threads, or 0 for automatic if not opened.
+	 */
+	@Override
+	public int getThreadCount() {
+		if (state == State.Opened && avContext != null)
+			return avContext.thread_count();
+
+		return super.getThreadCount();
+	}
+
 	@Override
 	public int getProfile() {
 		if (avContext != null)
@@ -325,4 +351,37 @@ public abstract class Coder extends Configurable {
 		return super.getProfile();
 	}
 
+	/**
+	 * Set the number of threads and the threading modes on the codec context. Threads
+	 * are only requested from the {@code ThreadBudget} if the codec supports one of
+	 * the allowed threading modes.
+	 */
+	private void configureThreads() {
+		int threadType = 0;
+
+		if (threadTypes.contains(ThreadType.FRAME) && codec.hasCapability(CodecCapability.FRAME_THREADS))
+			threadType |= ThreadType.FRAME.value();
+		if (threadTypes.contains(ThreadType.SLICE) && codec.hasCapability(CodecCapability.SLICE_THREADS))
+			threadType |= ThreadType.SLICE.value();
+
+		if (threadCount == 1 || (threadType == 0 && !codec.hasCapability(CodecCapability.AUTO_THREADS))) {
+			avContext.thread_count(1);
+			return;
+		}
+
+		budgetThreads = ThreadBudget.acquire(threadCount);
+
+		avContext.thread_count(budgetThreads);
+
+		if (threadType != 0)
+			avContext.thread_type(threadType);
+	}
+
+	private void releaseThreads() {
+		if (budgetThreads > 0) {
+			ThreadBudget.release(budgetThreads);
+			budgetThreads = 0;
+		}
+	}
+
 }
@@ -22,7 +22,9 @@
 package com.github.hoary.javaav;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * {@code Configurable} provides various methods to configure codecs.
@@ -74,6 +76,21 @@ public abstract class Configurable {
 	/** List of codec flags for audio and video encoder. */
 	protected List<CodecFlag> flags = new ArrayList<CodecFlag>();
 
+	/** The number of codec threads, 0 selects the number automatically. */
+	protected int threadCount = 1;
+
+	/** The allowed threading modes of codecs. */
+	protected Set<ThreadType> threadTypes = EnumSet.allOf(ThreadType.class);
+
+	/** The number of slices per frame for video encoder. */
+	protected int slices;
+
+	/** The number of threads converting one picture, 0 selects the number automatically. */
+	protected int scalerThreadCount = 1;
+
+	/** The scaler flags used to convert pictures. */
+	protected Set<ScalerFlag> scalerFlags = EnumSet.copyOf(ScalerProfile.BALANCED.getFlags());
+
 
 	/**
 	 * Get the media type, audio, video, etc.
@@ -311,4 +328,152 @@ public abstract class Configurable {
 		flags.add(flag);
 	}
 
+	/**
+	 * Set the number of threads used by codecs. With 0 the number of threads is
+	 * chosen automatically, based on the available cores and the number of opened
+	 * multi-threaded coders, see {@link ThreadBudget}. Default is 1.
+	 *
+	 * @param count the number of threads, or 0 for automatic.
+	 *
+	 * @throws JavaAVException if count is negative.
+	 */
+	public void setThreadCount(int count) throws JavaAVException {
+		if (count < 0)
+			throw new JavaAVException("Invalid thread count: " + count);
+
+		this.threadCount = count;
+	}
+
+	/**
+	 * Get the number of threads used by codecs.
+	 *
+	 * @return the number of threads, or 0 for automatic.
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	/**
+	 * Set the threading modes codecs may use. If a codec supports more than one of
+	 * the specified modes, FFmpeg prefers frame threading. Default are all modes.
+	 *
+	 * @param types the allowed threading modes.
+	 *
+	 * @throws JavaAVException if no threading mode is provided.
+	 */
+	public void setThreadTypes(ThreadType... types) throws JavaAVException {
+		if (types == null || types.length == 0)
+			throw new JavaAVException("Could not set thread types. None provided.");
+
+		threadTypes.clear();
+
+		for (ThreadType type : types)
+			threadTypes.add(type);
+	}
+
+	/**
+	 * Set the number of slices each frame is split into by video encoders. Slices
+	 * allow slice threading, e.g. with {@link ThreadType#SLICE}, at the cost of a
+	 * slightly lower compression efficiency. With 0 the encoder chooses the number
+	 * of slices.
+	 *
+	 * @param slices the number of slices per frame.
+	 *
+	 * @throws JavaAVException if slices is negative.
+	 */
+	public void setSlices(int slices) throws JavaAVException {
+		if (slices < 0)
+			throw new JavaAVException("Invalid number of slices: " + slices);
+
+		this.slices = slices;
+	}
+
+	/**
+	 * Get the number of slices each frame is split into by video encoders.
+	 *
+	 * @return the number of slices per frame, or 0 if chosen by the encoder.
+	 */
+	public int getSlices() {
+		return slices;
+	}
+
+	/**
+	 * Set the number of threads that convert one picture between pixel formats and
+	 * sizes. Large pictures, e.g. 4K video, are split into horizontal bands that are
+	 * converted in parallel. With 0 all available processors are used.
+	 *
+	 * @param count the number of picture conversion threads.
+	 *
+	 * @throws JavaAVException if count is negative.
+	 *
+	 * @see PictureResampler#setThreadCount(int)
+	 */
+	public void setScalerThreadCount(int count) throws JavaAVException {
+		if (count < 0)
+			throw new JavaAVException("Invalid number of scaler threads: " + count);
+
+		this.scalerThreadCount = count;
+	}
+
+	/**
+	 * Get the number of threads that convert one picture between pixel formats and sizes.
+	 *
+	 * @return the number of picture conversion threads, 0 for all available processors.
+	 */
+	public int getScalerThreadCount() {
+		return scalerThreadCount;
+	}
+
+	/**
+	 * Set the scaler flags used to convert pictures between pixel formats and sizes.
+	 * The flags select the scaling algorithm and conversion accuracy. Changed flags
+	 * take effect with the next converted picture.
+	 *
+	 * @param flags the scaler flags.
+	 *
+	 * @see ScalerProfile
+	 */
+	public void setScalerFlags(ScalerFlag... flags) {
+		if (flags == null || flags.length == 0)
+			return;
+
+		scalerFlags.clear();
+
+		for (ScalerFlag flag : flags)
+			scalerFlags.add(flag);
+	}
+
+	/**
+	 * Set the scaler flags of the specified profile, e.g. {@link ScalerProfile#PREVIEW}
+	 * for fast conversion or {@link ScalerProfile#ARCHIVE} for best quality. Changed
+	 * flags take effect with the next converted picture.
+	 *
+	 * @param profile the scaler profile.
+	 */
+	public void setScalerProfile(ScalerProfile profile) {
+		if (profile == null)
+			return;
+
+		scalerFlags.clear();
+		scalerFlags.addAll(profile.getFlags());
+	}
+
+	/**
+	 * Get the scaler flags used to convert pictures.
+	 *
+	 * @return a copy of the scaler flags.
+	 */
+	public Set<ScalerFlag> getScalerFlags() {
+		return EnumSet.copyOf(scalerFlags);
+	}
+
+	/**
+	 * Get the threading modes codecs may use.
+	 *
+	 * @return the allowed threading modes.
+	 */
+	public Set<ThreadType> getThreadTypes() {
+		return EnumSet.copyOf(threadTypes);
+	}
+
 }
@@ -25,6 +25,8 @@ import org.bytedeco.javacpp.BytePointer;
 import org.bytedeco.javacpp.avutil.AVRational;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import static org.bytedeco.javacpp.avcodec.AVCodecContext;
@@ -34,10 +36,13 @@ import static org.bytedeco.javacpp.avcodec.av_copy_packet;
 import static org.bytedeco.javacpp.avcodec.av_free_packet;
 import static org.bytedeco.javacpp.avcodec.avcodec_decode_audio4;
 import static org.bytedeco.javacpp.avcodec.avcodec_decode_video2;
-import static org.bytedeco.javacpp.avcodec.avcodec_get_frame_defaults;
-import static org.bytedeco.javacpp.avcodec.avpicture_alloc;
-import static org.bytedeco.javacpp.avcodec.avpicture_free;
+import static org.bytedeco.javacpp.avcodec.avcodec_alloc_context3;
+import static org.bytedeco.javacpp.avutil.AV_NOPTS_VALUE;
 import static org.bytedeco.javacpp.avutil.av_frame_get_best_effort_timestamp;
+import static org.bytedeco.javacpp.avutil.av_frame_get_buffer;
+import static org.bytedeco.javacpp.avutil.av_frame_move_ref;
+import static org.bytedeco.javacpp.avutil.av_frame_unref;
+import static org.bytedeco.javacpp.avutil.av_rescale;
 import static org.bytedeco.javacpp.avutil.av_sample_fmt_is_planar;
 import static org.bytedeco.javacpp.avutil.av_samples_get_buffer_size;
 
@@ -61,8 +66,23 @@ public class Decoder extends Coder {
 	/** The desired picture output format */
 	private PictureFormat dstPictureFormat;
 
-	/** Output image structure used for resampling. */
-	private AVPicture picture;
+	/** The time base of the decoded stream, if known. */
+	private AVRational timeBase;
+
+	/** Whether decoded images are passed in the codec's native pixel format. */
+	private boolean nativeFormat = false;
+
+	/** Pool of sample buffers for decoded audio frames. */
+	private final AudioFramePool framePool = new AudioFramePool();
+
+	/** The format of the last decoded audio frame. */
+	private AudioFormat audioFormat;
+
+	/** Reusable list of frames decoded from one audio packet. */
+	private final List<AudioFrame> decodedFrames = new ArrayList<AudioFrame>();
+
+	/** The timestamp of the next decoded audio sample in microseconds, if known. */
+	private long nextAudioTimestamp = AV_NOPTS_VALUE;
 
 
 	/**
@@ -93,6 +113,13 @@ public class Decoder extends Coder {
 
 	@Override
 	public void open(Map<String, String> options) throws JavaAVException {
+		if (avContext == null)
+			avContext = avcodec_alloc_context3(codec.getCodec());
+
+		// decoded frames are owned by the caller and stay valid after the next decoding call
+		if (avContext != null)
+			avContext.refcounted_frames(1);
+
 		super.open(options);
 
 		if (codec.getType() == MediaType.VIDEO) {
@@ -110,16 +137,15 @@ public class Decoder extends Coder {
 
 	@Override
 	public void close() {
-		if (picture != null) {
-			avpicture_free(picture);
-			picture = null;
-		}
-
 		if (videoResampler != null) {
 			videoResampler.close();
 			videoResampler = null;
 		}
 
+		framePool.close();
+		audioFormat = null;
+		nextAudioTimestamp = AV_NOPTS_VALUE;
+
 		super.close();
 	}
 
@@ -162,7 +188,35 @@ public class Decoder extends Coder {
 	}
 
 	/**
-	 * Decode a media packet with audio samples into an {@code AudioFrame}.
+	 * Enable or disable native format mode. In native format mode decoded images are
+	 * passed in the pixel format of the codec, e.g. YUV420P or NV12, with one plane
+	 * per image component. This avoids the conversion into the pixel format set with
+	 * {@link #setPixelFormat(PixelFormat)}.
+	 *
+	 * @param nativeFormat true to pass images in the codec's native pixel format.
+	 */
+	public void setNativeFormat(boolean nativeFormat) {
+		this.nativeFormat = nativeFormat;
+	}
+
+	/**
+	 * Check whether decoded images are passed in the codec's native pixel format.
+	 *
+	 * @return true if native format mode is enabled.
+	 */
+	public boolean isNativeFormat() {
+		return nativeFormat;
+	}
+
+	/**
+	 * Decode a media packet with audio samples into an {@code AudioFrame}. To retrieve
+	 * delayed samples at the end of a stream, pass packets without data until this
+	 * method returns {@code null}. The returned frame is taken from a pool of this
+	 * decoder and should be released with {@link AudioFrame#release()} when no longer
+	 * needed, so that its sample buffers can be reused.
+	 * <p/>
+	 * If the packet contains several frames only the last frame is returned. Use
+	 * {@link #decodeAudio(MediaPacket, List)} to retrieve all frames of a packet.
 	 *
 	 * @param mediaPacket packet with audio samples.
 	 *
@@ -171,6 +225,41 @@ public class Decoder extends Coder {
 	 * @throws JavaAVException if audio packet could not be decoded.
 	 */
 	public AudioFrame decodeAudio(MediaPacket mediaPacket) throws JavaAVException {
+		decodedFrames.clear();
+
+		int count = decodeAudio(mediaPacket, decodedFrames);
+
+		if (count == 0)
+			return null;
+
+		for (int i = 0; i < count - 1; i++)
+			decodedFrames.get(i).release();
+
+		AudioFrame frame = decodedFrames.get(count - 1);
+
+		decodedFrames.clear();
+
+		return frame;
+	}
+
+	/**
+	 * Decode a media packet with audio samples and add all decoded frames to the
+	 * provided list. Some codecs pack several frames into one packet, all of them
+	 * are retrieved with one call. Passing a packet without data drains all delayed
+	 * frames at the end of a stream. The list is not cleared, thus it can be reused
+	 * between calls without further allocation.
+	 * <p/>
+	 * The frames are taken from a pool of this decoder and should be released with
+	 * {@link AudioFrame#release()} when no longer needed.
+	 *
+	 * @param mediaPacket packet with audio samples.
+	 * @param frames      the list that receives the decoded frames.
+	 *
+	 * @return the number of frames added to the list.
+	 *
+	 * @throws JavaAVException if audio packet could not be decoded.
+	 */
+	public int decodeAudio(MediaPacket mediaPacket, List<? super AudioFrame> frames) throws JavaAVException {
 		if (state != State.Opened)
 			throw new JavaAVException("Could not decode audio, decoder is not opened.");
 
@@ -180,8 +269,12 @@ public class Decoder extends Coder {
 		if (mediaPacket == null)
 			throw new JavaAVException("No audio passed to decode.");
 
-		AudioFrame frame = null;
+		if (frames == null)
+			throw new JavaAVException("No frame list passed to decode into.");
+
+		int count = 0;
 		ByteBuffer packetData = mediaPacket.getData();
+		AVPacket mPacket = mediaPacket.getAVPacket();
 
 		if (packetData != null) {
 			avPacket.data(new BytePointer(packetData));
@@ -192,57 +285,104 @@ public class Decoder extends Coder {
 			avPacket.size(0);
 		}
 
-		while (avPacket.size() > 0) {
-			// reset frame values
-			avcodec_get_frame_defaults(avFrame);
+		// pass the packet timestamps on, so that decoded frames carry them
+		avPacket.pts(mPacket != null ? mPacket.pts() : AV_NOPTS_VALUE);
+		avPacket.dts(mPacket != null ? mPacket.dts() : AV_NOPTS_VALUE);
+
+		// an empty packet drains delayed samples
+		boolean flush = packetData == null;
+
+		while (avPacket.size() > 0 || flush) {
+			// release the previous frame and reset frame values
+			av_frame_unref(avFrame);
 
 			int len = avcodec_decode_audio4(avContext, avFrame, gotFrame, avPacket);
 
+			if (len < 0)
+				break;
+
 			if (len > 0) {
 				avPacket.data(avPacket.data().position(len));
 				avPacket.size(avPacket.size() - len);
+
+				// further frames of this packet continue the timestamps of the first frame
+				avPacket.pts(AV_NOPTS_VALUE);
+				avPacket.dts(AV_NOPTS_VALUE);
 			}
 
-			if (len > 0 && gotFrame[0] != 0) {
-				AVRational time_base = avContext.time_base();
+			if (gotFrame[0] != 0) {
+				frames.add(createAudioFrame());
+				count++;
+			}
+			else if (flush) {
+				// all delayed frames have been retrieved
+				break;
+			}
 
-				long pts = av_frame_get_best_effort_timestamp(avFrame);
-				long timestamp = 1000000L * pts * time_base.num() / time_base.den();
+			// the decoder needs more data
+			if (len == 0 && !flush)
+				break;
+		}
 
-				int sampleFormat = avFrame.format();
-				int isPlanar = av_sample_fmt_is_planar(sampleFormat);
-				int planes = isPlanar != 0 ? avFrame.channels() : 1;
-				int bufferSize = av_samples_get_buffer_size((int[]) null, avContext.channels(), avFrame.nb_samples(), avContext.sample_fmt(), 1) / planes;
+		av_frame_unref(avFrame);
+		av_free_packet(avPacket);
 
-				SampleFormat format = SampleFormat.byId(sampleFormat);
-				ChannelLayout channelLayout = ChannelLayout.byId(avFrame.channel_layout());
+		return count;
+	}
 
-				AudioFormat audioFormat = new AudioFormat(format, channelLayout, avFrame.channels(), avFrame.sample_rate());
+	/**
+	 * Copy the samples of the last decoded codec frame into a pooled {@code AudioFrame}.
+	 *
+	 * @return a new audio frame with the decoded samples.
+	 */
+	private AudioFrame createAudioFrame() {
+		AVRational time_base = avContext.time_base();
 
-				frame = new AudioFrame(audioFormat, avFrame.nb_samples());
-				frame.setKeyFrame(avFrame.key_frame() != 0);
-				frame.setTimestamp(timestamp);
+		long pts = av_frame_get_best_effort_timestamp(avFrame);
+		long timestamp = nextAudioTimestamp;
 
-				for (int i = 0; i < planes; i++) {
-					BytePointer pointer = avFrame.data(i).capacity(bufferSize);
-					ByteBuffer buffer = pointer.asBuffer();
-					buffer.position(0);
+		if (pts != AV_NOPTS_VALUE) {
+			timestamp = timeBase != null ? toMicroseconds(pts) :
+					1000000L * pts * time_base.num() / time_base.den();
+		}
 
-					frame.getPlane(i).asByteBuffer().put(buffer);
-				}
-			}
-			else {
-				break;
-			}
+		if (timestamp != AV_NOPTS_VALUE)
+			nextAudioTimestamp = timestamp + av_rescale(avFrame.nb_samples(), 1000000, avFrame.sample_rate());
+
+		int sampleFormat = avFrame.format();
+		int isPlanar = av_sample_fmt_is_planar(sampleFormat);
+		int planes = isPlanar != 0 ? avFrame.channels() : 1;
+		int bufferSize = av_samples_get_buffer_size((int[]) null, avContext.channels(), avFrame.nb_samples(), avContext.sample_fmt(), 1) / planes;
+
+		SampleFormat format = SampleFormat.byId(sampleFormat);
+		ChannelLayout channelLayout = ChannelLayout.byId(avFrame.channel_layout());
+
+		if (audioFormat == null || audioFormat.getSampleFormat() != format ||
+				audioFormat.getChannelLayout() != channelLayout ||
+				audioFormat.getChannels() != avFrame.channels() ||
+				audioFormat.getSampleRate() != avFrame.sample_rate()) {
+			audioFormat = new AudioFormat(format, channelLayout, avFrame.channels(), avFrame.sample_rate());
 		}
 
-		av_free_packet(avPacket);
+		AudioFrame frame = framePool.acquire(audioFormat, avFrame.nb_samples());
+		frame.setKeyFrame(avFrame.key_frame() != 0);
+		frame.setTimestamp(timestamp);
+
+		for (int i = 0; i < planes; i++) {
+			BytePointer pointer = avFrame.data(i).capacity(bufferSize);
+			ByteBuffer buffer = pointer.asBuffer();
+			buffer.position(0);
+
+			frame.getPlane(i).asByteBuffer().put(buffer);
+		}
 
 		return frame;
 	}
 
 	/**
-	 * Decode a media packet with video frame data into a {@code VideoFrame}.
+	 * Decode a media packet with video frame data into a {@code VideoFrame}. The
+	 * returned frame owns its image data until it is released with
+	 * {@link VideoFrame#release()}.
 	 *
 	 * @param mediaPacket packet with a video frame.
 	 *
@@ -276,48 +416,63 @@ public class Decoder extends Coder {
 			}
 		}
 
-		// reset frame parameters
-		avcodec_get_frame_defaults(avFrame);
+		// release the previous frame and reset frame parameters
+		av_frame_unref(avFrame);
 
 		int len = avcodec_decode_video2(avContext, avFrame, gotFrame, avPacket);
 
 		if (len >= 0 && gotFrame[0] != 0) {
 			long pts = av_frame_get_best_effort_timestamp(avFrame);
 			AVRational time_base = avContext.time_base();
-			long timestamp = 1000000L * pts * time_base.num() / time_base.den() * 2;
+			long timestamp = timeBase != null ? toMicroseconds(pts) :
+					1000000L * pts * time_base.num() / time_base.den() * 2;
 
 			int width = avContext.width();
 			int height = avContext.height();
-			int channels;
-			BytePointer data;
 
-			if (videoResampler == null) {
+			int keyFrame = avFrame.key_frame();
+
+			if (videoResampler == null && !nativeFormat) {
 				if (!srcPictureFormat.isValid())
 					srcPictureFormat = new PictureFormat(width, height, PixelFormat.byId(avContext.pix_fmt()));
 				if (!dstPictureFormat.isValid())
 					dstPictureFormat = new PictureFormat(width, height, pixelFormat);
 
 				videoResampler = new PictureResampler();
+				videoResampler.setThreadCount(scalerThreadCount);
+				videoResampler.setFlags(scalerFlags.toArray(new ScalerFlag[0]));
+				videoResampler.open(srcPictureFormat, dstPictureFormat);
+			}
+			else if (videoResampler != null && !videoResampler.getFlags().equals(scalerFlags)) {
+				// re-apply flags changed after the resampler has been created
+				videoResampler.setFlags(scalerFlags.toArray(new ScalerFlag[0]));
 				videoResampler.open(srcPictureFormat, dstPictureFormat);
 			}
-			if (!srcPictureFormat.equals(dstPictureFormat)) {
-				if (picture == null)
-					createImageBuffer();
 
-				videoResampler.resample(new AVPicture(avFrame), picture);
+			FrameReference output = new FrameReference();
 
-				channels = picture.linesize(0) / width;
-				data = picture.data(0);
+			if (nativeFormat || srcPictureFormat.equals(dstPictureFormat)) {
+				// pass the decoded buffers without copying
+				av_frame_move_ref(output, avFrame);
 			}
 			else {
-				channels = avFrame.linesize(0) / width;
-				data = avFrame.data(0);
+				output.format(pixelFormat.value());
+				output.width(width);
+				output.height(height);
+
+				// packed rows without padding, as expected by single buffer consumers
+				if (av_frame_get_buffer(output, 1) < 0) {
+					output.deallocate();
+					throw new JavaAVException("Could not allocate video frame.");
+				}
+
+				videoResampler.resample(new AVPicture(avFrame), new AVPicture(output));
+
+				av_frame_unref(avFrame);
 			}
-			// set buffer parameters to allow correct usage
-			data.position(0).capacity(width * height * channels);
 
-			frame = new VideoFrame(data.asByteBuffer(), width, height, pixelFormat);
-			frame.setKeyFrame(avFrame.key_frame() != 0);
+			frame = new VideoFrame(output);
+			frame.setKeyFrame(keyFrame != 0);
 			frame.setTimestamp(timestamp);
 		}
 		else if ((avPacket.data() == null || (mPacket != null && mPacket.data() == null)) && avPacket.size() == 0) {
@@ -331,20 +486,27 @@ public class Decoder extends Coder {
 	}
 
 	/**
-	 * Create resampled picture buffer. This is only needed if the decoded picture format
-	 * differs from the desired format.
+	 * Set the time base of the decoded stream. Packet timestamps are expressed in the
+	 * stream time base, thus it is used to convert frame timestamps into microseconds.
 	 *
-	 * @throws JavaAVException if picture buffer could not be allocated.
+	 * @param timeBase the stream time base.
 	 */
-	private void createImageBuffer() throws JavaAVException {
-		int format = pixelFormat.value();
-		int width = avContext.width();
-		int height = avContext.height();
+	void setTimeBase(AVRational timeBase) {
+		this.timeBase = timeBase;
+	}
 
-		picture = new AVPicture();
+	/**
+	 * Convert a timestamp in stream time base into microseconds.
+	 *
+	 * @param pts the timestamp in stream time base.
+	 *
+	 * @return the timestamp in microseconds, or {@code AV_NOPTS_VALUE} if unknown.
+	 */
+	private long toMicroseconds(long pts) {
+		if (pts == AV_NOPTS_VALUE)
+			return AV_NOPTS_VALUE;
 
-		if (avpicture_alloc(picture, format, width, height) < 0)
-			throw new JavaAVException("Could not allocate picture.");
+		return av_rescale(pts, 1000000L * timeBase.num(), timeBase.den());
 	}
 
 }
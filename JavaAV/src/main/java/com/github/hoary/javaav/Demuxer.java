@@ -21,31 +21,80 @@
 
 package com.github.hoary.javaav;
 
+import org.bytedeco.javacpp.Pointer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import static org.bytedeco.javacpp.avcodec.AVCodec;
 import static org.bytedeco.javacpp.avcodec.AVCodecContext;
+import static org.bytedeco.javacpp.avcodec.AVDISCARD_ALL;
 import static org.bytedeco.javacpp.avcodec.AVPacket;
+import static org.bytedeco.javacpp.avcodec.AV_PKT_FLAG_KEY;
+import static org.bytedeco.javacpp.avcodec.av_dup_packet;
 import static org.bytedeco.javacpp.avcodec.av_free_packet;
 import static org.bytedeco.javacpp.avformat.AVFormatContext;
 import static org.bytedeco.javacpp.avformat.AVInputFormat;
+import static org.bytedeco.javacpp.avformat.AVFMT_NO_BYTE_SEEK;
+import static org.bytedeco.javacpp.avformat.AVSEEK_FLAG_ANY;
+import static org.bytedeco.javacpp.avformat.AVSEEK_FLAG_BYTE;
 import static org.bytedeco.javacpp.avformat.AVStream;
+import static org.bytedeco.javacpp.avformat.av_find_best_stream;
 import static org.bytedeco.javacpp.avformat.av_find_input_format;
 import static org.bytedeco.javacpp.avformat.av_read_frame;
+import static org.bytedeco.javacpp.avformat.av_seek_frame;
+import static org.bytedeco.javacpp.avformat.avformat_alloc_context;
 import static org.bytedeco.javacpp.avformat.avformat_close_input;
 import static org.bytedeco.javacpp.avformat.avformat_find_stream_info;
 import static org.bytedeco.javacpp.avformat.avformat_open_input;
+import static org.bytedeco.javacpp.avformat.avformat_seek_file;
 import static org.bytedeco.javacpp.avutil.AVDictionary;
 import static org.bytedeco.javacpp.avutil.AVMEDIA_TYPE_AUDIO;
 import static org.bytedeco.javacpp.avutil.AVMEDIA_TYPE_VIDEO;
 import static org.bytedeco.javacpp.avutil.AVRational;
+import static org.bytedeco.javacpp.avutil.AVERROR_EOF;
+import static org.bytedeco.javacpp.avutil.AV_NOPTS_VALUE;
 import static org.bytedeco.javacpp.avutil.av_d2q;
 import static org.bytedeco.javacpp.avutil.av_dict_free;
 import static org.bytedeco.javacpp.avutil.av_dict_set;
+import static org.bytedeco.javacpp.avutil.av_rescale;
 
 /**
- * {@code Demuxer} is used to read single media streams from an input source. Media
- * is retrieved by consecutively calling {@link #readFrame()}.
+ * {@code Demuxer} is used to read single media streams from an input source. Besides
+ * files, devices and URLs, media can be read from an {@code InputStream}, a
+ * {@code SeekableByteChannel} or a {@code ByteBuffer}. Media is retrieved by
+ * consecutively calling {@link #readFrame()}, or {@link #readPacket()} if the
+ * compressed packets are required without decoding.
+ * <p/>
+ * By default all video and audio streams are decoded. To process only a subset of
+ * the streams select them with {@link #selectStream(int)},
+ * {@link #selectStreams(MediaType)} or {@link #selectBestStream(MediaType)} before
+ * opening the {@code Demuxer}. Streams that are not selected are discarded by the
+ * demuxer and no decoder is created for them.
+ * <p/>
+ * The read position can be changed with {@link #seek(long, SeekMode)}. While reading,
+ * the {@code Demuxer} builds an index of keyframe positions, so that repeated seeks
+ * into already read parts of the input are resolved without searching the input.
+ * <p/>
+ * With {@link #setPrefetch(boolean)} enabled, packets are read ahead by a dedicated
+ * thread into bounded per-stream queues, so that reading from slow input sources and
+ * decoding overlap. The queue depths can be monitored, e.g. with
+ * {@link #getQueuedDuration(int)}.
+ * <p/>
+ * Video decoders are single-threaded by default. Use {@link #setThreadCount(int)}
+ * and {@link #setThreadTypes(ThreadType...)} before opening to decode in parallel.
+ * <p/>
  * A {@code Demuxer} is often used with a complementary {@code Muxer}.
  *
  * @author Alex Andres
@@ -67,6 +116,60 @@ public class Demuxer extends Configurable {
 	/** The input format. */
 	private String format = null;
 
+	/** Indices of explicitly selected streams. */
+	private Set<Integer> selectedStreams = new HashSet<Integer>();
+
+	/** Media types of which all streams are selected. */
+	private Set<MediaType> selectedTypes = EnumSet.noneOf(MediaType.class);
+
+	/** Media types of which only the best stream is selected. */
+	private Set<MediaType> bestStreamTypes = EnumSet.noneOf(MediaType.class);
+
+	/** Indices of streams that are read, all other streams are discarded. */
+	private Set<Integer> activeStreams = new HashSet<Integer>();
+
+	/** Keyframe index of the stream used for seeking. */
+	private KeyFrameIndex keyFrameIndex = new KeyFrameIndex();
+
+	/** The index of the stream used for seeking. */
+	private int seekStream = -1;
+
+	/** Target timestamp of an exact seek, frames before this timestamp are dropped. */
+	private long seekTarget = AV_NOPTS_VALUE;
+
+	/** Whether packets are read ahead by a dedicated thread. */
+	private boolean prefetch = false;
+
+	/** The maximum number of bytes read ahead per stream. */
+	private long prefetchBytes = 8 * 1024 * 1024;
+
+	/** The maximum duration in microseconds read ahead per stream. */
+	private long prefetchDuration = 2000000;
+
+	/** Reads packets ahead if prefetching is enabled. */
+	private PacketPrefetcher prefetcher;
+
+	/** Whether decoded images are passed in the codec's native pixel format. */
+	private boolean nativeFormat = false;
+
+	/** Streams of decoders that are drained at the end of input. */
+	private Deque<Integer> drainStreams;
+
+	/** Decoded audio frames of one packet that have not been returned yet. */
+	private final Deque<AudioFrame> pendingFrames = new ArrayDeque<AudioFrame>();
+
+	/** The stream index of the pending frames. */
+	private int pendingStream;
+
+	/** Reusable list that receives the frames of one audio packet. */
+	private final List<AudioFrame> audioFrames = new ArrayList<AudioFrame>();
+
+	/** Custom I/O context if media is not read from an URL. */
+	private IOContext ioContext;
+
+	/** The size of the I/O buffer used with custom I/O. */
+	private int ioBufferSize = IOContext.DEFAULT_BUFFER_SIZE;
+
 
 	/**
 	 * Initializes the {@code Demuxer} and open the specified input source.
@@ -76,15 +179,104 @@ public class Demuxer extends Configurable {
 	 * @throws JavaAVException if {@code Demuxer} could not be opened.
 	 */
 	public void open(String inputSource) throws JavaAVException {
+		open(inputSource, null);
+	}
+
+	/**
+	 * Initializes the {@code Demuxer} and open the specified input stream. The stream
+	 * is not seekable, thus formats that require seeking, e.g. MP4 with the index at
+	 * the end, cannot be read from a stream. The stream is closed when the
+	 * {@code Demuxer} is closed.
+	 *
+	 * @param inputStream the input stream to read media from.
+	 *
+	 * @throws JavaAVException if {@code Demuxer} could not be opened.
+	 */
+	public void open(InputStream inputStream) throws JavaAVException {
+		open(null, new IOContext.StreamIOContext(inputStream, ioBufferSize));
+	}
+
+	/**
+	 * Initializes the {@code Demuxer} and open the specified channel. The channel is
+	 * read directly into the native I/O buffer and is closed when the {@code Demuxer}
+	 * is closed.
+	 *
+	 * @param channel the seekable channel to read media from.
+	 *
+	 * @throws JavaAVException if {@code Demuxer} could not be opened.
+	 */
+	public void open(SeekableByteChannel channel) throws JavaAVException {
+		open(null, new IOContext.ChannelIOContext(channel, ioBufferSize));
+	}
+
+	/**
+	 * Initializes the {@code Demuxer} and open media stored in the specified buffer,
+	 * e.g. an in-memory upload or a {@code MappedByteBuffer} of a memory-mapped file.
+	 * The media is read from the buffer's position up to its limit. The buffer must
+	 * not be modified until the {@code Demuxer} is closed.
+	 *
+	 * @param buffer the buffer containing media.
+	 *
+	 * @throws JavaAVException if {@code Demuxer} could not be opened.
+	 */
+	public void open(ByteBuffer buffer) throws JavaAVException {
+		open(null, new IOContext.BufferIOContext(buffer, ioBufferSize));
+	}
+
+	/**
+	 * Set the size of the I/O buffer used to read from streams, channels and buffers.
+	 * Must be called before opening the {@code Demuxer}.
+	 *
+	 * @param size the I/O buffer size in bytes.
+	 *
+	 * @throws JavaAVException if the size is not positive.
+	 */
+	public void setIOBufferSize(int size) throws JavaAVException {
+		if (size <= 0)
+			throw new JavaAVException("Invalid I/O buffer size: " + size);
+
+		this.ioBufferSize = size;
+	}
+
+	/**
+	 * Get the size of the I/O buffer used to read from streams, channels and buffers.
+	 *
+	 * @return the I/O buffer size in bytes.
+	 */
+	public int getIOBufferSize() {
+		return ioBufferSize;
+	}
+
+	private void open(String inputSource, IOContext customIO) throws JavaAVException {
 		AVInputFormat inputFormat = null;
 		if (format != null && format.length() > 0) {
 			inputFormat = av_find_input_format(format);
 
-			if (inputFormat == null)
+			if (inputFormat == null) {
+				// device formats are registered on demand in the lazy startup mode
+				JavaAV.loadDevices();
+				inputFormat = av_find_input_format(format);
+			}
+
+			if (inputFormat == null) {
+				if (customIO != null)
+					customIO.close();
+
 				throw new JavaAVException("Could not find input format: " + format);
+			}
 		}
 
-		formatContext = new AVFormatContext(null);
+		if (customIO != null) {
+			formatContext = avformat_alloc_context();
+			formatContext.pb(customIO.getAVIOContext());
+			formatContext.flags(formatContext.flags() | AVFormatContext.AVFMT_FLAG_CUSTOM_IO);
+			ioContext = customIO;
+		}
+		else {
+			JavaAV.loadNetwork(inputSource);
+
+			formatContext = new AVFormatContext(null);
+		}
 
 		AVDictionary options = new AVDictionary(null);
 		if (frameRate > 0) {
@@ -100,8 +292,21 @@ public class Demuxer extends Configurable {
 		if (audioChannels > 0)
 			av_dict_set(options, "channels", "" + audioChannels, 0);
 
-		if (avformat_open_input(formatContext, inputSource, inputFormat, options) < 0)
+		if (avformat_open_input(formatContext, inputSource, inputFormat, options) < 0) {
+			av_dict_free(options);
+			formatContext = null;
+
+			if (customIO != null) {
+				IOException error = customIO.getError();
+
+				customIO.close();
+				ioContext = null;
+
+				throw new JavaAVException("Could not open input" + (error != null ? ": " + error.getMessage() : "."));
+			}
+
 			throw new JavaAVException("Could not open input: " + inputSource);
+		}
 
 		av_dict_free(options);
 
@@ -113,10 +318,27 @@ public class Demuxer extends Configurable {
 		videoDecoders = new HashMap<Integer, Decoder>();
 		audioDecoders = new HashMap<Integer, Decoder>();
 
+		boolean selectAll = selectedStreams.isEmpty() && selectedTypes.isEmpty() && bestStreamTypes.isEmpty();
+		Set<Integer> bestStreams = findBestStreams();
+
+		activeStreams.clear();
+
 		// get a pointer to the codec context for the video or audio stream
 		for (int index = 0; index < streams; index++) {
 			AVStream stream = formatContext.streams(index);
 			AVCodecContext context = stream.codec();
+			MediaType type = MediaType.byId(context.codec_type());
+
+			boolean selected = selectAll || selectedStreams.contains(index) ||
+					selectedTypes.contains(type) || bestStreams.contains(index);
+
+			if (!selected) {
+				// do not demux and decode unwanted streams
+				stream.discard(AVDISCARD_ALL);
+				continue;
+			}
+
+			activeStreams.add(index);
 
 			if (context.codec_type() == AVMEDIA_TYPE_VIDEO) {
 				initVideoDecoder(index, context);
@@ -126,21 +348,48 @@ public class Demuxer extends Configurable {
 			}
 		}
 
-		if (videoDecoders.isEmpty() && audioDecoders.isEmpty())
+		if (selectAll && videoDecoders.isEmpty() && audioDecoders.isEmpty())
 			throw new JavaAVException("Could not find any video or audio stream.");
 
+		if (activeStreams.isEmpty())
+			throw new JavaAVException("Could not find any stream matching the stream selection.");
+
+		// prefer a video stream for seeking, since video has the sparsest keyframes
+		seekStream = videoDecoders.isEmpty() ? activeStreams.iterator().next() : videoDecoders.keySet().iterator().next();
+		seekTarget = AV_NOPTS_VALUE;
+		drainStreams = null;
+		keyFrameIndex.clear();
+
 		avPacket = new AVPacket();
+
+		if (prefetch) {
+			prefetcher = new PacketPrefetcher(formatContext, activeStreams, prefetchBytes, prefetchDuration);
+			prefetcher.start();
+		}
 	}
 
 	/**
 	 * Close this {@code Demuxer} and free allocated memory.
 	 */
 	public void close() {
+		if (prefetcher != null) {
+			prefetcher.stop();
+			prefetcher = null;
+		}
+
+		releasePendingFrames();
+
 		if (formatContext != null && !formatContext.isNull()) {
 			avformat_close_input(formatContext);
 			formatContext = null;
 		}
 
+		// the custom I/O context is not released by FFmpeg
+		if (ioContext != null) {
+			ioContext.close();
+			ioContext = null;
+		}
+
 		/*
 		 * Set codec context explicitly to null since avformat_close_input already released it.
 		 * This way the decoder knows the context is already closed.
@@ -156,12 +405,26 @@ public class Demuxer extends Configurable {
 
 		videoDecoders = null;
 		audioDecoders = null;
+
+		keyFrameIndex.clear();
+	}
+
+	/**
+	 * Release decoded audio frames that have not been returned by {@link #readFrame()}.
+	 */
+	private void releasePendingFrames() {
+		AudioFrame frame;
+
+		while ((frame = pendingFrames.poll()) != null)
+			frame.release();
 	}
 
 	/**
 	 * Consecutively retrieves media frames from previously specified input source.
 	 * The media type of the returned frame may alter between consecutive calls. One
 	 * call may return an audio frame and the next call may return a video frame.
+	 * At the end of input all decoders are drained, thus frames delayed by the
+	 * decoders, e.g. due to frame threading, are returned before {@code null}.
 	 *
 	 * @return a media frame of audio or video ready to play.
 	 *
@@ -170,35 +433,395 @@ public class Demuxer extends Configurable {
 	public MediaFrame readFrame() throws JavaAVException {
 		MediaFrame mediaFrame = new MediaFrame();
 
-		while (mediaFrame != null && !mediaFrame.hasFrame()) {
-			if (av_read_frame(formatContext, avPacket) < 0) {
-				if (videoDecoders.get(avPacket.stream_index()) != null) {
-					// video codec may have buffered some frames
-					avPacket.data(null);
-					avPacket.size(0);
+		while (!mediaFrame.hasFrame()) {
+			// some audio codecs pack several frames into one packet
+			if (!pendingFrames.isEmpty()) {
+				mediaFrame = pendingFrames.poll();
+
+				if (seekTarget != AV_NOPTS_VALUE && dropFrame(pendingStream, mediaFrame))
+					mediaFrame = new MediaFrame();
+
+				continue;
+			}
+
+			boolean draining = false;
+
+			if (drainStreams == null && nextPacket(avPacket) >= 0) {
+				indexPacket(avPacket);
+			}
+			else {
+				// decoders may have buffered frames, e.g. due to frame threading
+				if (drainStreams == null) {
+					drainStreams = new ArrayDeque<Integer>(videoDecoders.keySet());
+					drainStreams.addAll(audioDecoders.keySet());
 				}
-				else {
+
+				Integer index = drainStreams.peek();
+
+				if (index == null)
 					return null;
-				}
+
+				avPacket.stream_index(index);
+				avPacket.data(null);
+				avPacket.size(0);
+
+				draining = true;
 			}
 
+			int streamIndex = avPacket.stream_index();
 			MediaPacket mediaPacket = new MediaPacket(avPacket);
+			MediaFrame decoded = null;
 			Decoder decoder;
 
-			if ((decoder = videoDecoders.get(avPacket.stream_index())) != null) {
-				mediaFrame = decoder.decodeVideo(mediaPacket);
+			if ((decoder = videoDecoders.get(streamIndex)) != null) {
+				decoded = decoder.decodeVideo(mediaPacket);
 			}
-			else if ((decoder = audioDecoders.get(avPacket.stream_index())) != null) {
-				mediaFrame = decoder.decodeAudio(mediaPacket);
+			else if ((decoder = audioDecoders.get(streamIndex)) != null) {
+				if (decoder.decodeAudio(mediaPacket, audioFrames) > 0) {
+					decoded = audioFrames.get(0);
+
+					for (int i = 1; i < audioFrames.size(); i++)
+						pendingFrames.add(audioFrames.get(i));
+
+					pendingStream = streamIndex;
+					audioFrames.clear();
+				}
 			}
 
 			av_free_packet(avPacket);
 			mediaPacket.clear();
+
+			if (decoded == null) {
+				// all buffered frames of a draining decoder have been retrieved
+				if (draining)
+					drainStreams.poll();
+
+				continue;
+			}
+
+			mediaFrame = decoded;
+
+			if (seekTarget != AV_NOPTS_VALUE && mediaFrame.hasFrame()) {
+				if (dropFrame(streamIndex, mediaFrame))
+					mediaFrame = new MediaFrame();
+			}
 		}
 
 		return mediaFrame;
 	}
 
+	/**
+	 * Consecutively retrieves compressed media packets from previously specified input
+	 * source. The packets are not decoded, thus this method is the preferred way for
+	 * remuxing or analysing streams. Packets of different streams may alternate between
+	 * consecutive calls, see {@link MediaPacket#getStreamIndex()}.
+	 * <p/>
+	 * The returned packet owns its data and should be released with
+	 * {@link MediaPacket#clear()} when it is no longer needed.
+	 *
+	 * @return a compressed media packet, or {@code null} if the end of input is reached.
+	 *
+	 * @throws JavaAVException if media packet could not be retrieved.
+	 */
+	public MediaPacket readPacket() throws JavaAVException {
+		if (formatContext == null)
+			throw new JavaAVException("Could not read packet, demuxer is not opened.");
+
+		AVPacket packet = new AVPacket();
+
+		do {
+			if (nextPacket(packet) < 0)
+				return null;
+
+			if (activeStreams.contains(packet.stream_index()))
+				break;
+
+			// some demuxers return packets of discarded streams
+			av_free_packet(packet);
+		}
+		while (true);
+
+		// detach packet data from buffers owned by the demuxer
+		if (av_dup_packet(packet) < 0) {
+			av_free_packet(packet);
+			throw new JavaAVException("Could not duplicate packet data.");
+		}
+
+		indexPacket(packet);
+
+		MediaPacket mediaPacket = new MediaPacket(packet);
+		mediaPacket.setKeyFrame((packet.flags() & AV_PKT_FLAG_KEY) != 0);
+		mediaPacket.setTimeBase(formatContext.streams(packet.stream_index()).time_base());
+
+		return mediaPacket;
+	}
+
+	/**
+	 * Seek to the specified timestamp. The {@code SeekMode} determines at which frame
+	 * reading continues. All decoders are flushed, so that no frames from before the
+	 * seek are returned.
+	 * <p/>
+	 * If the target lies in a part of the input that was already read, the position of
+	 * the keyframe is taken from the keyframe index of this {@code Demuxer}, provided the
+	 * input format supports seeking by byte position. Otherwise FFmpeg seeks using the
+	 * index of the container or by searching the input.
+	 *
+	 * @param timestamp the target timestamp in microseconds.
+	 * @param mode      the seek mode.
+	 *
+	 * @throws JavaAVException if seeking failed.
+	 */
+	public void seek(long timestamp, SeekMode mode) throws JavaAVException {
+		if (formatContext == null)
+			throw new JavaAVException("Could not seek, demuxer is not opened.");
+
+		if (mode == null)
+			throw new JavaAVException("Could not seek, no seek mode provided.");
+
+		// the reader thread must not access the input while seeking, buffered packets
+		// are kept until the seek succeeded
+		if (prefetcher != null)
+			prefetcher.pause();
+
+		boolean seeked = false;
+
+		if (mode != SeekMode.ANY && canSeekByIndex()) {
+			Long position = keyFrameIndex.find(timestamp, mode == SeekMode.KEYFRAME);
+
+			if (position != null)
+				seeked = av_seek_frame(formatContext, -1, position, AVSEEK_FLAG_BYTE) >= 0;
+		}
+
+		if (!seeked) {
+			long minTimestamp = Long.MIN_VALUE;
+			long maxTimestamp = Long.MAX_VALUE;
+			int flags = 0;
+
+			switch (mode) {
+				case EXACT:
+				case BACKWARD:
+					maxTimestamp = timestamp;
+					break;
+				case ANY:
+					flags = AVSEEK_FLAG_ANY;
+					break;
+				default:
+					break;
+			}
+
+			if (avformat_seek_file(formatContext, -1, minTimestamp, timestamp, maxTimestamp, flags) < 0) {
+				if (prefetcher != null)
+					prefetcher.start();
+
+				throw new JavaAVException("Could not seek to timestamp " + timestamp);
+			}
+		}
+
+		for (Decoder decoder : videoDecoders.values())
+			decoder.flush();
+		for (Decoder decoder : audioDecoders.values())
+			decoder.flush();
+
+		keyFrameIndex.interrupt();
+		drainStreams = null;
+		releasePendingFrames();
+
+		seekTarget = mode == SeekMode.EXACT ? timestamp : AV_NOPTS_VALUE;
+
+		if (prefetcher != null) {
+			prefetcher.clear();
+			prefetcher.start();
+		}
+	}
+
+	/**
+	 * Enable or disable native format mode of the video decoders. In native format
+	 * mode decoded images are passed in the pixel format of the codec, e.g. YUV420P,
+	 * without conversion. Must be called before {@link #open(String)}.
+	 *
+	 * @param nativeFormat true to pass images in the codec's native pixel format.
+	 *
+	 * @see Decoder#setNativeFormat(boolean)
+	 */
+	public void setNativeFormat(boolean nativeFormat) {
+		this.nativeFormat = nativeFormat;
+	}
+
+	/**
+	 * Check whether decoded images are passed in the codec's native pixel format.
+	 *
+	 * @return true if native format mode is enabled.
+	 */
+	public boolean isNativeFormat() {
+		return nativeFormat;
+	}
+
+	/**
+	 * Enable or disable reading packets ahead on a dedicated thread. Must be called
+	 * before {@link #open(String)}.
+	 *
+	 * @param prefetch true to read packets ahead.
+	 */
+	public void setPrefetch(boolean prefetch) {
+		this.prefetch = prefetch;
+	}
+
+	/**
+	 * Check whether packets are read ahead on a dedicated thread.
+	 *
+	 * @return true if packets are read ahead.
+	 */
+	public boolean isPrefetch() {
+		return prefetch;
+	}
+
+	/**
+	 * Set the limits of the per-stream queues used for reading ahead. The reader
+	 * thread pauses as soon as one of the limits of a stream is reached. Must be
+	 * called before {@link #open(String)}.
+	 *
+	 * @param maxBytes    the maximum number of bytes read ahead per stream.
+	 * @param maxDuration the maximum duration in microseconds read ahead per stream.
+	 *
+	 * @throws JavaAVException if a limit is not positive.
+	 */
+	public void setPrefetchLimits(long maxBytes, long maxDuration) throws JavaAVException {
+		if (maxBytes <= 0 || maxDuration <= 0)
+			throw new JavaAVException("Prefetch limits must be positive.");
+
+		this.prefetchBytes = maxBytes;
+		this.prefetchDuration = maxDuration;
+	}
+
+	/**
+	 * Get the number of packets read ahead for the specified stream.
+	 *
+	 * @param streamIndex the stream index.
+	 *
+	 * @return the number of queued packets, or 0 if prefetching is disabled.
+	 */
+	public int getQueuedPackets(int streamIndex) {
+		return prefetcher == null ? 0 : prefetcher.getPacketCount(streamIndex);
+	}
+
+	/**
+	 * Get the number of bytes read ahead for the specified stream.
+	 *
+	 * @param streamIndex the stream index.
+	 *
+	 * @return the number of queued bytes, or 0 if prefetching is disabled.
+	 */
+	public long getQueuedBytes(int streamIndex) {
+		return prefetcher == null ? 0 : prefetcher.getBytes(streamIndex);
+	}
+
+	/**
+	 * Get the duration of the packets read ahead for the specified stream.
+	 *
+	 * @param streamIndex the stream index.
+	 *
+	 * @return the queued duration in microseconds, or 0 if prefetching is disabled.
+	 */
+	public long getQueuedDuration(int streamIndex) {
+		return prefetcher == null ? 0 : prefetcher.getDuration(streamIndex);
+	}
+
+	/**
+	 * Get the number of packets reading had to wait for, since all queues were empty.
+	 * A growing number indicates that the input source is the bottleneck.
+	 *
+	 * @return the number of queue underruns, or 0 if prefetching is disabled.
+	 */
+	public long getPrefetchUnderruns() {
+		return prefetcher == null ? 0 : prefetcher.getUnderruns();
+	}
+
+	/**
+	 * Get the number of packets the reader thread had to hold back, since their queue
+	 * was full. A growing number indicates that decoding is the bottleneck.
+	 *
+	 * @return the number of reader stalls, or 0 if prefetching is disabled.
+	 */
+	public long getPrefetchStalls() {
+		return prefetcher == null ? 0 : prefetcher.getStalls();
+	}
+
+	/**
+	 * Select the stream at specified index for demuxing. Must be called before
+	 * {@link #open(String)}.
+	 *
+	 * @param streamIndex the index of the stream to select.
+	 */
+	public void selectStream(int streamIndex) {
+		selectedStreams.add(streamIndex);
+	}
+
+	/**
+	 * Select all streams of the specified media type for demuxing. Must be called
+	 * before {@link #open(String)}.
+	 *
+	 * @param type the media type of the streams to select.
+	 */
+	public void selectStreams(MediaType type) {
+		selectedTypes.add(type);
+	}
+
+	/**
+	 * Select the best stream of the specified media type for demuxing. The best stream
+	 * is determined by FFmpeg while opening the input source, e.g. based on the stream
+	 * disposition or resolution. Must be called before {@link #open(String)}.
+	 *
+	 * @param type the media type of the stream to select.
+	 */
+	public void selectBestStream(MediaType type) {
+		bestStreamTypes.add(type);
+	}
+
+	/**
+	 * Determines whether the stream at specified index is demuxed or discarded.
+	 *
+	 * @param streamIndex the stream index.
+	 *
+	 * @return true if the stream is demuxed, false if it is discarded.
+	 */
+	public boolean isStreamSelected(int streamIndex) {
+		return activeStreams.contains(streamIndex);
+	}
+
+	/**
+	 * Get the number of streams within the input source.
+	 *
+	 * @return number of streams.
+	 */
+	public int getStreamCount() {
+		return formatContext == null ? 0 : formatContext.nb_streams();
+	}
+
+	/**
+	 * Get the media type of the stream at specified index.
+	 *
+	 * @param streamIndex the stream index.
+	 *
+	 * @return media type of the stream.
+	 */
+	public MediaType getStreamMediaType(int streamIndex) {
+		return MediaType.byId(getStream(streamIndex).codec().codec_type());
+	}
+
+	/**
+	 * Get the stream at specified index.
+	 *
+	 * @param streamIndex the stream index.
+	 *
+	 * @return the stream.
+	 */
+	AVStream getStream(int streamIndex) {
+		if (streamIndex < 0 || streamIndex >= getStreamCount())
+			throw new IndexOutOfBoundsException("Invalid stream index: " + streamIndex);
+
+		return formatContext.streams(streamIndex);
+	}
+
 	/**
 	 * Set the format of the input source. Usually this is not required since the format
 	 * is detected automatically while opening the source.
@@ -219,40 +842,159 @@ public class Demuxer extends Configurable {
 	}
 
 	public int getImageWidth() {
-		Decoder decoder = videoDecoders.get(0);
+		Decoder decoder = getFirstDecoder(videoDecoders);
 		return decoder == null ? super.getImageWidth() : decoder.getImageWidth();
 	}
 
 	public int getImageHeight() {
-		Decoder decoder = videoDecoders.get(0);
+		Decoder decoder = getFirstDecoder(videoDecoders);
 		return decoder == null ? super.getImageHeight() : decoder.getImageHeight();
 	}
 
 	public PixelFormat getPixelFormat() {
-		Decoder decoder = videoDecoders.get(0);
+		Decoder decoder = getFirstDecoder(videoDecoders);
 		return decoder == null ? super.getPixelFormat() : decoder.getPixelFormat();
 	}
 
 	public double getFrameRate() {
-		Decoder decoder = videoDecoders.get(0);
+		Decoder decoder = getFirstDecoder(videoDecoders);
 		return decoder == null ? super.getFramerate() : decoder.getFramerate();
 	}
 
 	public int getAudioChannels() {
-		Decoder decoder = audioDecoders.get(0);
+		Decoder decoder = getFirstDecoder(audioDecoders);
 		return decoder == null ? super.getAudioChannels() : decoder.getAudioChannels();
 	}
 
 	public SampleFormat getSampleFormat() {
-		Decoder decoder = audioDecoders.get(0);
+		Decoder decoder = getFirstDecoder(audioDecoders);
 		return decoder == null ? super.getSampleFormat() : decoder.getSampleFormat();
 	}
 
 	public int getSampleRate() {
-		Decoder decoder = audioDecoders.get(0);
+		Decoder decoder = getFirstDecoder(audioDecoders);
 		return decoder == null ? super.getSampleRate() : decoder.getSampleRate();
 	}
 
+	/**
+	 * Read the next packet, either directly from the input or from the read-ahead
+	 * queues.
+	 *
+	 * @param packet the packet to fill.
+	 *
+	 * @return 0 on success, a negative value at the end of input.
+	 *
+	 * @throws JavaAVException if interrupted while waiting for packets.
+	 */
+	private int nextPacket(AVPacket packet) throws JavaAVException {
+		if (prefetcher == null)
+			return av_read_frame(formatContext, packet);
+
+		AVPacket queued = prefetcher.take();
+
+		if (queued == null)
+			return AVERROR_EOF;
+
+		// move packet fields including data ownership
+		packet.put(queued);
+		queued.deallocate();
+
+		return 0;
+	}
+
+	/**
+	 * Add a packet of the seek stream to the keyframe index.
+	 *
+	 * @param packet the read packet.
+	 */
+	private void indexPacket(AVPacket packet) {
+		if (packet.stream_index() != seekStream)
+			return;
+
+		long pts = packet.pts() != AV_NOPTS_VALUE ? packet.pts() : packet.dts();
+
+		if (pts == AV_NOPTS_VALUE)
+			return;
+
+		AVRational timeBase = formatContext.streams(seekStream).time_base();
+		long timestamp = av_rescale(pts, 1000000L * timeBase.num(), timeBase.den());
+
+		keyFrameIndex.add(timestamp, packet.pos(), (packet.flags() & AV_PKT_FLAG_KEY) != 0);
+	}
+
+	/**
+	 * Seeking by the keyframe index requires seeking by byte position. This is only
+	 * worth it for formats that otherwise have to search the input for timestamps.
+	 * Formats with a proper index, e.g. MP4 or Matroska, seek by their own index.
+	 *
+	 * @return true if the keyframe index is used for seeking.
+	 */
+	private boolean canSeekByIndex() {
+		AVInputFormat inputFormat = formatContext.iformat();
+
+		if ((inputFormat.flags() & AVFMT_NO_BYTE_SEEK) != 0)
+			return false;
+
+		Pointer readTimestamp = inputFormat.read_timestamp();
+
+		return readTimestamp != null && !readTimestamp.isNull();
+	}
+
+	/**
+	 * Determines whether a decoded frame precedes the target of an exact seek.
+	 *
+	 * @param streamIndex the stream index of the frame.
+	 * @param frame       the decoded frame.
+	 *
+	 * @return true if the frame must be dropped.
+	 */
+	private boolean dropFrame(int streamIndex, MediaFrame frame) {
+		long timestamp = frame.getTimestamp();
+
+		if (timestamp != AV_NOPTS_VALUE && timestamp < seekTarget) {
+			frame.release();
+
+			return true;
+		}
+
+		if (streamIndex == seekStream)
+			seekTarget = AV_NOPTS_VALUE;
+
+		return false;
+	}
+
+	private Decoder getFirstDecoder(Map<Integer, Decoder> decoders) {
+		if (decoders == null || decoders.isEmpty())
+			return null;
+
+		return decoders.values().iterator().next();
+	}
+
+	private Set<Integer> findBestStreams() {
+		Set<Integer> streams = new HashSet<Integer>();
+		int videoIndex = -1;
+
+		// find video first, since audio and subtitle streams are related to the video stream
+		if (bestStreamTypes.contains(MediaType.VIDEO)) {
+			videoIndex = av_find_best_stream(formatContext, AVMEDIA_TYPE_VIDEO, -1, -1, (AVCodec) null, 0);
+
+			if (videoIndex >= 0)
+				streams.add(videoIndex);
+		}
+
+		for (MediaType type : bestStreamTypes) {
+			if (type == MediaType.VIDEO)
+				continue;
+
+			int index = av_find_best_stream(formatContext, type.value(), -1, videoIndex, (AVCodec) null, 0);
+
+			if (index >= 0)
+				streams.add(index);
+		}
+
+		return streams;
+	}
+
 	private void initVideoDecoder(int index, AVCodecContext codecContext) throws JavaAVException {
 		if (codecContext == null)
 			return;
@@ -261,6 +1003,12 @@ public class Demuxer extends Configurable {
 
 		Decoder decoder = new Decoder(codecId, codecContext);
 		decoder.setPixelFormat(getPixelFormat());
+		decoder.setNativeFormat(nativeFormat);
+		decoder.setScalerThreadCount(scalerThreadCount);
+		decoder.setScalerFlags(scalerFlags.toArray(new ScalerFlag[0]));
+		decoder.setThreadCount(getThreadCount());
+		decoder.setThreadTypes(threadTypes.toArray(new ThreadType[0]));
+		decoder.setTimeBase(formatContext.streams(index).time_base());
 		decoder.open(null);
 
 		videoDecoders.put(index, decoder);
@@ -273,6 +1021,7 @@ public class Demuxer extends Configurable {
 		CodecID codecId = CodecID.byId(codecContext.codec_id());
 
 		Decoder decoder = new Decoder(codecId, codecContext);
+		decoder.setTimeBase(formatContext.streams(index).time_base());
 		decoder.open(null);
 
 		audioDecoders.put(index, decoder);
@@ -26,8 +26,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 
@@ -59,6 +61,8 @@ import static org.bytedeco.javacpp.avutil.av_get_channel_layout_nb_channels;
 import static org.bytedeco.javacpp.avutil.av_get_default_channel_layout;
 import static org.bytedeco.javacpp.avutil.av_malloc;
 import static org.bytedeco.javacpp.avutil.av_q2d;
+import static org.bytedeco.javacpp.avutil.av_rescale;
+import static org.bytedeco.javacpp.avutil.av_samples_set_silence;
 
 public class Encoder extends Coder {
 
@@ -91,12 +95,24 @@ public class Encoder extends Coder {
 	/** Audio re-sampler that is used to convert provided audio frames into encoder audio format */
 	private AudioResampler audioResampler;
 
+	/** Reusable list of audio frames to encode */
+	private final List<AudioFrame> resampledFrames = new ArrayList<AudioFrame>();
+
+	/** Audio packets encoded from the drained re-sampler */
+	private final Deque<MediaPacket> flushedPackets = new ArrayDeque<MediaPacket>();
+
+	/** Indicates whether the audio re-sampler has been drained */
+	private boolean audioResamplerDrained;
+
 	/** Picture re-sampler that is used to convert provided pictures into encoder picture format */
 	private PictureResampler videoResampler;
 
 	/** Synchronization counter */
 	private long sync_opts;
 
+	/** The timestamp in microseconds that corresponds to pts 0 */
+	private long startTime = AV_NOPTS_VALUE;
+
 
 	public Encoder(CodecID codecId) throws JavaAVException {
 		this(Codec.getEncoderById(codecId), null);
@@ -168,47 +184,74 @@ public class Encoder extends Coder {
 			audioResampler = null;
 		}
 
+		audioResamplerDrained = false;
+		startTime = AV_NOPTS_VALUE;
+		flushedPackets.clear();
+
 		super.close();
 	}
 
 	public MediaPacket encodeVideo(VideoFrame frame) throws JavaAVException {
-		ByteBuffer imageBuffer = null;
-
 		if (frame != null) {
-			imageBuffer = frame.getData();
-
 			int width = frame.getWidth();
 			int height = frame.getHeight();
-			int step = imageBuffer.capacity() / (width * height) * width;
 			int pixelFormat = frame.getPixelFormat().value();
 
-			BytePointer data = new BytePointer(imageBuffer);
 			PictureFormat srcVideoFormat = frame.getPictureFormat();
+			boolean resample = !srcVideoFormat.equals(dstVideoFormat);
+			AVPicture source = resample ? picture : new AVPicture(avFrame);
+
+			if (frame.getPlaneCount() > 1) {
+				// planes with individual line sizes, e.g. decoded in native format
+				for (int i = 0; i < frame.getPlaneCount(); i++) {
+					source.data(i, new BytePointer(frame.getPlane(i)));
+					source.linesize(i, frame.getLineSize(i));
+				}
+			}
+			else {
+				ByteBuffer imageBuffer = frame.getData();
+				int step = imageBuffer.capacity() / (width * height) * width;
+
+				avpicture_fill(source, new BytePointer(imageBuffer), pixelFormat, width, height);
+				source.linesize(0, step);
+			}
 
-			if (!srcVideoFormat.equals(dstVideoFormat)) {
-				if (videoResampler == null)
+			if (resample) {
+				if (videoResampler == null) {
 					videoResampler = new PictureResampler();
+					videoResampler.setThreadCount(scalerThreadCount);
+				}
+
+				// re-apply flags changed after the resampler has been created
+				if (!videoResampler.getFlags().equals(scalerFlags))
+					videoResampler.setFlags(scalerFlags.toArray(new ScalerFlag[0]));
 
 				videoResampler.open(srcVideoFormat, dstVideoFormat);
 
 				int codecWidth = avContext.width();
 				int codecHeight = avContext.height();
 
-				avpicture_fill(picture, data, pixelFormat, width, height);
 				avpicture_fill(new AVPicture(avFrame), pictureBuffer, avContext.pix_fmt(), codecWidth, codecHeight);
 
 				videoResampler.resample(picture, new AVPicture(avFrame));
 			}
-			else {
-				avpicture_fill(new AVPicture(avFrame), data, pixelFormat, width, height);
-				avFrame.linesize(0, step);
-			}
 		}
 
 		av_init_packet(avPacket);
 		avPacket.data(videoBuffer);
 		avPacket.size(videoBufferSize);
 
+		if (frame != null && frame.getTimestamp() != AV_NOPTS_VALUE) {
+			AVRational timeBase = avContext.time_base();
+
+			long pts = rescaleTimestamp(frame.getTimestamp(), timeBase.den(), timeBase.num());
+
+			if (pts < sync_opts)
+				throw new JavaAVException("Video timestamp " + frame.getTimestamp() + " does not follow the frames already encoded.");
+
+			sync_opts = pts;
+		}
+
 		avFrame.pts(sync_opts);
 
 		if (avFrame.interlaced_frame() != 0) {
@@ -226,7 +269,7 @@ public class Encoder extends Coder {
 		if (avContext.me_threshold() == 0)
 			avFrame.pict_type(0);
 
-		if (avcodec_encode_video2(avContext, avPacket, imageBuffer == null ? null : avFrame, gotFrame) < 0)
+		if (avcodec_encode_video2(avContext, avPacket, frame == null ? null : avFrame, gotFrame) < 0)
 			throw new JavaAVException("Could not encode video packet.");
 
 		if (gotFrame[0] != 0) {
@@ -254,36 +297,33 @@ public class Encoder extends Coder {
 		List<MediaPacket> packets = new ArrayList<MediaPacket>();
 		AudioFormat srcFormat = audioFrame.getAudioFormat();
 
-		AudioFrame[] frames;
+		boolean resample = !srcFormat.equals(audioFormat);
+
+		resampledFrames.clear();
 
 		// create re-sampler if sample formats does not match
-		if (!srcFormat.equals(audioFormat)) {
+		if (resample) {
 			if (audioResampler == null) {
 				audioResampler = new AudioResampler();
 				audioResampler.open(srcFormat, audioFormat, avContext.frame_size());
 			}
 
-			frames = audioResampler.resample(audioFrame);
+			audioResampler.resample(audioFrame, resampledFrames);
 		}
 		else {
-			frames = new AudioFrame[]{audioFrame};
+			resampledFrames.add(audioFrame);
 		}
 
-		for (AudioFrame frame : frames) {
-			avcodec_get_frame_defaults(avFrame);
+		for (AudioFrame frame : resampledFrames) {
+			packets.add(encodeAudioSamples(frame));
 
-			for (int i = 0; i < frame.getPlaneCount(); i++) {
-				avFrame.data(i, frame.getPlane(i).position(0));
-				avFrame.linesize(i, frame.getPlane(i).limit());
-			}
-
-			avFrame.nb_samples(frame.getSampleCount());
-			avFrame.quality(avContext.global_quality());
-
-			MediaPacket mediaPacket = encodeAudioFrame(avFrame);
-			packets.add(mediaPacket);
+			// resampled frames return to the pool of the resampler
+			if (resample)
+				frame.release();
 		}
 
+		resampledFrames.clear();
+
 		return packets.toArray(new MediaPacket[0]);
 	}
 
@@ -291,10 +331,129 @@ public class Encoder extends Coder {
 		return encodeVideo(null);
 	}
 
+	/**
+	 * Retrieve delayed audio packets at the end of a stream. First the samples buffered
+	 * by the audio resampler are encoded, the last frame is padded with silence if the
+	 * codec does not support a smaller last frame. Afterwards the encoder is drained.
+	 * This method should be called until it returns {@code null}.
+	 *
+	 * @return a delayed audio packet, or {@code null} if no more packets are available.
+	 *
+	 * @throws JavaAVException if the delayed samples could not be encoded.
+	 */
 	public MediaPacket flushAudio() throws JavaAVException {
+		if (audioResampler != null && !audioResamplerDrained) {
+			audioResamplerDrained = true;
+			resampledFrames.clear();
+
+			audioResampler.flush(resampledFrames);
+
+			for (AudioFrame frame : resampledFrames) {
+				padAudioFrame(frame);
+
+				MediaPacket mediaPacket = encodeAudioSamples(frame);
+
+				if (mediaPacket != null)
+					flushedPackets.add(mediaPacket);
+
+				frame.release();
+			}
+
+			resampledFrames.clear();
+		}
+
+		if (!flushedPackets.isEmpty())
+			return flushedPackets.poll();
+
 		return encodeAudioFrame(null);
 	}
 
+	/**
+	 * Encode the samples of one audio frame. The frame timestamp, relative to the
+	 * start time, is used as the presentation timestamp.
+	 *
+	 * @param frame the audio frame to encode.
+	 *
+	 * @return the encoded packet, or {@code null} if the encoder buffered the samples.
+	 *
+	 * @throws JavaAVException if the samples could not be encoded or the timestamp
+	 * precedes the samples already encoded.
+	 */
+	private MediaPacket encodeAudioSamples(AudioFrame frame) throws JavaAVException {
+		avcodec_get_frame_defaults(avFrame);
+
+		for (int i = 0; i < frame.getPlaneCount(); i++) {
+			avFrame.data(i, frame.getPlane(i).position(0));
+			avFrame.linesize(i, frame.getPlane(i).limit());
+		}
+
+		avFrame.nb_samples(frame.getSampleCount());
+		avFrame.quality(avContext.global_quality());
+
+		long timestamp = frame.getTimestamp();
+
+		if (timestamp != AV_NOPTS_VALUE) {
+			long pts = rescaleTimestamp(timestamp, avContext.sample_rate(), 1);
+
+			if (pts < sync_opts)
+				throw new JavaAVException("Audio timestamp " + timestamp + " precedes the samples already encoded.");
+
+			avFrame.pts(pts);
+		}
+
+		return encodeAudioFrame(avFrame);
+	}
+
+	/**
+	 * Set the timestamp in microseconds that corresponds to pts 0. Streams that are
+	 * muxed together share one start time, so that the offset between them is kept.
+	 * If not set, the timestamp of the first encoded frame is used.
+	 *
+	 * @param startTime the start time in microseconds.
+	 */
+	void setStartTime(long startTime) {
+		this.startTime = startTime;
+	}
+
+	/**
+	 * Convert a frame timestamp into codec time base units relative to the start time.
+	 *
+	 * @param timestamp the timestamp in microseconds.
+	 * @param den       the denominator of the codec time base.
+	 * @param num       the numerator of the codec time base.
+	 *
+	 * @return the presentation timestamp.
+	 */
+	private long rescaleTimestamp(long timestamp, int den, int num) {
+		if (startTime == AV_NOPTS_VALUE)
+			startTime = timestamp;
+
+		return av_rescale(timestamp - startTime, den, 1000000L * num);
+	}
+
+	/**
+	 * Fill the last audio frame of a stream with silence up to the codec frame size, if
+	 * the codec requires full frames.
+	 *
+	 * @param frame the last audio frame.
+	 */
+	private void padAudioFrame(AudioFrame frame) {
+		int frameSize = avContext.frame_size();
+		int samples = frame.getSampleCount();
+
+		if (frameSize <= 0 || samples >= frameSize || frame.getCapacity() < frameSize)
+			return;
+		if (codec.hasCapability(CodecCapability.SMALL_LAST_FRAME) || codec.hasCapability(CodecCapability.VARIABLE_FRAME_SIZE))
+			return;
+
+		AudioFormat format = frame.getAudioFormat();
+
+		av_samples_set_silence(frame.getData(), samples, frameSize - samples, format.getChannels(),
+				format.getSampleFormat().value());
+
+		frame.setSampleCount(frameSize);
+	}
+
 	private MediaPacket encodeAudioFrame(AVFrame frame) throws JavaAVException {
 		av_init_packet(avPacket);
 		avPacket.data(audioBuffer);
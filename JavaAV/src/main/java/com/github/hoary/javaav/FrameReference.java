@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2013 Alex Andres
+ *
+ * This file is part of JavaAV.
+ *
+ * JavaAV is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version (subject to the "Classpath"
+ * exception as provided in the LICENSE file that accompanied
+ * this code).
+ *
+ * JavaAV is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaAV. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.github.hoary.javaav;
+
+import org.bytedeco.javacpp.Pointer;
+
+import static org.bytedeco.javacpp.avutil.AVFrame;
+import static org.bytedeco.javacpp.avutil.av_frame_alloc;
+import static org.bytedeco.javacpp.avutil.av_frame_free;
+
+/**
+ * {@code FrameReference} is an {@code AVFrame} that holds references to reference
+ * counted frame buffers. The frame and its buffer references are freed with
+ * {@link #deallocate()}, or by the garbage collector if the frame is not released
+ * explicitly.
+ *
+ * @author Alex Andres
+ */
+class FrameReference extends AVFrame {
+
+	/**
+	 * Allocate a new empty frame.
+	 *
+	 * @throws JavaAVException if the frame could not be allocated.
+	 */
+	FrameReference() throws JavaAVException {
+		this(av_frame_alloc());
+	}
+
+	/**
+	 * Take ownership of the specified frame.
+	 *
+	 * @param frame the frame to own.
+	 *
+	 * @throws JavaAVException if the frame is {@code null}.
+	 */
+	FrameReference(AVFrame frame) throws JavaAVException {
+		super(frame);
+
+		if (frame == null || frame.isNull())
+			throw new JavaAVException("Could not allocate frame.");
+
+		deallocator(new FreeDeallocator(frame));
+	}
+
+
+
+	/**
+	 * Frees the frame, must not reference the owning {@code FrameReference}.
+	 */
+	private static class FreeDeallocator extends AVFrame implements Pointer.Deallocator {
+
+		FreeDeallocator(AVFrame frame) {
+			super(frame);
+		}
+
+		@Override
+		public void deallocate() {
+			av_frame_free(this);
+		}
+
+	}
+
+}
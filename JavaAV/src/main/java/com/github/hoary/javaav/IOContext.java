@@ -0,0 +1,723 @@
+/*
+ * Copyright (C) 2013 Alex Andres
+ *
+ * This file is part of JavaAV.
+ *
+ * JavaAV is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version (subject to the "Classpath"
+ * exception as provided in the LICENSE file that accompanied
+ * this code).
+ *
+ * JavaAV is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaAV. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.github.hoary.javaav;
+
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.Pointer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+import static org.bytedeco.javacpp.avformat.AVIOContext;
+import static org.bytedeco.javacpp.avformat.AVSEEK_FORCE;
+import static org.bytedeco.javacpp.avformat.AVSEEK_SIZE;
+import static org.bytedeco.javacpp.avformat.Read_packet_Pointer_BytePointer_int;
+import static org.bytedeco.javacpp.avformat.Seek_Pointer_long_int;
+import static org.bytedeco.javacpp.avformat.Write_packet_Pointer_BytePointer_int;
+import static org.bytedeco.javacpp.avformat.avio_alloc_context;
+import static org.bytedeco.javacpp.avutil.AVERROR_EOF;
+import static org.bytedeco.javacpp.avutil.AVERROR_EXTERNAL;
+import static org.bytedeco.javacpp.avutil.av_free;
+import static org.bytedeco.javacpp.avutil.av_malloc;
+
+/**
+ * {@code IOContext} provides a custom {@code AVIOContext} that reads media data from
+ * Java sources, or writes media data to Java sinks, instead of letting FFmpeg open a
+ * URL. Read, write and seek requests of FFmpeg are forwarded to the implementations
+ * of {@link #read(ByteBuffer)}, {@link #write(ByteBuffer)} and {@link #seek(long)}.
+ * FFmpeg collects written data in the I/O buffer, thus the sink receives writes of
+ * up to the buffer size.
+ * <p/>
+ * The native callbacks are shared by all contexts, since JavaCPP supports only a
+ * limited number of callback instances. Each context is identified by an id passed
+ * to the callbacks as value of the opaque pointer. The id is an index into a table
+ * of open contexts, thus the callbacks find their context without allocation.
+ *
+ * @author Alex Andres
+ */
+abstract class IOContext {
+
+	/** The default size of the I/O buffer in bytes. */
+	static final int DEFAULT_BUFFER_SIZE = 32768;
+
+	/** Open contexts indexed by their ids, replaced on every change. Id 0 is not used. */
+	private static volatile IOContext[] contexts = new IOContext[16];
+
+	/** Read callback shared by all contexts. */
+	private static final Read_packet_Pointer_BytePointer_int READ_CALLBACK = new Read_packet_Pointer_BytePointer_int() {
+
+		@Override
+		public int call(Pointer opaque, BytePointer buffer, int size) {
+			IOContext context = getContext(opaque);
+
+			if (context == null)
+				return AVERROR_EXTERNAL;
+
+			try {
+				int read = context.read(buffer.capacity(size).asByteBuffer());
+
+				return read < 0 ? AVERROR_EOF : read;
+			}
+			catch (IOException e) {
+				context.error = e;
+				return AVERROR_EXTERNAL;
+			}
+			catch (RuntimeException e) {
+				// must not pass the native callback
+				context.error = new IOException(e);
+				return AVERROR_EXTERNAL;
+			}
+		}
+	};
+
+	/** Write callback shared by all contexts. */
+	private static final Write_packet_Pointer_BytePointer_int WRITE_CALLBACK = new Write_packet_Pointer_BytePointer_int() {
+
+		@Override
+		public int call(Pointer opaque, BytePointer buffer, int size) {
+			IOContext context = getContext(opaque);
+
+			if (context == null)
+				return AVERROR_EXTERNAL;
+
+			try {
+				context.write(buffer.capacity(size).asByteBuffer());
+
+				return size;
+			}
+			catch (IOException e) {
+				context.error = e;
+				return AVERROR_EXTERNAL;
+			}
+			catch (RuntimeException e) {
+				// must not pass the native callback
+				context.error = new IOException(e);
+				return AVERROR_EXTERNAL;
+			}
+		}
+	};
+
+	/** Seek callback shared by all contexts. */
+	private static final Seek_Pointer_long_int SEEK_CALLBACK = new Seek_Pointer_long_int() {
+
+		@Override
+		public long call(Pointer opaque, long offset, int whence) {
+			IOContext context = getContext(opaque);
+
+			if (context == null)
+				return AVERROR_EXTERNAL;
+
+			try {
+				if ((whence & AVSEEK_SIZE) != 0)
+					return context.size();
+
+				long position;
+
+				// whence values as defined by stdio
+				switch (whence & ~AVSEEK_FORCE) {
+					case 0:
+						position = offset;
+						break;
+					case 1:
+						position = context.position() + offset;
+						break;
+					case 2:
+						long size = context.size();
+
+						if (size < 0)
+							return AVERROR_EXTERNAL;
+
+						position = size + offset;
+						break;
+					default:
+						return AVERROR_EXTERNAL;
+				}
+
+				if (position < 0)
+					return AVERROR_EXTERNAL;
+
+				return context.seek(position);
+			}
+			catch (IOException e) {
+				context.error = e;
+				return AVERROR_EXTERNAL;
+			}
+			catch (RuntimeException e) {
+				// must not pass the native callback
+				context.error = new IOException(e);
+				return AVERROR_EXTERNAL;
+			}
+		}
+	};
+
+	/** The native I/O context. */
+	private AVIOContext avioContext;
+
+	/** The id of this context, passed to the callbacks as opaque pointer. */
+	private int id;
+
+	/** The last I/O error. */
+	private IOException error;
+
+	/** Whether the source or sink supports seeking. */
+	private final boolean seekable;
+
+
+	/**
+	 * Create a new {@code IOContext} with an I/O buffer of the specified size.
+	 *
+	 * @param bufferSize the I/O buffer size in bytes.
+	 * @param writable   true for a sink, false for a source.
+	 * @param seekable   whether the source or sink supports seeking.
+	 *
+	 * @throws JavaAVException if the native context could not be allocated.
+	 */
+	IOContext(int bufferSize, boolean writable, boolean seekable) throws JavaAVException {
+		if (bufferSize <= 0)
+			throw new JavaAVException("Invalid I/O buffer size: " + bufferSize);
+
+		BytePointer buffer = new BytePointer(av_malloc(bufferSize));
+
+		if (buffer.isNull())
+			throw new JavaAVException("Could not allocate I/O buffer.");
+
+		id = register(this);
+
+		avioContext = avio_alloc_context(buffer, bufferSize, writable ? 1 : 0, new OpaqueId(id),
+				writable ? null : READ_CALLBACK, writable ? WRITE_CALLBACK : null,
+				seekable ? SEEK_CALLBACK : null);
+
+		if (avioContext == null || avioContext.isNull()) {
+			unregister(id);
+			av_free(buffer);
+			throw new JavaAVException("Could not allocate I/O context.");
+		}
+
+		this.seekable = seekable;
+	}
+
+	/**
+	 * Find the context of a native callback.
+	 *
+	 * @param opaque the opaque pointer holding the context id.
+	 *
+	 * @return the context, or {@code null} if the context is closed.
+	 */
+	private static IOContext getContext(Pointer opaque) {
+		IOContext[] table = contexts;
+		long id = opaque == null ? 0 : opaque.address();
+
+		if (id <= 0 || id >= table.length)
+			return null;
+
+		return table[(int) id];
+	}
+
+	/**
+	 * Add a context to the table of open contexts.
+	 *
+	 * @param context the context to add.
+	 *
+	 * @return the id of the context.
+	 */
+	private static synchronized int register(IOContext context) {
+		IOContext[] table = contexts;
+		int id = 1;
+
+		while (id < table.length && table[id] != null)
+			id++;
+
+		table = Arrays.copyOf(table, id < table.length ? table.length : 2 * table.length);
+		table[id] = context;
+		contexts = table;
+
+		return id;
+	}
+
+	/**
+	 * Remove a context from the table of open contexts.
+	 *
+	 * @param id the id of the context.
+	 */
+	private static synchronized void unregister(int id) {
+		IOContext[] table = Arrays.copyOf(contexts, contexts.length);
+		table[id] = null;
+		contexts = table;
+	}
+
+	/**
+	 * Check whether the source or sink supports seeking.
+	 *
+	 * @return true if seekable.
+	 */
+	boolean isSeekable() {
+		return seekable;
+	}
+
+	/**
+	 * Get the native I/O context.
+	 *
+	 * @return the native I/O context.
+	 */
+	AVIOContext getAVIOContext() {
+		return avioContext;
+	}
+
+	/**
+	 * Get the last error that occurred while reading or seeking.
+	 *
+	 * @return the last I/O error, or {@code null} if no error occurred.
+	 */
+	IOException getError() {
+		return error;
+	}
+
+	/**
+	 * Release the native I/O context and close the source.
+	 */
+	void close() {
+		if (id > 0) {
+			unregister(id);
+			id = 0;
+		}
+
+		if (avioContext != null) {
+			// the buffer may have been reallocated by FFmpeg
+			av_free(avioContext.buffer());
+			av_free(avioContext);
+			avioContext = null;
+		}
+
+		try {
+			closeSource();
+		}
+		catch (IOException e) {
+			// nothing to do
+		}
+	}
+
+	/**
+	 * Read bytes from the source into the specified buffer.
+	 *
+	 * @param buffer the buffer to fill, starting at its position up to its limit.
+	 *
+	 * @return the number of bytes read, or -1 at the end of the source.
+	 *
+	 * @throws IOException if the source could not be read.
+	 */
+	int read(ByteBuffer buffer) throws IOException {
+		throw new IOException("I/O context is not readable.");
+	}
+
+	/**
+	 * Write all remaining bytes of the specified buffer to the sink.
+	 *
+	 * @param buffer the buffer to write, from its position up to its limit.
+	 *
+	 * @throws IOException if the sink could not be written.
+	 */
+	void write(ByteBuffer buffer) throws IOException {
+		throw new IOException("I/O context is not writable.");
+	}
+
+	/**
+	 * Set the read position of the source.
+	 *
+	 * @param position the new position in bytes.
+	 *
+	 * @return the new position in bytes.
+	 *
+	 * @throws IOException if the position could not be set.
+	 */
+	abstract long seek(long position) throws IOException;
+
+	/**
+	 * Get the current read position of the source.
+	 *
+	 * @return the current position in bytes.
+	 *
+	 * @throws IOException if the position is not available.
+	 */
+	abstract long position() throws IOException;
+
+	/**
+	 * Get the size of the source.
+	 *
+	 * @return the size in bytes, or -1 if unknown.
+	 *
+	 * @throws IOException if the size is not available.
+	 */
+	abstract long size() throws IOException;
+
+	/**
+	 * Close the source.
+	 *
+	 * @throws IOException if the source could not be closed.
+	 */
+	abstract void closeSource() throws IOException;
+
+
+
+	/**
+	 * Opaque pointer whose value is the id of a context. FFmpeg never dereferences it.
+	 */
+	private static class OpaqueId extends Pointer {
+
+		OpaqueId(int id) {
+			address = id;
+		}
+
+	}
+
+
+
+	/**
+	 * Reads from an {@code InputStream}. Streams are not seekable, FFmpeg keeps the
+	 * data required for format probing in its buffer.
+	 */
+	static class StreamIOContext extends IOContext {
+
+		private final InputStream stream;
+
+		private final byte[] transfer;
+
+		private long position;
+
+
+		StreamIOContext(InputStream stream, int bufferSize) throws JavaAVException {
+			super(bufferSize, false, false);
+
+			this.stream = stream;
+			this.transfer = new byte[bufferSize];
+		}
+
+		@Override
+		int read(ByteBuffer buffer) throws IOException {
+			int read = stream.read(transfer, 0, Math.min(transfer.length, buffer.remaining()));
+
+			if (read > 0) {
+				buffer.put(transfer, 0, read);
+				position += read;
+			}
+
+			return read;
+		}
+
+		@Override
+		long seek(long position) throws IOException {
+			throw new IOException("Input stream is not seekable.");
+		}
+
+		@Override
+		long position() {
+			return position;
+		}
+
+		@Override
+		long size() {
+			return -1;
+		}
+
+		@Override
+		void closeSource() throws IOException {
+			stream.close();
+		}
+
+	}
+
+
+
+	/**
+	 * Reads from a {@code SeekableByteChannel} directly into the native I/O buffer.
+	 */
+	static class ChannelIOContext extends IOContext {
+
+		private final SeekableByteChannel channel;
+
+
+		ChannelIOContext(SeekableByteChannel channel, int bufferSize) throws JavaAVException {
+			super(bufferSize, false, true);
+
+			this.channel = channel;
+		}
+
+		@Override
+		int read(ByteBuffer buffer) throws IOException {
+			int read;
+
+			// FFmpeg treats zero bytes as end of input
+			do {
+				read = channel.read(buffer);
+			}
+			while (read == 0 && buffer.hasRemaining());
+
+			return read;
+		}
+
+		@Override
+		long seek(long position) throws IOException {
+			channel.position(position);
+
+			return position;
+		}
+
+		@Override
+		long position() throws IOException {
+			return channel.position();
+		}
+
+		@Override
+		long size() throws IOException {
+			return channel.size();
+		}
+
+		@Override
+		void closeSource() throws IOException {
+			channel.close();
+		}
+
+	}
+
+
+
+	/**
+	 * Reads from a {@code ByteBuffer}, e.g. a memory-mapped file. The data is copied
+	 * once into the native I/O buffer. The buffer is read from its position up to its
+	 * limit; the position and limit of the provided buffer are not modified.
+	 */
+	static class BufferIOContext extends IOContext {
+
+		private final ByteBuffer source;
+
+
+		BufferIOContext(ByteBuffer source, int bufferSize) throws JavaAVException {
+			super(bufferSize, false, true);
+
+			this.source = source.slice();
+		}
+
+		@Override
+		int read(ByteBuffer buffer) {
+			if (!source.hasRemaining())
+				return -1;
+
+			int length = Math.min(source.remaining(), buffer.remaining());
+
+			ByteBuffer chunk = source.duplicate();
+			chunk.limit(chunk.position() + length);
+
+			buffer.put(chunk);
+			source.position(source.position() + length);
+
+			return length;
+		}
+
+		@Override
+		long seek(long position) throws IOException {
+			if (position > source.capacity())
+				throw new IOException("Position out of range: " + position);
+
+			source.position((int) position);
+
+			return position;
+		}
+
+		@Override
+		long position() {
+			return source.position();
+		}
+
+		@Override
+		long size() {
+			return source.capacity();
+		}
+
+		@Override
+		void closeSource() {
+			// nothing to close
+		}
+
+	}
+
+
+
+	/**
+	 * Writes to an {@code OutputStream}. Streams are not seekable.
+	 */
+	static class OutputStreamIOContext extends IOContext {
+
+		private final OutputStream stream;
+
+		private final byte[] transfer;
+
+		private long position;
+
+
+		OutputStreamIOContext(OutputStream stream, int bufferSize) throws JavaAVException {
+			super(bufferSize, true, false);
+
+			this.stream = stream;
+			this.transfer = new byte[bufferSize];
+		}
+
+		@Override
+		void write(ByteBuffer buffer) throws IOException {
+			while (buffer.hasRemaining()) {
+				int length = Math.min(transfer.length, buffer.remaining());
+
+				buffer.get(transfer, 0, length);
+				stream.write(transfer, 0, length);
+
+				position += length;
+			}
+		}
+
+		@Override
+		long seek(long position) throws IOException {
+			throw new IOException("Output stream is not seekable.");
+		}
+
+		@Override
+		long position() {
+			return position;
+		}
+
+		@Override
+		long size() {
+			return -1;
+		}
+
+		@Override
+		void closeSource() throws IOException {
+			stream.close();
+		}
+
+	}
+
+
+
+	/**
+	 * Writes to a {@code WritableByteChannel} directly from the native I/O buffer.
+	 * The channel is seekable if it is a {@code SeekableByteChannel}.
+	 */
+	static class WritableChannelIOContext extends IOContext {
+
+		private final WritableByteChannel channel;
+
+		private long position;
+
+
+		WritableChannelIOContext(WritableByteChannel channel, int bufferSize) throws JavaAVException {
+			super(bufferSize, true, channel instanceof SeekableByteChannel);
+
+			this.channel = channel;
+		}
+
+		@Override
+		void write(ByteBuffer buffer) throws IOException {
+			while (buffer.hasRemaining())
+				position += channel.write(buffer);
+		}
+
+		@Override
+		long seek(long position) throws IOException {
+			((SeekableByteChannel) channel).position(position);
+			this.position = position;
+
+			return position;
+		}
+
+		@Override
+		long position() {
+			return position;
+		}
+
+		@Override
+		long size() throws IOException {
+			if (channel instanceof SeekableByteChannel)
+				return ((SeekableByteChannel) channel).size();
+
+			return -1;
+		}
+
+		@Override
+		void closeSource() throws IOException {
+			channel.close();
+		}
+
+	}
+
+
+
+	/**
+	 * Writes to a growable off-heap {@code OutputBuffer}.
+	 */
+	static class OutputBufferIOContext extends IOContext {
+
+		private final OutputBuffer output;
+
+
+		OutputBufferIOContext(OutputBuffer output, int bufferSize) throws JavaAVException {
+			super(bufferSize, true, true);
+
+			this.output = output;
+		}
+
+		@Override
+		void write(ByteBuffer buffer) throws IOException {
+			output.write(buffer);
+		}
+
+		@Override
+		long seek(long position) throws IOException {
+			if (position > Integer.MAX_VALUE)
+				throw new IOException("Position out of range: " + position);
+
+			output.position((int) position);
+
+			return position;
+		}
+
+		@Override
+		long position() {
+			return output.position();
+		}
+
+		@Override
+		long size() {
+			return output.size();
+		}
+
+		@Override
+		void closeSource() {
+			// the buffer remains accessible
+		}
+
+	}
+
+}
@@ -21,7 +21,11 @@
 
 package com.github.hoary.javaav;
 
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
 import java.awt.image.ComponentSampleModel;
 import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
@@ -31,9 +35,11 @@ import java.awt.image.DataBufferInt;
 import java.awt.image.DataBufferShort;
 import java.awt.image.DataBufferUShort;
 import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.PixelInterleavedSampleModel;
 import java.awt.image.Raster;
 import java.awt.image.SampleModel;
 import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import java.nio.ByteBuffer;
 import java.nio.DoubleBuffer;
 import java.nio.FloatBuffer;
@@ -65,7 +71,7 @@ public final class Image {
 				return PixelFormat.ARGB;
 
 			case BufferedImage.TYPE_INT_RGB:
-				return PixelFormat.RGB24;
+				return PixelFormat._0RGB;
 
 			case BufferedImage.TYPE_USHORT_GRAY:
 				return PixelFormat.GRAY16;
@@ -84,11 +90,19 @@ public final class Image {
 		}
 	}
 
+	/**
+	 * Copy the pixel data of the specified image into a new direct buffer. The rows
+	 * of the buffer are not padded. Samples wider than 8 bit are stored in the byte
+	 * order of the buffer.
+	 *
+	 * @param image the image to copy.
+	 *
+	 * @return the buffer holding the pixel data.
+	 */
 	public static ByteBuffer createImageBuffer(BufferedImage image) {
 		SampleModel model = image.getSampleModel();
 		Raster raster = image.getRaster();
 		DataBuffer inBuffer = raster.getDataBuffer();
-		ByteBuffer outBuffer = ByteBuffer.allocateDirect(image.getWidth() * image.getHeight() * model.getNumBands());
 
 		int x = -raster.getSampleModelTranslateX();
 		int y = -raster.getSampleModelTranslateY();
@@ -112,30 +126,35 @@ public final class Image {
 		}
 
 		int start = y * step + x * channels;
+		int rowLength = getRowLength(model, image.getWidth(), step, channels);
+		int sampleSize = DataBuffer.getDataTypeSize(inBuffer.getDataType()) / 8;
+
+		// source and destination rows are measured in samples of the data buffer type
+		ByteBuffer outBuffer = ByteBuffer.allocateDirect(rowLength * image.getHeight() * sampleSize);
 
 		if (inBuffer instanceof DataBufferByte) {
 			byte[] a = ((DataBufferByte) inBuffer).getData();
-			copy(ByteBuffer.wrap(a, start, a.length - start), step, outBuffer, step, false);
+			copy(ByteBuffer.wrap(a, start, a.length - start), step, outBuffer, rowLength, false);
 		}
 		else if (inBuffer instanceof DataBufferShort) {
 			short[] a = ((DataBufferShort) inBuffer).getData();
-			copy(ShortBuffer.wrap(a, start, a.length - start), step, outBuffer.asShortBuffer(), step / 2, true);
+			copy(ShortBuffer.wrap(a, start, a.length - start), step, outBuffer.asShortBuffer(), rowLength, true);
 		}
 		else if (inBuffer instanceof DataBufferUShort) {
 			short[] a = ((DataBufferUShort) inBuffer).getData();
-			copy(ShortBuffer.wrap(a, start, a.length - start), step, outBuffer.asShortBuffer(), step / 2, false);
+			copy(ShortBuffer.wrap(a, start, a.length - start), step, outBuffer.asShortBuffer(), rowLength, false);
 		}
 		else if (inBuffer instanceof DataBufferInt) {
 			int[] a = ((DataBufferInt) inBuffer).getData();
-			copy(IntBuffer.wrap(a, start, a.length - start), step, outBuffer.asIntBuffer(), step / 4);
+			copy(IntBuffer.wrap(a, start, a.length - start), step, outBuffer.asIntBuffer(), rowLength);
 		}
 		else if (inBuffer instanceof DataBufferFloat) {
 			float[] a = ((DataBufferFloat) inBuffer).getData();
-			copy(FloatBuffer.wrap(a, start, a.length - start), step, outBuffer.asFloatBuffer(), step / 4);
+			copy(FloatBuffer.wrap(a, start, a.length - start), step, outBuffer.asFloatBuffer(), rowLength);
 		}
 		else if (inBuffer instanceof DataBufferDouble) {
 			double[] a = ((DataBufferDouble) inBuffer).getData();
-			copy(DoubleBuffer.wrap(a, start, a.length - start), step, outBuffer.asDoubleBuffer(), step / 8);
+			copy(DoubleBuffer.wrap(a, start, a.length - start), step, outBuffer.asDoubleBuffer(), rowLength);
 		}
 
 		outBuffer.position(0);
@@ -144,12 +163,116 @@ public final class Image {
 	}
 
 	public static BufferedImage createImage(VideoFrame frame, int type) {
-		return createImage(frame.getData(), frame.getWidth(), frame.getHeight(), type);
+		return createImage(frame, type, null);
+	}
+
+	/**
+	 * Copy the picture of the specified frame into a caller-owned image. The image
+	 * is reused if its size and type match the frame and the requested type, so
+	 * that a preview loop can render each frame without allocating a new image.
+	 * Otherwise a new image is created and returned.
+	 *
+	 * @param frame the frame to copy.
+	 * @param type  the image type, e.g. {@code BufferedImage.TYPE_3BYTE_BGR}.
+	 * @param image the image to reuse, may be {@code null}.
+	 *
+	 * @return the image holding the picture of the frame.
+	 */
+	public static BufferedImage createImage(VideoFrame frame, int type, BufferedImage image) {
+		int width = frame.getWidth();
+		int height = frame.getHeight();
+
+		if (image == null || image.getWidth() != width || image.getHeight() != height || image.getType() != type)
+			image = new BufferedImage(width, height, type);
+
+		copyImage(frame.getData(), frame.getLineSize(0), image);
+
+		return image;
+	}
+
+	/**
+	 * Create an image that views the picture of the specified frame without copying
+	 * it. Pixels are read from and written to the frame's direct buffer through a
+	 * {@link VideoFrameDataBuffer}. The image is only valid until the frame is
+	 * released. Supported are the packed 8 bit formats {@code BGR24}, {@code RGB24},
+	 * {@code BGRA}, {@code RGBA}, {@code ARGB}, {@code ABGR} and {@code GRAY8}.
+	 *
+	 * @param frame the frame to view.
+	 *
+	 * @return an image backed by the frame data.
+	 *
+	 * @throws JavaAVException if the pixel format of the frame is not supported.
+	 */
+	public static BufferedImage createImageView(VideoFrame frame) throws JavaAVException {
+		PixelFormat format = frame.getPixelFormat();
+		int[] bandOffsets;
+
+		if (format == null)
+			throw new JavaAVException("Image view of frame without pixel format is not supported.");
+
+		switch (format) {
+			case BGR24:
+				bandOffsets = new int[] { 2, 1, 0 };
+				break;
+			case RGB24:
+				bandOffsets = new int[] { 0, 1, 2 };
+				break;
+			case BGRA:
+				bandOffsets = new int[] { 2, 1, 0, 3 };
+				break;
+			case RGBA:
+				bandOffsets = new int[] { 0, 1, 2, 3 };
+				break;
+			case ARGB:
+				bandOffsets = new int[] { 1, 2, 3, 0 };
+				break;
+			case ABGR:
+				bandOffsets = new int[] { 3, 2, 1, 0 };
+				break;
+			case GRAY8:
+				bandOffsets = new int[] { 0 };
+				break;
+			default:
+				throw new JavaAVException("Image view of pixel format " + format + " is not supported.");
+		}
+
+		int width = frame.getWidth();
+		int height = frame.getHeight();
+		int pixelStride = bandOffsets.length;
+		boolean alpha = pixelStride == 4;
+
+		ColorSpace colorSpace = ColorSpace.getInstance(pixelStride == 1 ? ColorSpace.CS_GRAY : ColorSpace.CS_sRGB);
+		ColorModel colorModel = new ComponentColorModel(colorSpace, alpha, false,
+				alpha ? Transparency.TRANSLUCENT : Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+
+		SampleModel model = new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE, width, height, pixelStride,
+				frame.getLineSize(0), bandOffsets);
+
+		WritableRaster raster = Raster.createWritableRaster(model, new VideoFrameDataBuffer(frame), null);
+
+		return new BufferedImage(colorModel, raster, false, null);
 	}
 
 	public static BufferedImage createImage(ByteBuffer data, int width, int height, int type) {
 		BufferedImage image = new BufferedImage(width, height, type);
 
+		copyImage(data, 0, image);
+
+		return image;
+	}
+
+	/**
+	 * Copy the image data into the specified image.
+	 *
+	 * @param data     the image data.
+	 * @param lineSize the line size of the image data in bytes, or 0 if rows are not padded.
+	 *                 Applies to all sample types of the destination image.
+	 * @param image    the destination image.
+	 */
+	private static void copyImage(ByteBuffer data, int lineSize, BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+
 		SampleModel model = image.getSampleModel();
 		Raster raster = image.getRaster();
 		DataBuffer outBuffer = raster.getDataBuffer();
@@ -159,8 +282,6 @@ public final class Image {
 		int step = model.getWidth() * model.getNumBands();
 		int channels = model.getNumBands();
 
-		data.position(0).limit(height * width * channels);
-
 		if (model instanceof ComponentSampleModel) {
 			ComponentSampleModel compModel = (ComponentSampleModel) model;
 			step = compModel.getScanlineStride();
@@ -178,145 +299,230 @@ public final class Image {
 		}
 
 		int start = y * step + x * channels;
+		int sampleSize = DataBuffer.getDataTypeSize(outBuffer.getDataType()) / 8;
+
+		// without line size the rows of the data are not padded
+		if (lineSize <= 0)
+			lineSize = getRowLength(model, width, step, channels) * sampleSize;
+
+		data.position(0).limit(Math.min(data.capacity(), height * lineSize));
+
+		// the source row distance in samples of the data buffer type
+		int srcStep = lineSize / sampleSize;
 
 		if (outBuffer instanceof DataBufferByte) {
 			byte[] a = ((DataBufferByte) outBuffer).getData();
-			copy(data, step, ByteBuffer.wrap(a, start, a.length - start), step, false);
+			copy(data, srcStep, ByteBuffer.wrap(a, start, a.length - start), step, false);
 		}
 		else if (outBuffer instanceof DataBufferShort) {
 			short[] a = ((DataBufferShort) outBuffer).getData();
-			copy(data.asShortBuffer(), step / 2, ShortBuffer.wrap(a, start, a.length - start), step, true);
+			copy(data.asShortBuffer(), srcStep, ShortBuffer.wrap(a, start, a.length - start), step, true);
 		}
 		else if (outBuffer instanceof DataBufferUShort) {
 			short[] a = ((DataBufferUShort) outBuffer).getData();
-			copy(data.asShortBuffer(), step / 2, ShortBuffer.wrap(a, start, a.length - start), step, false);
+			copy(data.asShortBuffer(), srcStep, ShortBuffer.wrap(a, start, a.length - start), step, false);
 		}
 		else if (outBuffer instanceof DataBufferInt) {
 			int[] a = ((DataBufferInt) outBuffer).getData();
-			copy(data.asIntBuffer(), step / 4, IntBuffer.wrap(a, start, a.length - start), step);
+			copy(data.asIntBuffer(), srcStep, IntBuffer.wrap(a, start, a.length - start), step);
 		}
 		else if (outBuffer instanceof DataBufferFloat) {
 			float[] a = ((DataBufferFloat) outBuffer).getData();
-			copy(data.asFloatBuffer(), step / 4, FloatBuffer.wrap(a, start, a.length - start), step);
+			copy(data.asFloatBuffer(), srcStep, FloatBuffer.wrap(a, start, a.length - start), step);
 		}
 		else if (outBuffer instanceof DataBufferDouble) {
 			double[] a = ((DataBufferDouble) outBuffer).getData();
-			copy(data.asDoubleBuffer(), step / 8, DoubleBuffer.wrap(a, start, a.length - start), step);
+			copy(data.asDoubleBuffer(), srcStep, DoubleBuffer.wrap(a, start, a.length - start), step);
 		}
+	}
 
-		return image;
+	/**
+	 * Get the number of samples of one image row without padding.
+	 *
+	 * @param model    the sample model of the image.
+	 * @param width    the image width.
+	 * @param step     the scanline stride of the model in samples.
+	 * @param channels the number of samples per pixel.
+	 *
+	 * @return the row length in samples.
+	 */
+	private static int getRowLength(SampleModel model, int width, int step, int channels) {
+		// several pixels share one sample, rows are kept as they are
+		if (model instanceof MultiPixelPackedSampleModel)
+			return step;
+
+		return width * channels;
 	}
 
+	/**
+	 * Copy rows of samples from the source to the destination buffer, starting at
+	 * the current buffer positions. Each row holds {@code min(srcStep, dstStep)}
+	 * samples. If both steps are equal, the rows are contiguous and copied at once,
+	 * otherwise each row is copied in bulk. Copying stops at the limit of either
+	 * buffer. The signedness of samples does not affect the copy; the parameter is
+	 * kept for compatibility.
+	 *
+	 * @param srcBuf  the source buffer.
+	 * @param srcStep the distance between source rows in samples.
+	 * @param dstBuf  the destination buffer.
+	 * @param dstStep the distance between destination rows in samples.
+	 * @param signed  whether samples are signed.
+	 */
 	public static void copy(ByteBuffer srcBuf, int srcStep, ByteBuffer dstBuf, int dstStep, boolean signed) {
-		int w = Math.min(srcStep, dstStep);
 		int srcLine = srcBuf.position();
 		int dstLine = dstBuf.position();
+		int srcLimit = srcBuf.limit();
+		int dstLimit = dstBuf.limit();
+
+		if (srcStep == dstStep) {
+			srcBuf.limit(srcLine + Math.min(srcLimit - srcLine, dstLimit - dstLine));
+			dstBuf.put(srcBuf);
+			srcBuf.limit(srcLimit);
+			return;
+		}
 
-		while (srcLine < srcBuf.capacity() && dstLine < dstBuf.capacity()) {
-			srcBuf.position(srcLine);
-			dstBuf.position(dstLine);
+		int width = Math.min(srcStep, dstStep);
 
-			w = Math.min(Math.min(w, srcBuf.remaining()), dstBuf.remaining());
+		while (srcLine < srcLimit && dstLine < dstLimit) {
+			int length = Math.min(width, Math.min(srcLimit - srcLine, dstLimit - dstLine));
 
-			for (int x = 0; x < w; x++) {
-				int in = signed ? srcBuf.get() : srcBuf.get() & 0xFF;
-				byte out = (byte) in;
-				dstBuf.put(out);
-			}
+			srcBuf.limit(srcLine + length).position(srcLine);
+			dstBuf.position(dstLine);
+			dstBuf.put(srcBuf);
 
 			srcLine += srcStep;
 			dstLine += dstStep;
 		}
+
+		srcBuf.limit(srcLimit);
 	}
 
+	/**
+	 * Copy rows of samples, see {@link #copy(ByteBuffer, int, ByteBuffer, int, boolean)}.
+	 */
 	public static void copy(ShortBuffer srcBuf, int srcStep, ShortBuffer dstBuf, int dstStep, boolean signed) {
-		int w = Math.min(srcStep, dstStep);
 		int srcLine = srcBuf.position();
 		int dstLine = dstBuf.position();
+		int srcLimit = srcBuf.limit();
+		int dstLimit = dstBuf.limit();
+
+		if (srcStep == dstStep) {
+			srcBuf.limit(srcLine + Math.min(srcLimit - srcLine, dstLimit - dstLine));
+			dstBuf.put(srcBuf);
+			srcBuf.limit(srcLimit);
+			return;
+		}
 
-		while (srcLine < srcBuf.capacity() && dstLine < dstBuf.capacity()) {
-			srcBuf.position(srcLine);
-			dstBuf.position(dstLine);
+		int width = Math.min(srcStep, dstStep);
 
-			w = Math.min(Math.min(w, srcBuf.remaining()), dstBuf.remaining());
+		while (srcLine < srcLimit && dstLine < dstLimit) {
+			int length = Math.min(width, Math.min(srcLimit - srcLine, dstLimit - dstLine));
 
-			for (int x = 0; x < w; x++) {
-				int in = signed ? srcBuf.get() : srcBuf.get() & 0xFFFF;
-				short out = (short) in;
-				dstBuf.put(out);
-			}
+			srcBuf.limit(srcLine + length).position(srcLine);
+			dstBuf.position(dstLine);
+			dstBuf.put(srcBuf);
 
 			srcLine += srcStep;
 			dstLine += dstStep;
 		}
+
+		srcBuf.limit(srcLimit);
 	}
 
+	/**
+	 * Copy rows of samples, see {@link #copy(ByteBuffer, int, ByteBuffer, int, boolean)}.
+	 */
 	public static void copy(IntBuffer srcBuf, int srcStep, IntBuffer dstBuf, int dstStep) {
-		int w = Math.min(srcStep, dstStep);
 		int srcLine = srcBuf.position();
 		int dstLine = dstBuf.position();
+		int srcLimit = srcBuf.limit();
+		int dstLimit = dstBuf.limit();
+
+		if (srcStep == dstStep) {
+			srcBuf.limit(srcLine + Math.min(srcLimit - srcLine, dstLimit - dstLine));
+			dstBuf.put(srcBuf);
+			srcBuf.limit(srcLimit);
+			return;
+		}
 
-		while (srcLine < srcBuf.capacity() && dstLine < dstBuf.capacity()) {
-			srcBuf.position(srcLine);
-			dstBuf.position(dstLine);
+		int width = Math.min(srcStep, dstStep);
 
-			w = Math.min(Math.min(w, srcBuf.remaining()), dstBuf.remaining());
+		while (srcLine < srcLimit && dstLine < dstLimit) {
+			int length = Math.min(width, Math.min(srcLimit - srcLine, dstLimit - dstLine));
 
-			for (int x = 0; x < w; x++) {
-				int in = srcBuf.get();
-				int out = in;
-				dstBuf.put(out);
-			}
+			srcBuf.limit(srcLine + length).position(srcLine);
+			dstBuf.position(dstLine);
+			dstBuf.put(srcBuf);
 
 			srcLine += srcStep;
 			dstLine += dstStep;
 		}
+
+		srcBuf.limit(srcLimit);
 	}
 
+	/**
+	 * Copy rows of samples, see {@link #copy(ByteBuffer, int, ByteBuffer, int, boolean)}.
+	 */
 	public static void copy(FloatBuffer srcBuf, int srcStep, FloatBuffer dstBuf, int dstStep) {
-		int w = Math.min(srcStep, dstStep);
 		int srcLine = srcBuf.position();
 		int dstLine = dstBuf.position();
+		int srcLimit = srcBuf.limit();
+		int dstLimit = dstBuf.limit();
+
+		if (srcStep == dstStep) {
+			srcBuf.limit(srcLine + Math.min(srcLimit - srcLine, dstLimit - dstLine));
+			dstBuf.put(srcBuf);
+			srcBuf.limit(srcLimit);
+			return;
+		}
 
-		while (srcLine < srcBuf.capacity() && dstLine < dstBuf.capacity()) {
-			srcBuf.position(srcLine);
-			dstBuf.position(dstLine);
-
-			w = Math.min(Math.min(w, srcBuf.remaining()), dstBuf.remaining());
+		int width = Math.min(srcStep, dstStep);
 
-			for (int x = 0; x < w; x++) {
-				float in = srcBuf.get();
-				float out = in;
+		while (srcLine < srcLimit && dstLine < dstLimit) {
+			int length = Math.min(width, Math.min(srcLimit - srcLine, dstLimit - dstLine));
 
-				dstBuf.put(out);
-			}
+			srcBuf.limit(srcLine + length).position(srcLine);
+			dstBuf.position(dstLine);
+			dstBuf.put(srcBuf);
 
 			srcLine += srcStep;
 			dstLine += dstStep;
 		}
+
+		srcBuf.limit(srcLimit);
 	}
 
+	/**
+	 * Copy rows of samples, see {@link #copy(ByteBuffer, int, ByteBuffer, int, boolean)}.
+	 */
 	public static void copy(DoubleBuffer srcBuf, int srcStep, DoubleBuffer dstBuf, int dstStep) {
-		int w = Math.min(srcStep, dstStep);
 		int srcLine = srcBuf.position();
 		int dstLine = dstBuf.position();
+		int srcLimit = srcBuf.limit();
+		int dstLimit = dstBuf.limit();
+
+		if (srcStep == dstStep) {
+			srcBuf.limit(srcLine + Math.min(srcLimit - srcLine, dstLimit - dstLine));
+			dstBuf.put(srcBuf);
+			srcBuf.limit(srcLimit);
+			return;
+		}
 
-		while (srcLine < srcBuf.capacity() && dstLine < dstBuf.capacity()) {
-			srcBuf.position(srcLine);
-			dstBuf.position(dstLine);
-
-			w = Math.min(Math.min(w, srcBuf.remaining()), dstBuf.remaining());
+		int width = Math.min(srcStep, dstStep);
 
-			for (int x = 0; x < w; x++) {
-				double in = srcBuf.get();
-				double out = in;
+		while (srcLine < srcLimit && dstLine < dstLimit) {
+			int length = Math.min(width, Math.min(srcLimit - srcLine, dstLimit - dstLine));
 
-				dstBuf.put(out);
-			}
+			srcBuf.limit(srcLine + length).position(srcLine);
+			dstBuf.position(dstLine);
+			dstBuf.put(srcBuf);
 
 			srcLine += srcStep;
 			dstLine += dstStep;
 		}
+
+		srcBuf.limit(srcLimit);
 	}
-	
+
 }
@@ -29,9 +29,24 @@ import static org.bytedeco.javacpp.avutil.av_log_set_callback;
 
 public final class JavaAV {
 
+	/** The system property that selects the default startup mode, e.g. {@code lazy}. */
+	public static final String STARTUP_MODE_PROPERTY = "javaav.startup";
+
 	/** Indicates whether the native libraries were loaded or not. */
 	private static boolean loaded = false;
 
+	/** Indicates whether the formats and codecs were registered or not. */
+	private static boolean registered = false;
+
+	/** Indicates whether the input and output devices were registered or not. */
+	private static boolean devicesLoaded = false;
+
+	/** Indicates whether the network protocols were initialized or not. */
+	private static boolean networkLoaded = false;
+
+	/** Defines what is initialized when the native libraries are loaded. */
+	private static StartupMode startupMode = getDefaultStartupMode();
+
 	/**
 	 * FFmpeg log callback function. Must be kept in memory, otherwise the pointer
 	 * is freed and causes a crash. */
@@ -39,21 +54,137 @@ public final class JavaAV {
 
 
 	public static void setLogCallback(LogCallback callback) {
+		LogCallback previous = logCallback;
+
 		logCallback = callback;
 
 		av_log_set_callback(logCallback);
+
+		// stop the background thread of an asynchronous callback
+		if (previous != null && previous != callback)
+			previous.close();
+	}
+
+	/**
+	 * Set the startup mode. Must be called before any other JavaAV class is used,
+	 * since the native libraries are loaded when the first codec, encoder, decoder,
+	 * muxer or demuxer class is initialized. The default mode is {@code EAGER},
+	 * unless the system property {@value #STARTUP_MODE_PROPERTY} is set to {@code lazy}.
+	 *
+	 * @param mode the startup mode.
+	 */
+	public static synchronized void setStartupMode(StartupMode mode) {
+		if (mode == null)
+			throw new NullPointerException("Startup mode is null.");
+
+		startupMode = mode;
+	}
+
+	/**
+	 * Get the startup mode.
+	 *
+	 * @return the startup mode.
+	 */
+	public static synchronized StartupMode getStartupMode() {
+		return startupMode;
 	}
 
-	public static void loadLibrary() {
+	public static synchronized void loadLibrary() {
 		if (loaded)
 			return;
 
-		av_register_all();
-		avcodec_register_all();
+		registerAll();
+
+		if (startupMode == StartupMode.EAGER) {
+			loadDevices();
+			loadNetwork();
+
+			// index all codecs once, lookups by id or name do not search FFmpeg again
+			CodecRegistry.load();
+		}
+
+		// set only on success, a failed initialization is repeated on the next call
+		loaded = true;
+	}
+
+	/**
+	 * Register all input and output devices, e.g. dshow, v4l2 or lavfi. In the lazy
+	 * startup mode this is done when a format is requested that is not a registered
+	 * file format.
+	 */
+	public static synchronized void loadDevices() {
+		if (devicesLoaded)
+			return;
+
+		registerAll();
 		avdevice_register_all();
+
+		devicesLoaded = true;
+	}
+
+	/**
+	 * Initialize the network protocols. In the lazy startup mode this is done when a
+	 * location with a network URL scheme is opened.
+	 */
+	public static synchronized void loadNetwork() {
+		if (networkLoaded)
+			return;
+
+		registerAll();
 		avformat_network_init();
 
-		loaded = true;
+		networkLoaded = true;
+	}
+
+	/**
+	 * Initialize the network protocols if the specified location has a URL scheme
+	 * other than {@code file} or {@code pipe}.
+	 *
+	 * @param location the input or output location.
+	 */
+	static void loadNetwork(String location) {
+		if (location == null)
+			return;
+
+		int colon = location.indexOf(':');
+
+		// a single letter is a drive letter, not a scheme
+		if (colon < 2)
+			return;
+
+		String scheme = location.substring(0, colon);
+
+		for (int i = 0; i < scheme.length(); i++) {
+			char c = scheme.charAt(i);
+
+			if (!Character.isLetterOrDigit(c) && c != '+' && c != '-' && c != '.')
+				return;
+		}
+
+		if (!scheme.equalsIgnoreCase("file") && !scheme.equalsIgnoreCase("pipe"))
+			loadNetwork();
+	}
+
+	/**
+	 * Register all formats and codecs, if not already registered.
+	 */
+	private static synchronized void registerAll() {
+		if (registered)
+			return;
+
+		av_register_all();
+		avcodec_register_all();
+
+		registered = true;
+	}
+
+	private static StartupMode getDefaultStartupMode() {
+		String mode = System.getProperty(STARTUP_MODE_PROPERTY);
+
+		if (mode != null && mode.equalsIgnoreCase("lazy"))
+			return StartupMode.LAZY;
+
+		return StartupMode.EAGER;
 	}
 
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2013 Alex Andres
+ *
+ * This file is part of JavaAV.
+ *
+ * JavaAV is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version (subject to the "Classpath"
+ * exception as provided in the LICENSE file that accompanied
+ * this code).
+ *
+ * JavaAV is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaAV. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.hoary.javaav;
+
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * In-memory index of keyframe positions of a single stream. The index is built while
+ * packets are read sequentially. Since reading may be interrupted by seeking, the index
+ * keeps track of the time ranges that were read without gaps. Only within these ranges
+ * the index knows all keyframes and can be used for seeking.
+ *
+ * @author Alex Andres
+ */
+class KeyFrameIndex {
+
+	/** Keyframe byte positions mapped by their timestamps in microseconds. */
+	private final TreeMap<Long, Long> keyFrames = new TreeMap<Long, Long>();
+
+	/** Ranges that were read without gaps, end timestamps mapped by start timestamps. */
+	private final TreeMap<Long, Long> ranges = new TreeMap<Long, Long>();
+
+	/** Start of the range that is currently read, or {@code null} after seeking. */
+	private Long rangeStart;
+
+
+	/**
+	 * Add a packet of the indexed stream that was read sequentially.
+	 *
+	 * @param timestamp the packet timestamp in microseconds.
+	 * @param position  the byte position of the packet, or -1 if unknown.
+	 * @param keyFrame  whether the packet contains a keyframe.
+	 */
+	void add(long timestamp, long position, boolean keyFrame) {
+		if (rangeStart == null) {
+			// start a new range with the first keyframe
+			if (!keyFrame || position < 0)
+				return;
+
+			rangeStart = timestamp;
+		}
+
+		if (keyFrame && position >= 0)
+			keyFrames.put(timestamp, position);
+
+		Long rangeEnd = ranges.get(rangeStart);
+
+		if (rangeEnd == null || rangeEnd < timestamp)
+			ranges.put(rangeStart, timestamp);
+	}
+
+	/**
+	 * Interrupt the current range, e.g. after seeking.
+	 */
+	void interrupt() {
+		rangeStart = null;
+	}
+
+	/**
+	 * Find the byte position of a keyframe for the specified target timestamp. The
+	 * position is only returned if the target lies in a range that was read without
+	 * gaps, otherwise the index cannot guarantee that the found keyframe is the right
+	 * one.
+	 *
+	 * @param timestamp the target timestamp in microseconds.
+	 * @param nearest   if true, the nearest keyframe is searched, otherwise the keyframe
+	 *                  at or before the target timestamp.
+	 *
+	 * @return the byte position of the keyframe, or {@code null} if not indexed.
+	 */
+	Long find(long timestamp, boolean nearest) {
+		Entry<Long, Long> range = findRange(timestamp);
+
+		if (range == null)
+			return null;
+
+		Entry<Long, Long> before = keyFrames.floorEntry(timestamp);
+
+		if (before != null && before.getKey() < range.getKey())
+			before = null;
+
+		if (nearest) {
+			Entry<Long, Long> after = keyFrames.ceilingEntry(timestamp);
+
+			if (after != null && after.getKey() <= range.getValue()) {
+				if (before == null || after.getKey() - timestamp < timestamp - before.getKey())
+					before = after;
+			}
+		}
+
+		return before == null ? null : before.getValue();
+	}
+
+	/**
+	 * Remove all entries from this index.
+	 */
+	void clear() {
+		keyFrames.clear();
+		ranges.clear();
+		rangeStart = null;
+	}
+
+	private Entry<Long, Long> findRange(long timestamp) {
+		for (Entry<Long, Long> range : ranges.headMap(timestamp, true).descendingMap().entrySet()) {
+			if (range.getValue() >= timestamp)
+				return range;
+		}
+
+		return null;
+	}
+
+}
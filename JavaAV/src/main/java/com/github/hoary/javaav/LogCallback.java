@@ -26,43 +26,131 @@ import org.bytedeco.javacpp.avutil.Callback_Pointer_int_String_Pointer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.bytedeco.javacpp.avutil.AV_LOG_ERROR;
+import static org.bytedeco.javacpp.avutil.AV_LOG_INFO;
+import static org.bytedeco.javacpp.avutil.AV_LOG_WARNING;
 import static org.bytedeco.javacpp.avutil.av_log_format_line;
 
+/**
+ * {@code LogCallback} receives FFmpeg log messages and passes them to SLF4J.
+ * Messages above the configured log level, or with a level disabled in SLF4J, are
+ * dropped before they are formatted. Messages are formatted into a buffer owned by
+ * the logging thread.
+ * <p/>
+ * FFmpeg calls the callback on the thread that logs, e.g. a decoding thread. A
+ * {@code LogCallback} created with a queue capacity hands formatted messages to a
+ * background thread, so that verbose codecs do not slow down decoding by logging.
+ * Queued messages are held in a fixed number of reusable records. If all records
+ * are in use, messages are dropped and counted.
+ *
+ * @author Alex Andres
+ */
 public class LogCallback extends Callback_Pointer_int_String_Pointer {
 
 	private final static Logger LOGGER = LoggerFactory.getLogger(LogCallback.class.getName());
 
-	private boolean printPrefix = true;
+	/** The maximum length of a formatted log line. */
+	private static final int LINE_SIZE = 1024;
+
+	/** Log line buffer of each logging thread. */
+	private static final ThreadLocal<byte[]> LINE_BUFFER = new ThreadLocal<byte[]>() {
+
+		@Override
+		protected byte[] initialValue() {
+			return new byte[LINE_SIZE];
+		}
+	};
+
+	/** Print prefix flag of each logging thread, updated by FFmpeg. */
+	private static final ThreadLocal<int[]> PRINT_PREFIX = new ThreadLocal<int[]>() {
+
+		@Override
+		protected int[] initialValue() {
+			return new int[1];
+		}
+	};
+
+	/** The queue of formatted messages, {@code null} if logging synchronously. */
+	private final BlockingQueue<LogRecord> queue;
 
-	private LogLevel logLevel = LogLevel.INFO;
+	/** Records not in use, {@code null} if logging synchronously. */
+	private final BlockingQueue<LogRecord> freeRecords;
 
+	/** Number of messages dropped due to a full queue. */
+	private final AtomicLong droppedRecords = new AtomicLong();
+
+	/** The thread logging queued messages. */
+	private volatile Thread logThread;
+
+	private volatile boolean printPrefix = true;
+
+	private volatile LogLevel logLevel = LogLevel.INFO;
+
+
+	/**
+	 * Creates a new {@code LogCallback} that logs messages on the calling thread.
+	 */
+	public LogCallback() {
+		this.queue = null;
+		this.freeRecords = null;
+	}
+
+	/**
+	 * Creates a new {@code LogCallback} that logs messages on a background thread.
+	 *
+	 * @param queueCapacity the maximum number of messages waiting to be logged.
+	 */
+	public LogCallback(int queueCapacity) {
+		if (queueCapacity < 1)
+			throw new IllegalArgumentException("Queue capacity must be positive: " + queueCapacity);
+
+		this.queue = new ArrayBlockingQueue<LogRecord>(queueCapacity);
+		this.freeRecords = new ArrayBlockingQueue<LogRecord>(queueCapacity);
+
+		for (int i = 0; i < queueCapacity; i++)
+			freeRecords.add(new LogRecord());
+	}
 
 	@Override
 	public void call(Pointer source, int level, String formatStr, Pointer params) {
-		if (logLevel.value() < level)
+		if (logLevel.value() < level || !isEnabled(level))
 			return;
 
-		byte[] bytes = new byte[1024];
-		int prefix = printPrefix ? 1 : 0;
-
-		av_log_format_line(source, level, formatStr, params, bytes, bytes.length, new int[]{prefix});
-
-		String message = new String(bytes).trim();
-
-		switch (logLevel) {
-			case PANIC:
-			case FATAL:
-			case ERROR:
-				LOGGER.error(message);  break;
-			case WARNING:
-				LOGGER.warn(message);   break;
-			case INFO:
-				LOGGER.info(message);   break;
-			case VERBOSE:
-			case DEBUG:
-				LOGGER.debug(message);  break;
-			default:
-				break;
+		byte[] bytes = LINE_BUFFER.get();
+		int[] prefix = PRINT_PREFIX.get();
+		prefix[0] = printPrefix ? 1 : 0;
+
+		av_log_format_line(source, level, formatStr, params, bytes, bytes.length, prefix);
+
+		String message = createMessage(bytes);
+
+		if (message.isEmpty())
+			return;
+
+		if (queue == null) {
+			log(level, message);
+		}
+		else {
+			// avoid the monitor on the logging thread once the log thread is running
+			if (logThread == null)
+				startLogThread();
+
+			LogRecord record = freeRecords.poll();
+
+			if (record == null) {
+				droppedRecords.incrementAndGet();
+				return;
+			}
+
+			record.level = level;
+			record.message = message;
+
+			// never fails, the queue holds all records
+			queue.offer(record);
 		}
 	}
 
@@ -74,4 +162,150 @@ public class LogCallback extends Callback_Pointer_int_String_Pointer {
 		this.logLevel = level;
 	}
 
+	/**
+	 * Get the number of messages dropped since all queued records were in use.
+	 *
+	 * @return the number of dropped messages.
+	 */
+	public long getDroppedRecordCount() {
+		return droppedRecords.get();
+	}
+
+	/**
+	 * Stop the background thread and wait until it has logged all queued messages.
+	 * Messages received afterwards start a new background thread, not before the
+	 * previous thread has finished, so that messages are not reordered.
+	 */
+	public synchronized void close() {
+		Thread thread = logThread;
+		logThread = null;
+
+		if (thread == null)
+			return;
+
+		thread.interrupt();
+
+		if (thread == Thread.currentThread())
+			return;
+
+		boolean interrupted = false;
+
+		while (thread.isAlive()) {
+			try {
+				thread.join();
+			}
+			catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Start the background thread, if not already running. Waits while a previous
+	 * thread is flushing its messages, see {@link #close()}.
+	 */
+	private synchronized void startLogThread() {
+		if (logThread != null)
+			return;
+
+		logThread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				drain();
+			}
+		}, "JavaAV Log");
+		logThread.setDaemon(true);
+		logThread.start();
+	}
+
+	/**
+	 * Log queued messages until the background thread is interrupted.
+	 */
+	private void drain() {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				logRecord(queue.take());
+			}
+		}
+		catch (InterruptedException e) {
+			// closed
+		}
+
+		LogRecord record;
+
+		while ((record = queue.poll()) != null)
+			logRecord(record);
+	}
+
+	/**
+	 * Log a queued message and release its record for reuse.
+	 */
+	private void logRecord(LogRecord record) {
+		int level = record.level;
+		String message = record.message;
+
+		record.message = null;
+		freeRecords.offer(record);
+
+		log(level, message);
+	}
+
+	/**
+	 * Create the message of a formatted, zero-terminated log line without the
+	 * surrounding whitespace.
+	 */
+	private static String createMessage(byte[] line) {
+		int length = 0;
+
+		while (length < line.length && line[length] != 0)
+			length++;
+
+		return new String(line, 0, length).trim();
+	}
+
+	/**
+	 * Check whether messages of the specified FFmpeg log level are enabled in SLF4J.
+	 */
+	boolean isEnabled(int level) {
+		if (level <= AV_LOG_ERROR)
+			return LOGGER.isErrorEnabled();
+		if (level <= AV_LOG_WARNING)
+			return LOGGER.isWarnEnabled();
+		if (level <= AV_LOG_INFO)
+			return LOGGER.isInfoEnabled();
+
+		return LOGGER.isDebugEnabled();
+	}
+
+	/**
+	 * Log a formatted message with the SLF4J level matching the FFmpeg log level.
+	 */
+	void log(int level, String message) {
+		if (level <= AV_LOG_ERROR)
+			LOGGER.error(message);
+		else if (level <= AV_LOG_WARNING)
+			LOGGER.warn(message);
+		else if (level <= AV_LOG_INFO)
+			LOGGER.info(message);
+		else
+			LOGGER.debug(message);
+	}
+
+
+
+	/**
+	 * A reusable record of a formatted log message.
+	 */
+	private static class LogRecord {
+
+		private int level;
+
+		private String message;
+
+	}
+
 }
@@ -21,11 +21,14 @@
 
 package com.github.hoary.javaav;
 
-public class MediaFrame {
+import static org.bytedeco.javacpp.avutil.AV_NOPTS_VALUE;
+
+public class MediaFrame implements AutoCloseable {
 
 	public enum Type { AUDIO, VIDEO }
 
-	private long timestamp;
+	/** The timestamp in microseconds, {@code AV_NOPTS_VALUE} if unknown */
+	private long timestamp = AV_NOPTS_VALUE;
 	private Type type;
 
 	private boolean keyFrame;
@@ -60,4 +63,22 @@ public class MediaFrame {
 		return hasFrame;
 	}
 
+	/**
+	 * Release the media data of this frame, if owned by this frame. Does nothing
+	 * by default.
+	 */
+	public void release() {
+
+	}
+
+	/**
+	 * Release this frame, allows to use frames with try-with-resources.
+	 *
+	 * @see #release()
+	 */
+	@Override
+	public void close() {
+		release();
+	}
+
 }
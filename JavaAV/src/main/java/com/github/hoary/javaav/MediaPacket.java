@@ -22,10 +22,13 @@
 package com.github.hoary.javaav;
 
 import org.bytedeco.javacpp.avcodec.AVPacket;
+import org.bytedeco.javacpp.avutil.AVRational;
 
 import java.nio.ByteBuffer;
 
 import static org.bytedeco.javacpp.avcodec.av_free_packet;
+import static org.bytedeco.javacpp.avutil.AV_NOPTS_VALUE;
+import static org.bytedeco.javacpp.avutil.av_rescale;
 
 public class MediaPacket {
 
@@ -35,6 +38,9 @@ public class MediaPacket {
 
 	private boolean keyFrame;
 
+	/** The time base in which the packet timestamps are expressed. */
+	private AVRational timeBase;
+
 
 	MediaPacket(AVPacket avPacket) {
 		this.avPacket = avPacket;
@@ -49,12 +55,74 @@ public class MediaPacket {
 	}
 
 	public ByteBuffer getData() {
-		if (packetData == null && avPacket != null)
+		if (packetData == null && avPacket != null && avPacket.data() != null)
 			packetData = avPacket.data().limit(avPacket.size()).asByteBuffer();
 
 		return packetData;
 	}
 
+	/**
+	 * Get the index of the stream this packet belongs to.
+	 *
+	 * @return the stream index, or -1 if this packet is not associated with a stream.
+	 */
+	public int getStreamIndex() {
+		return avPacket != null ? avPacket.stream_index() : -1;
+	}
+
+	/**
+	 * Get the presentation timestamp in stream time base units.
+	 *
+	 * @return the presentation timestamp, or {@code AV_NOPTS_VALUE} if unknown.
+	 */
+	public long getPts() {
+		return avPacket != null ? avPacket.pts() : AV_NOPTS_VALUE;
+	}
+
+	/**
+	 * Get the decompression timestamp in stream time base units.
+	 *
+	 * @return the decompression timestamp, or {@code AV_NOPTS_VALUE} if unknown.
+	 */
+	public long getDts() {
+		return avPacket != null ? avPacket.dts() : AV_NOPTS_VALUE;
+	}
+
+	/**
+	 * Get the duration of this packet in stream time base units.
+	 *
+	 * @return the packet duration, or zero if unknown.
+	 */
+	public long getDuration() {
+		return avPacket != null ? avPacket.duration() : 0;
+	}
+
+	/**
+	 * Get the presentation timestamp in microseconds. If the presentation timestamp
+	 * is unknown, the decompression timestamp is used.
+	 *
+	 * @return the timestamp in microseconds, or {@code AV_NOPTS_VALUE} if unknown.
+	 */
+	public long getTimestamp() {
+		long pts = getPts();
+
+		if (pts == AV_NOPTS_VALUE)
+			pts = getDts();
+
+		if (pts == AV_NOPTS_VALUE || timeBase == null)
+			return AV_NOPTS_VALUE;
+
+		return av_rescale(pts, 1000000L * timeBase.num(), timeBase.den());
+	}
+
+	void setTimeBase(AVRational timeBase) {
+		this.timeBase = timeBase;
+	}
+
+	AVRational getTimeBase() {
+		return timeBase;
+	}
+
 	public void setKeyFrame(boolean keyFrame) {
 		this.keyFrame = keyFrame;
 	}
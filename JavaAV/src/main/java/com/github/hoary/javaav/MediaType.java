@@ -44,6 +44,31 @@ public enum MediaType {
 	/** FFmpeg media type id. */
 	private final int id;
 
+	/** The lowest FFmpeg id, the offset of the lookup table. */
+	private static final int ID_OFFSET;
+
+	/** Media types indexed by FFmpeg id minus the offset, see {@link #byId(int)}. */
+	private static final MediaType[] ID_TABLE;
+
+	static {
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+
+		for (MediaType value : values()) {
+			min = Math.min(min, value.id);
+			max = Math.max(max, value.id);
+		}
+
+		ID_OFFSET = min;
+		ID_TABLE = new MediaType[max - min + 1];
+
+		// the first declared value wins for aliased ids
+		for (MediaType value : values()) {
+			if (ID_TABLE[value.id - ID_OFFSET] == null)
+				ID_TABLE[value.id - ID_OFFSET] = value;
+		}
+	}
+
 
 	/**
 	 * Create a new {@code MediaType}.
@@ -71,12 +96,12 @@ public enum MediaType {
 	 * @return matching media type, or {@code null} if id is not defined.
 	 */
 	public static MediaType byId(int id) {
-		for (MediaType value : values()) {
-			if (value.id == id)
-				return value;
-		}
+		int index = id - ID_OFFSET;
+
+		if (index < 0 || index >= ID_TABLE.length)
+			return null;
 
-		return null;
+		return ID_TABLE[index];
 	}
 	
 }
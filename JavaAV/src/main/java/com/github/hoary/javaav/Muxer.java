@@ -21,6 +21,7 @@
 
 package com.github.hoary.javaav;
 
+import org.bytedeco.javacpp.avcodec.AVCodec;
 import org.bytedeco.javacpp.avcodec.AVCodecContext;
 import org.bytedeco.javacpp.avcodec.AVPacket;
 import org.bytedeco.javacpp.avformat.AVFormatContext;
@@ -28,7 +29,14 @@ import org.bytedeco.javacpp.avformat.AVIOContext;
 import org.bytedeco.javacpp.avformat.AVOutputFormat;
 import org.bytedeco.javacpp.avformat.AVStream;
 
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
 import static org.bytedeco.javacpp.avcodec.AV_PKT_FLAG_KEY;
+import static org.bytedeco.javacpp.avcodec.avcodec_copy_context;
 import static org.bytedeco.javacpp.avformat.AVFMT_GLOBALHEADER;
 import static org.bytedeco.javacpp.avformat.AVFMT_NOFILE;
 import static org.bytedeco.javacpp.avformat.AVIO_FLAG_WRITE;
@@ -44,9 +52,15 @@ import static org.bytedeco.javacpp.avformat.avio_close;
 import static org.bytedeco.javacpp.avformat.avio_open;
 import static org.bytedeco.javacpp.avutil.AVDictionary;
 import static org.bytedeco.javacpp.avutil.AVRational;
+import static org.bytedeco.javacpp.avutil.av_dict_free;
+import static org.bytedeco.javacpp.avutil.av_dict_get;
+import static org.bytedeco.javacpp.avutil.av_dict_set;
 import static org.bytedeco.javacpp.avutil.AV_NOPTS_VALUE;
+import static org.bytedeco.javacpp.avutil.AV_ROUND_NEAR_INF;
+import static org.bytedeco.javacpp.avutil.AV_ROUND_PASS_MINMAX;
 import static org.bytedeco.javacpp.avutil.av_free;
 import static org.bytedeco.javacpp.avutil.av_rescale_q;
+import static org.bytedeco.javacpp.avutil.av_rescale_q_rnd;
 
 public class Muxer extends Configurable {
 
@@ -75,19 +89,119 @@ public class Muxer extends Configurable {
 
 	private boolean interleave = true;
 
+	/** The timestamp in microseconds of the first frame of all encoded streams. */
+	private long startTime = AV_NOPTS_VALUE;
+
+	/** Input streams that are copied without re-encoding, mapped by input stream index. */
+	private Map<Integer, AVStream> inputStreams = new LinkedHashMap<Integer, AVStream>();
+
+	/** Output streams of copied input streams, mapped by input stream index. */
+	private Map<Integer, AVStream> copyStreams = new LinkedHashMap<Integer, AVStream>();
+
+	/** The output format name, required if not writing to a path. */
+	private String formatName;
+
+	/** Options passed to the output format, e.g. movflags. */
+	private Options formatOptions;
+
+	/** Output stream to write to, instead of a path. */
+	private OutputStream outputStream;
+
+	/** Output channel to write to, instead of a path. */
+	private WritableByteChannel outputChannel;
+
+	/** Output buffer to write to, instead of a path. */
+	private OutputBuffer outputBuffer;
+
+	/** Custom I/O context if not writing to a path. */
+	private IOContext ioContext;
+
+	/** The size of the I/O buffer used with custom I/O. */
+	private int ioBufferSize = 256 * 1024;
+
 
 	public Muxer(String outputPath) {
 		this.outputPath = outputPath;
 	}
 
+	/**
+	 * Create a {@code Muxer} that writes to the specified output stream, e.g. the
+	 * stream of a socket. Output streams are not seekable, see
+	 * {@link #Muxer(WritableByteChannel, String)} for the implications. The stream is
+	 * closed when the {@code Muxer} is closed.
+	 *
+	 * @param outputStream the output stream to write to.
+	 * @param format       the output format name, e.g. "mpegts".
+	 */
+	public Muxer(OutputStream outputStream, String format) {
+		this.outputStream = outputStream;
+		this.formatName = format;
+	}
+
+	/**
+	 * Create a {@code Muxer} that writes to the specified channel. If the channel is
+	 * not a {@code SeekableByteChannel}, the output is written in non-seekable mode,
+	 * which requires a streamable format, e.g. MPEG-TS, Matroska or fragmented MP4.
+	 * MP4 and MOV output is fragmented automatically in non-seekable mode, unless
+	 * "movflags" are set with {@link #setFormatOptions(Options)}. The channel is
+	 * closed when the {@code Muxer} is closed.
+	 *
+	 * @param channel the channel to write to.
+	 * @param format  the output format name, e.g. "mp4".
+	 */
+	public Muxer(WritableByteChannel channel, String format) {
+		this.outputChannel = channel;
+		this.formatName = format;
+	}
+
+	/**
+	 * Create a {@code Muxer} that writes to the specified growable off-heap buffer.
+	 * The buffer is seekable, thus any output format can be written.
+	 *
+	 * @param buffer the buffer to write to.
+	 * @param format the output format name, e.g. "mp4".
+	 */
+	public Muxer(OutputBuffer buffer, String format) {
+		this.outputBuffer = buffer;
+		this.formatName = format;
+	}
+
+	/**
+	 * Add an output stream that copies the stream at specified index of the given
+	 * {@code Demuxer} without re-encoding. The output stream is created with the
+	 * codec parameters of the input stream when this {@code Muxer} is opened, thus
+	 * this method must be called before {@link #open()}. Packets of the input stream,
+	 * retrieved with {@link Demuxer#readPacket()}, are written with
+	 * {@link #addPacket(MediaPacket)}. Added streams are removed when this
+	 * {@code Muxer} is closed.
+	 *
+	 * @param demuxer     the opened demuxer that provides the input stream.
+	 * @param streamIndex the index of the input stream.
+	 *
+	 * @throws JavaAVException if this {@code Muxer} is already opened.
+	 */
+	public void addStream(Demuxer demuxer, int streamIndex) throws JavaAVException {
+		if (formatContext != null)
+			throw new JavaAVException("Could not add stream, muxer is already opened.");
+
+		inputStreams.put(streamIndex, demuxer.getStream(streamIndex));
+	}
+
 	public void open() throws Exception {
 		formatContext = null;
 		videoStream = null;
 		audioStream = null;
 
+		// device formats are registered on demand in the lazy startup mode
+		if (formatName != null && av_guess_format(formatName, null, null) == null)
+			JavaAV.loadDevices();
+
+		if (outputPath == null) {
+			if ((outputFormat = av_guess_format(formatName, null, null)) == null)
+				throw new JavaAVException("Could not find output format " + formatName);
+		}
         /* auto detect the output format from the name. */
-		String formatName = null;
-		if ((outputFormat = av_guess_format(formatName, outputPath, null)) == null) {
+		else if ((outputFormat = av_guess_format(formatName, outputPath, null)) == null) {
 			int proto = outputPath.indexOf("://");
 			if (proto > 0) {
 				formatName = outputPath.substring(0, proto);
@@ -96,12 +210,15 @@ public class Muxer extends Configurable {
 				throw new JavaAVException("Could not guess output format for " + outputPath);
 		}
 
+		// formats without files, e.g. RTSP, may open network connections as well
+		JavaAV.loadNetwork(outputPath);
+
         /* allocate the output media context */
 		if ((formatContext = avformat_alloc_context()) == null)
 			throw new JavaAVException("Could not allocate format context");
 
 		formatContext.oformat(outputFormat);
-		formatContext.filename().putString(outputPath);
+		formatContext.filename().putString(outputPath != null ? outputPath : "");
 
 		if (getImageWidth() > 0 && getImageHeight() > 0) {
 			outputFormat.video_codec(videoCodec.getID().value());
@@ -121,6 +238,11 @@ public class Muxer extends Configurable {
 			videoEncoder.setQuality(getVideoQuality());
 			videoEncoder.setPixelFormat(getPixelFormat());
 			videoEncoder.setProfile(AVCodecContext.FF_PROFILE_H264_CONSTRAINED_BASELINE);
+			videoEncoder.setThreadCount(getThreadCount());
+			videoEncoder.setThreadTypes(threadTypes.toArray(new ThreadType[0]));
+			videoEncoder.setSlices(getSlices());
+			videoEncoder.setScalerThreadCount(getScalerThreadCount());
+			videoEncoder.setScalerFlags(scalerFlags.toArray(new ScalerFlag[0]));
 
 			if ((outputFormat.flags() & AVFMT_GLOBALHEADER) != 0)
 				videoEncoder.setFlag(CodecFlag.GLOBAL_HEADER);
@@ -149,7 +271,33 @@ public class Muxer extends Configurable {
 				audioEncoder.setFlag(CodecFlag.GLOBAL_HEADER);
 		}
 
-		av_dump_format(formatContext, 0, outputPath, 1);
+        /* add stream copy output streams */
+		for (Entry<Integer, AVStream> entry : inputStreams.entrySet()) {
+			AVStream inStream = entry.getValue();
+			AVStream outStream = avformat_new_stream(formatContext, (AVCodec) null);
+
+			if (outStream == null) {
+				release();
+				throw new JavaAVException("Could not allocate output stream for input stream " + entry.getKey());
+			}
+
+			if (avcodec_copy_context(outStream.codec(), inStream.codec()) < 0) {
+				release();
+				throw new JavaAVException("Could not copy codec parameters of input stream " + entry.getKey());
+			}
+
+			AVCodecContext codecContext = outStream.codec();
+			// let the muxer choose a codec tag that matches the output format
+			codecContext.codec_tag(0);
+			outStream.time_base(inStream.time_base());
+
+			if ((outputFormat.flags() & AVFMT_GLOBALHEADER) != 0)
+				codecContext.flags(codecContext.flags() | CodecFlag.GLOBAL_HEADER.value());
+
+			copyStreams.put(entry.getKey(), outStream);
+		}
+
+		av_dump_format(formatContext, 0, outputPath != null ? outputPath : formatName, 1);
 
 		if (videoStream != null)
 			videoEncoder.open(videoOptions);
@@ -157,8 +305,36 @@ public class Muxer extends Configurable {
 		if (audioStream != null)
 			audioEncoder.open(audioOptions);
 
+		AVDictionary options = new AVDictionary(null);
+
+		if (formatOptions != null) {
+			for (Entry<String, String> e : formatOptions.entrySet())
+				av_dict_set(options, e.getKey(), e.getValue(), 0);
+		}
+
+		if (outputPath == null) {
+			/* write to the custom output */
+			try {
+				ioContext = createIOContext();
+			}
+			catch (JavaAVException e) {
+				av_dict_free(options);
+				release();
+				throw e;
+			}
+
+			formatContext.pb(ioContext.getAVIOContext());
+			formatContext.flags(formatContext.flags() | AVFormatContext.AVFMT_FLAG_CUSTOM_IO);
+			// let the I/O buffer coalesce packets into large writes
+			formatContext.flush_packets(0);
+
+			if (!ioContext.isSeekable() && isMovFormat() && av_dict_get(options, "movflags", null, 0) == null) {
+				// the MP4 index can not be written at the end without seeking
+				av_dict_set(options, "movflags", "frag_keyframe+empty_moov", 0);
+			}
+		}
         /* open the output file */
-		if ((outputFormat.flags() & AVFMT_NOFILE) == 0) {
+		else if ((outputFormat.flags() & AVFMT_NOFILE) == 0) {
 			AVIOContext pb = new AVIOContext(null);
 			if (avio_open(pb, outputPath, AVIO_FLAG_WRITE) < 0) {
 				release();
@@ -168,7 +344,14 @@ public class Muxer extends Configurable {
 		}
 
         /* write the stream header*/
-		avformat_write_header(formatContext, (AVDictionary) null);
+		int ret = avformat_write_header(formatContext, options);
+
+		av_dict_free(options);
+
+		if (ret < 0) {
+			release();
+			throw new JavaAVException("Could not write header.");
+		}
 	}
 
 	public void close() throws JavaAVException {
@@ -178,7 +361,7 @@ public class Muxer extends Configurable {
 				while (videoStream != null && flushVideo()) ;
 				while (audioStream != null && flushAudio()) ;
 
-				if (interleave && videoStream != null && audioStream != null) {
+				if (interleave && formatContext.nb_streams() > 1) {
 					av_interleaved_write_frame(formatContext, null);
 				}
 				else {
@@ -194,6 +377,8 @@ public class Muxer extends Configurable {
 	}
 
 	public MediaPacket addImage(VideoFrame frame) throws JavaAVException {
+		updateStartTime(frame);
+
 		MediaPacket mediaPacket = videoEncoder.encodeVideo(frame);
 
 		if (mediaPacket != null) {
@@ -206,6 +391,8 @@ public class Muxer extends Configurable {
 	}
 
 	public MediaPacket[] addSamples(AudioFrame frame) throws JavaAVException {
+		updateStartTime(frame);
+
 		MediaPacket[] mediaPackets = audioEncoder.encodeAudio(frame);
 
 		for (MediaPacket mediaPacket : mediaPackets) {
@@ -223,6 +410,70 @@ public class Muxer extends Configurable {
 		return mediaPackets;
 	}
 
+	/**
+	 * Write a compressed packet of an input stream that was previously added with
+	 * {@link #addStream(Demuxer, int)}. The packet timestamps are rescaled from the
+	 * input stream time base to the output stream time base. The packet data is passed
+	 * to the muxer, so the packet must not be used afterwards except for releasing it
+	 * with {@link MediaPacket#clear()}.
+	 *
+	 * @param mediaPacket the compressed packet retrieved with {@link Demuxer#readPacket()}.
+	 *
+	 * @throws JavaAVException if this {@code Muxer} is not opened, the packet does not
+	 * belong to a copied stream or could not be written.
+	 */
+	public void addPacket(MediaPacket mediaPacket) throws JavaAVException {
+		AVFormatContext context = formatContext;
+
+		if (context == null)
+			throw new JavaAVException("Could not write packet, muxer is not opened.");
+
+		if (mediaPacket == null)
+			throw new JavaAVException("Could not write packet. No packet provided.");
+
+		AVPacket avPacket = mediaPacket.getAVPacket();
+
+		if (avPacket == null)
+			throw new JavaAVException("Could not write packet. Packet is not associated with a stream.");
+
+		int inputIndex = avPacket.stream_index();
+		AVStream outStream = copyStreams.get(inputIndex);
+
+		if (outStream == null)
+			throw new JavaAVException("Could not write packet. No output stream for input stream " + inputIndex);
+
+		AVRational srcTimeBase = mediaPacket.getTimeBase();
+		AVRational dstTimeBase = outStream.time_base();
+
+		if (srcTimeBase == null)
+			srcTimeBase = inputStreams.get(inputIndex).time_base();
+
+		int rounding = AV_ROUND_NEAR_INF | AV_ROUND_PASS_MINMAX;
+
+		if (avPacket.pts() != AV_NOPTS_VALUE)
+			avPacket.pts(av_rescale_q_rnd(avPacket.pts(), srcTimeBase, dstTimeBase, rounding));
+
+		if (avPacket.dts() != AV_NOPTS_VALUE)
+			avPacket.dts(av_rescale_q_rnd(avPacket.dts(), srcTimeBase, dstTimeBase, rounding));
+
+		if (avPacket.duration() > 0)
+			avPacket.duration((int) av_rescale_q(avPacket.duration(), srcTimeBase, dstTimeBase));
+
+		avPacket.pos(-1);
+		avPacket.stream_index(outStream.index());
+
+		synchronized (context) {
+			if (interleave && context.nb_streams() > 1) {
+				if (av_interleaved_write_frame(context, avPacket) < 0)
+					throw new JavaAVException("Could not write interleaved packet.");
+			}
+			else {
+				if (av_write_frame(context, avPacket) < 0)
+					throw new JavaAVException("Could not write packet.");
+			}
+		}
+	}
+
 	public void setVideoCodec(Codec videoCodec) {
 		this.videoCodec = videoCodec;
 	}
@@ -231,6 +482,36 @@ public class Muxer extends Configurable {
 		this.audioCodec = audioCodec;
 	}
 
+	/**
+	 * Set options of the output format, e.g. "movflags". Must be called before
+	 * {@link #open()}.
+	 *
+	 * @param options the output format options.
+	 */
+	public void setFormatOptions(Options options) {
+		this.formatOptions = options;
+	}
+
+	/**
+	 * Set the size of the I/O buffer used to write to streams, channels and buffers.
+	 * Written data is collected in this buffer, thus the size determines the size of
+	 * single writes. Must be called before {@link #open()}.
+	 *
+	 * @param size the I/O buffer size in bytes.
+	 *
+	 * @throws JavaAVException if the size is not positive.
+	 */
+	public void setIOBufferSize(int size) throws JavaAVException {
+		if (size <= 0)
+			throw new JavaAVException("Invalid I/O buffer size: " + size);
+
+		this.ioBufferSize = size;
+	}
+
+	public int getIOBufferSize() {
+		return ioBufferSize;
+	}
+
 	public void setInterleave(boolean interleave) {
 		this.interleave = interleave;
 	}
@@ -275,6 +556,24 @@ public class Muxer extends Configurable {
 		return audioBitrate;
 	}
 
+	/**
+	 * Take the timestamp of the first frame as start time of all encoded streams,
+	 * so that audio and video keep their offset.
+	 *
+	 * @param frame the frame to encode.
+	 */
+	private void updateStartTime(MediaFrame frame) {
+		if (startTime != AV_NOPTS_VALUE || frame == null || frame.getTimestamp() == AV_NOPTS_VALUE)
+			return;
+
+		startTime = frame.getTimestamp();
+
+		if (videoEncoder != null)
+			videoEncoder.setStartTime(startTime);
+		if (audioEncoder != null)
+			audioEncoder.setStartTime(startTime);
+	}
+
 	private boolean flushVideo() throws JavaAVException {
 		MediaPacket mediaPacket = videoEncoder.flushVideo();
 
@@ -285,7 +584,8 @@ public class Muxer extends Configurable {
 		// write flushed video
 		writeVideoPacket(avPacket);
 
-		return mediaPacket.isKeyFrame();
+		// frame-threaded encoders may have buffered more frames
+		return true;
 	}
 
 	private boolean flushAudio() throws JavaAVException {
@@ -315,7 +615,7 @@ public class Muxer extends Configurable {
 
 		synchronized (formatContext) {
 	        /* write the compressed frame in the media file */
-			if (interleave && audioStream != null) {
+			if (interleave && formatContext.nb_streams() > 1) {
 				if (av_interleaved_write_frame(formatContext, avPacket) < 0)
 					throw new JavaAVException("Could not write interleaved video frame.");
 			}
@@ -344,7 +644,7 @@ public class Muxer extends Configurable {
 
 		/* write the compressed frame in the media file */
 		synchronized (formatContext) {
-			if (interleave && videoStream != null) {
+			if (interleave && formatContext.nb_streams() > 1) {
 				if (av_interleaved_write_frame(formatContext, avPacket) < 0)
 					throw new JavaAVException("Could not write interleaved audio frame.");
 			}
@@ -355,6 +655,26 @@ public class Muxer extends Configurable {
 		}
 	}
 
+	private IOContext createIOContext() throws JavaAVException {
+		if (outputStream != null)
+			return new IOContext.OutputStreamIOContext(outputStream, ioBufferSize);
+
+		if (outputChannel != null)
+			return new IOContext.WritableChannelIOContext(outputChannel, ioBufferSize);
+
+		if (outputBuffer != null)
+			return new IOContext.OutputBufferIOContext(outputBuffer, ioBufferSize);
+
+		throw new JavaAVException("No output specified.");
+	}
+
+	private boolean isMovFormat() {
+		String name = outputFormat.name().getString();
+
+		return name.equals("mp4") || name.equals("mov") || name.equals("ipod") ||
+				name.equals("3gp") || name.equals("3g2") || name.equals("psp");
+	}
+
 	private void release() throws JavaAVException {
 		if (videoEncoder != null) {
 			videoEncoder.close();
@@ -366,7 +686,12 @@ public class Muxer extends Configurable {
 		}
 
 		if (formatContext != null && !formatContext.isNull()) {
-			if ((outputFormat.flags() & AVFMT_NOFILE) == 0) {
+			if (ioContext != null) {
+				/* the custom output is not closed by FFmpeg */
+				ioContext.close();
+				ioContext = null;
+			}
+			else if ((outputFormat.flags() & AVFMT_NOFILE) == 0) {
 				/* close the output file */
 				avio_close(formatContext.pb());
 			}
@@ -385,6 +710,11 @@ public class Muxer extends Configurable {
 
 		videoStream = null;
 		audioStream = null;
+		startTime = AV_NOPTS_VALUE;
+
+		// do not keep native streams of closed demuxers reachable
+		inputStreams.clear();
+		copyStreams.clear();
 	}
 
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2013 Alex Andres
+ *
+ * This file is part of JavaAV.
+ *
+ * JavaAV is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version (subject to the "Classpath"
+ * exception as provided in the LICENSE file that accompanied
+ * this code).
+ *
+ * JavaAV is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaAV. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.github.hoary.javaav;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@code OutputBuffer} is a growable off-heap buffer that receives the output of a
+ * {@code Muxer}. The muxed data can be retrieved with {@link #getByteBuffer()}, e.g.
+ * to put it into a cache or to send it over a network without touching the file
+ * system. An {@code OutputBuffer} may be reused after calling {@link #clear()}.
+ *
+ * @author Alex Andres
+ */
+public class OutputBuffer {
+
+	/** The default initial capacity in bytes. */
+	private static final int DEFAULT_CAPACITY = 1024 * 1024;
+
+	/** The direct buffer holding the written data. */
+	private ByteBuffer buffer;
+
+	/** The number of written bytes. */
+	private int size;
+
+	/** The current write position. */
+	private int position;
+
+
+	/**
+	 * Create a new {@code OutputBuffer} with the default initial capacity of 1 MiB.
+	 */
+	public OutputBuffer() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create a new {@code OutputBuffer} with the specified initial capacity. The
+	 * buffer grows as required.
+	 *
+	 * @param capacity the initial capacity in bytes.
+	 */
+	public OutputBuffer(int capacity) {
+		buffer = ByteBuffer.allocateDirect(Math.max(capacity, 1));
+	}
+
+	/**
+	 * Get the written data. The returned buffer is a read-only view that starts at
+	 * position zero and ends at the number of written bytes. The view becomes invalid
+	 * as soon as more data is written or the buffer is cleared.
+	 *
+	 * @return the written data.
+	 */
+	public ByteBuffer getByteBuffer() {
+		ByteBuffer view = buffer.asReadOnlyBuffer();
+		view.position(0);
+		view.limit(size);
+
+		return view;
+	}
+
+	/**
+	 * Get the number of written bytes.
+	 *
+	 * @return the size of the written data in bytes.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get the capacity of this buffer.
+	 *
+	 * @return the capacity in bytes.
+	 */
+	public int capacity() {
+		return buffer.capacity();
+	}
+
+	/**
+	 * Discard all written data. The capacity is retained.
+	 */
+	public void clear() {
+		size = 0;
+		position = 0;
+	}
+
+	void write(ByteBuffer data) throws IOException {
+		int length = data.remaining();
+
+		ensureCapacity((long) position + length);
+
+		ByteBuffer target = buffer.duplicate();
+		target.position(position);
+		target.put(data);
+
+		position += length;
+		size = Math.max(size, position);
+	}
+
+	void position(int position) throws IOException {
+		ensureCapacity(position);
+
+		// fill a gap with zeros, if seeking beyond the end
+		while (size < position)
+			buffer.put(size++, (byte) 0);
+
+		this.position = position;
+	}
+
+	int position() {
+		return position;
+	}
+
+	private void ensureCapacity(long required) throws IOException {
+		if (required <= buffer.capacity())
+			return;
+
+		if (required > Integer.MAX_VALUE)
+			throw new IOException("Output buffer exceeds maximum capacity.");
+
+		long capacity = Math.max(required, Math.min(2L * buffer.capacity(), Integer.MAX_VALUE));
+
+		ByteBuffer grown;
+
+		try {
+			grown = ByteBuffer.allocateDirect((int) capacity);
+		}
+		catch (OutOfMemoryError e) {
+			throw new IOException("Could not grow output buffer to " + capacity + " bytes.", e);
+		}
+		ByteBuffer data = buffer.duplicate();
+		data.position(0);
+		data.limit(size);
+		grown.put(data);
+
+		buffer = grown;
+	}
+
+}
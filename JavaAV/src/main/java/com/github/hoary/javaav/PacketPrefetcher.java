@@ -0,0 +1,438 @@
+/*
+ * Copyright (C) 2013 Alex Andres
+ *
+ * This file is part of JavaAV.
+ *
+ * JavaAV is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version (subject to the "Classpath"
+ * exception as provided in the LICENSE file that accompanied
+ * this code).
+ *
+ * JavaAV is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaAV. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.github.hoary.javaav;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.bytedeco.javacpp.avcodec.AVPacket;
+import static org.bytedeco.javacpp.avcodec.av_dup_packet;
+import static org.bytedeco.javacpp.avcodec.av_free_packet;
+import static org.bytedeco.javacpp.avformat.AVFormatContext;
+import static org.bytedeco.javacpp.avformat.av_read_frame;
+import static org.bytedeco.javacpp.avutil.AVRational;
+import static org.bytedeco.javacpp.avutil.AV_NOPTS_VALUE;
+import static org.bytedeco.javacpp.avutil.av_rescale;
+
+/**
+ * {@code PacketPrefetcher} reads packets from an input source on a dedicated thread
+ * and buffers them in bounded per-stream queues. Each queue is capped by the number
+ * of bytes and by the duration of the buffered packets. The reader thread waits as
+ * long as the queue of a read packet is full.
+ * <p/>
+ * Packets are taken in the order they were read, regardless of the stream they
+ * belong to. Since the consumer always takes the oldest packet of all queues, a full
+ * queue is always drained and the reader cannot block forever.
+ *
+ * @author Alex Andres
+ */
+class PacketPrefetcher implements Runnable {
+
+	/** The input format context, only accessed by the reader thread while running. */
+	private final AVFormatContext formatContext;
+
+	/** Packet queues mapped by stream indices. */
+	private final Map<Integer, PacketQueue> queues = new HashMap<Integer, PacketQueue>();
+
+	/** Guards the queues and the reader state. */
+	private final Object lock = new Object();
+
+	/** The maximum number of bytes buffered per stream. */
+	private final long maxBytes;
+
+	/** The maximum duration in microseconds buffered per stream. */
+	private final long maxDuration;
+
+	/** The reader thread. */
+	private Thread thread;
+
+	/** Whether the reader thread should continue to read. */
+	private boolean running;
+
+	/** Whether the reader thread reached the end of input. */
+	private boolean endOfInput;
+
+	/** Sequence number of the next read packet. */
+	private long sequence;
+
+	/** Number of taken packets the consumer had to wait for. */
+	private long underruns;
+
+	/** Number of read packets that had to wait for a full queue. */
+	private long stalls;
+
+
+	/**
+	 * Create a new {@code PacketPrefetcher} for the specified streams.
+	 *
+	 * @param formatContext the opened input format context.
+	 * @param streams       the indices of the streams to buffer, packets of other
+	 *                      streams are dropped.
+	 * @param maxBytes      the maximum number of bytes buffered per stream.
+	 * @param maxDuration   the maximum duration in microseconds buffered per stream.
+	 */
+	PacketPrefetcher(AVFormatContext formatContext, Set<Integer> streams, long maxBytes, long maxDuration) {
+		this.formatContext = formatContext;
+		this.maxBytes = maxBytes;
+		this.maxDuration = maxDuration;
+
+		for (Integer index : streams)
+			queues.put(index, new PacketQueue(formatContext.streams(index).time_base()));
+	}
+
+	/**
+	 * Start the reader thread.
+	 */
+	void start() {
+		synchronized (lock) {
+			if (thread != null)
+				return;
+
+			running = true;
+			endOfInput = false;
+
+			thread = new Thread(this, "JavaAV Demuxer Prefetch");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Stop the reader thread and release all buffered packets. After this method
+	 * returns the input format context may be accessed by the caller again.
+	 */
+	void stop() {
+		pause();
+		clear();
+	}
+
+	/**
+	 * Stop the reader thread and keep the buffered packets. After this method returns
+	 * the input format context may be accessed by the caller again. Reading continues
+	 * after the last buffered packet when the reader is started again.
+	 */
+	void pause() {
+		Thread reader;
+
+		synchronized (lock) {
+			running = false;
+			reader = thread;
+			thread = null;
+
+			lock.notifyAll();
+		}
+
+		if (reader != null) {
+			boolean interrupted = false;
+
+			while (reader.isAlive()) {
+				try {
+					reader.join();
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Release all buffered packets, e.g. after the input position has changed. The
+	 * reader thread must not be running.
+	 */
+	void clear() {
+		synchronized (lock) {
+			for (PacketQueue queue : queues.values())
+				queue.clear();
+		}
+	}
+
+	/**
+	 * Take the oldest buffered packet. Waits until a packet is available.
+	 *
+	 * @return the oldest packet, or {@code null} if the end of input is reached.
+	 *
+	 * @throws JavaAVException if interrupted while waiting.
+	 */
+	AVPacket take() throws JavaAVException {
+		synchronized (lock) {
+			boolean waited = false;
+
+			while (true) {
+				PacketQueue oldest = null;
+
+				for (PacketQueue queue : queues.values()) {
+					if (!queue.isEmpty() && (oldest == null || queue.peekSequence() < oldest.peekSequence()))
+						oldest = queue;
+				}
+
+				if (oldest != null) {
+					AVPacket packet = oldest.poll();
+					lock.notifyAll();
+
+					return packet;
+				}
+
+				if (endOfInput || !running)
+					return null;
+
+				// count each packet the consumer waits for once, regardless of wakeups
+				if (!waited) {
+					underruns++;
+					waited = true;
+				}
+
+				try {
+					lock.wait();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new JavaAVException("Interrupted while waiting for packets.");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the number of packets buffered for the specified stream.
+	 *
+	 * @param streamIndex the stream index.
+	 *
+	 * @return the number of buffered packets.
+	 */
+	int getPacketCount(int streamIndex) {
+		synchronized (lock) {
+			PacketQueue queue = queues.get(streamIndex);
+			return queue == null ? 0 : queue.size();
+		}
+	}
+
+	/**
+	 * Get the number of bytes buffered for the specified stream.
+	 *
+	 * @param streamIndex the stream index.
+	 *
+	 * @return the number of buffered bytes.
+	 */
+	long getBytes(int streamIndex) {
+		synchronized (lock) {
+			PacketQueue queue = queues.get(streamIndex);
+			return queue == null ? 0 : queue.bytes;
+		}
+	}
+
+	/**
+	 * Get the duration of the packets buffered for the specified stream.
+	 *
+	 * @param streamIndex the stream index.
+	 *
+	 * @return the buffered duration in microseconds.
+	 */
+	long getDuration(int streamIndex) {
+		synchronized (lock) {
+			PacketQueue queue = queues.get(streamIndex);
+			return queue == null ? 0 : queue.getDuration();
+		}
+	}
+
+	/**
+	 * Get the number of packets the consumer had to wait for.
+	 *
+	 * @return the number of underruns.
+	 */
+	long getUnderruns() {
+		synchronized (lock) {
+			return underruns;
+		}
+	}
+
+	/**
+	 * Get the number of read packets that had to wait since their queue was full.
+	 *
+	 * @return the number of stalls.
+	 */
+	long getStalls() {
+		synchronized (lock) {
+			return stalls;
+		}
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			AVPacket packet = new AVPacket();
+
+			if (av_read_frame(formatContext, packet) < 0) {
+				synchronized (lock) {
+					endOfInput = true;
+					lock.notifyAll();
+				}
+				break;
+			}
+
+			PacketQueue queue = queues.get(packet.stream_index());
+
+			// detach packet data from buffers owned by the demuxer
+			if (queue == null || av_dup_packet(packet) < 0) {
+				av_free_packet(packet);
+				continue;
+			}
+
+			synchronized (lock) {
+				// count each packet that has to wait once, regardless of wakeups
+				if (running && queue.isFull())
+					stalls++;
+
+				while (running && queue.isFull()) {
+					try {
+						lock.wait();
+					}
+					catch (InterruptedException e) {
+						running = false;
+					}
+				}
+
+				if (!running) {
+					av_free_packet(packet);
+					break;
+				}
+
+				queue.add(packet, sequence++);
+				lock.notifyAll();
+			}
+		}
+	}
+
+
+
+	/**
+	 * Queue of packets of a single stream.
+	 */
+	private class PacketQueue {
+
+		private final ArrayDeque<AVPacket> packets = new ArrayDeque<AVPacket>();
+
+		private final ArrayDeque<Long> sequences = new ArrayDeque<Long>();
+
+		private final AVRational timeBase;
+
+		private long bytes;
+
+		private long firstTimestamp = AV_NOPTS_VALUE;
+
+		private long lastTimestamp = AV_NOPTS_VALUE;
+
+		private long lastDuration;
+
+
+		PacketQueue(AVRational timeBase) {
+			this.timeBase = timeBase;
+		}
+
+		void add(AVPacket packet, long sequence) {
+			long timestamp = packet.dts() != AV_NOPTS_VALUE ? packet.dts() : packet.pts();
+
+			if (timestamp != AV_NOPTS_VALUE) {
+				lastTimestamp = timestamp;
+
+				if (firstTimestamp == AV_NOPTS_VALUE)
+					firstTimestamp = timestamp;
+			}
+
+			lastDuration = packet.duration();
+			bytes += packet.size();
+
+			packets.add(packet);
+			sequences.add(sequence);
+		}
+
+		AVPacket poll() {
+			AVPacket packet = packets.poll();
+			sequences.poll();
+
+			bytes -= packet.size();
+
+			if (packets.isEmpty()) {
+				firstTimestamp = AV_NOPTS_VALUE;
+				lastTimestamp = AV_NOPTS_VALUE;
+			}
+			else {
+				AVPacket head = packets.peek();
+				long timestamp = head.dts() != AV_NOPTS_VALUE ? head.dts() : head.pts();
+
+				if (timestamp != AV_NOPTS_VALUE)
+					firstTimestamp = timestamp;
+			}
+
+			return packet;
+		}
+
+		long peekSequence() {
+			return sequences.peek();
+		}
+
+		boolean isEmpty() {
+			return packets.isEmpty();
+		}
+
+		int size() {
+			return packets.size();
+		}
+
+		/**
+		 * A queue is full if the byte or duration limit is reached. An empty queue
+		 * is never full, so that packets larger than the limit can be passed.
+		 */
+		boolean isFull() {
+			return !packets.isEmpty() && (bytes >= maxBytes || getDuration() >= maxDuration);
+		}
+
+		long getDuration() {
+			if (firstTimestamp == AV_NOPTS_VALUE || lastTimestamp == AV_NOPTS_VALUE)
+				return 0;
+
+			long duration = lastTimestamp - firstTimestamp + lastDuration;
+
+			return av_rescale(duration, 1000000L * timeBase.num(), timeBase.den());
+		}
+
+		void clear() {
+			for (AVPacket packet : packets)
+				av_free_packet(packet);
+
+			packets.clear();
+			sequences.clear();
+			bytes = 0;
+			firstTimestamp = AV_NOPTS_VALUE;
+			lastTimestamp = AV_NOPTS_VALUE;
+			lastDuration = 0;
+		}
+
+	}
+
+}
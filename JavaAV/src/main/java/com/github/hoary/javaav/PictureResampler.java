@@ -19,29 +19,96 @@
  * along with JavaAV. If not, see <http://www.gnu.org/licenses/>.
  */
 
+
 package com.github.hoary.javaav;
 
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.javacpp.Pointer;
 import org.bytedeco.javacpp.PointerPointer;
 import org.bytedeco.javacpp.avcodec.AVPicture;
 import org.bytedeco.javacpp.swscale.SwsContext;
 
-import static org.bytedeco.javacpp.swscale.SWS_BILINEAR;
-import static org.bytedeco.javacpp.swscale.sws_freeContext;
-import static org.bytedeco.javacpp.swscale.sws_getCachedContext;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.bytedeco.javacpp.avutil.av_pix_fmt_desc_get;
 import static org.bytedeco.javacpp.swscale.sws_scale;
 
+/**
+ * The PictureResampler converts pictures from one picture format to another. Scaler
+ * contexts are shared with other resamplers by the {@code ScalerContextCache}, thus
+ * opening many resamplers with the same formats does not initialize a new scaler
+ * each time.
+ * <p/>
+ * Large pictures can be converted by several threads, see {@link #setThreadCount(int)}.
+ * In this case the output picture is split into horizontal bands, each band is
+ * converted with its own scaler context on a shared pool of worker threads.
+ *
+ * @author Alex Andres
+ */
 public class PictureResampler {
 
+	/** The minimum height of an output band in rows. */
+	private static final int MIN_BAND_HEIGHT = 64;
+
+	/** The maximum number of picture planes. */
+	private static final int MAX_PLANES = 4;
+
+	/** Worker threads shared by all resamplers. */
+	private static ExecutorService workers;
+
 	/** The re-sample context */
 	private SwsContext convertContext;
 
+	/** The cache key of the re-sample context */
+	private ScalerContextCache.Key contextKey;
+
+	/** The scaler flags */
+	private Set<ScalerFlag> scalerFlags = ScalerProfile.BALANCED.getFlags();
+
+	/** The FFmpeg scaler flags of the opened context */
+	private int flags;
+
+	/** Reusable pointer to the input picture planes */
+	private final PlanePointer srcPlanes = new PlanePointer();
+
+	/** Reusable pointer to the output picture planes */
+	private final PlanePointer dstPlanes = new PlanePointer();
+
 	/** The input picture format */
 	private PictureFormat srcFormat;
 
 	/** The output picture format */
 	private PictureFormat dstFormat;
 
+	/** The number of threads used for conversion */
+	private int threadCount = 1;
+
+	/** The output bands, if converted by several threads */
+	private Band[] bands;
 
+	/** Pending band conversions */
+	private Future<?>[] bandResults;
+
+
+	/**
+	 * Initializes the {@code PictureResampler} with specified input and output picture
+	 * formats. Opening an already opened resampler with the same formats has no effect.
+	 *
+	 * @param srcFormat the input picture format.
+	 * @param dstFormat the output picture format.
+	 *
+	 * @throws JavaAVException if resampler cannot be opened.
+	 */
 	public void open(PictureFormat srcFormat, PictureFormat dstFormat) throws JavaAVException {
 		if (srcFormat == null || dstFormat == null)
 			throw new JavaAVException("Invalid video format provided: from " + srcFormat + " to " + dstFormat);
@@ -49,28 +116,429 @@ public class PictureResampler {
 		if (srcFormat.equals(dstFormat))
 			return;
 
-		convertContext = sws_getCachedContext(convertContext,
-				srcFormat.getWidth(), srcFormat.getHeight(), srcFormat.getFormat().value(),
-				dstFormat.getWidth(), dstFormat.getHeight(), dstFormat.getFormat().value(),
-				SWS_BILINEAR, null, null, (double[]) null);
+		int flags = 0;
+
+		for (ScalerFlag flag : scalerFlags)
+			flags |= flag.value();
+
+		if (srcFormat.equals(this.srcFormat) && dstFormat.equals(this.dstFormat) && flags == this.flags)
+			return;
+
+		close();
+
+		this.flags = flags;
+
+		// keep copies, since picture formats are mutable
+		PictureFormat src = new PictureFormat(srcFormat.getWidth(), srcFormat.getHeight(), srcFormat.getFormat());
+		PictureFormat dst = new PictureFormat(dstFormat.getWidth(), dstFormat.getHeight(), dstFormat.getFormat());
+
+		int threads = threadCount > 0 ? threadCount : Runtime.getRuntime().availableProcessors();
+		threads = Math.min(threads, Math.min(src.getHeight(), dst.getHeight()) / MIN_BAND_HEIGHT);
+
+		if (threads > 1 && !canSplit(src, dst, flags))
+			threads = 1;
+
+		if (threads > 1) {
+			createBands(src, dst, threads);
+		}
+		else {
+			contextKey = new ScalerContextCache.Key(src, dst, flags);
+			convertContext = ScalerContextCache.acquire(contextKey);
+		}
+
+		this.srcFormat = src;
+		this.dstFormat = dst;
+	}
+
+	/**
+	 * Set the scaler flags that select the scaling algorithm and conversion accuracy.
+	 * Takes effect when the resampler is opened. The default is {@link ScalerProfile#BALANCED}.
+	 *
+	 * @param flags the scaler flags.
+	 */
+	public void setFlags(ScalerFlag... flags) {
+		if (flags == null || flags.length == 0)
+			return;
+
+		scalerFlags = Collections.unmodifiableSet(EnumSet.copyOf(Arrays.asList(flags)));
+	}
+
+	/**
+	 * Set the scaler flags of the specified profile. Takes effect when the resampler
+	 * is opened.
+	 *
+	 * @param profile the scaler profile.
+	 */
+	public void setProfile(ScalerProfile profile) {
+		if (profile == null)
+			return;
+
+		scalerFlags = profile.getFlags();
+	}
 
-		if (convertContext == null)
-			throw new JavaAVException("Could not initialize the image conversion context.");
+	/**
+	 * Get the scaler flags that select the scaling algorithm and conversion accuracy.
+	 *
+	 * @return the scaler flags.
+	 */
+	public Set<ScalerFlag> getFlags() {
+		return scalerFlags;
+	}
+
+	/**
+	 * Set the number of threads used to convert one picture. With more than one thread
+	 * the output picture is split into horizontal bands that are converted in parallel.
+	 * Bands are at least 64 rows high, thus small pictures are converted by fewer threads.
+	 * If the picture is scaled, each band is scaled separately, which may cause slight
+	 * differences at band borders compared to a single-threaded conversion. Conversions
+	 * without scaling give the same output as one thread; those that would interpolate
+	 * chroma rows across band borders are converted by one thread. Takes effect when the
+	 * resampler is opened.
+	 *
+	 * @param threadCount the number of threads, 0 to use all available processors.
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = Math.max(threadCount, 0);
+	}
+
+	/**
+	 * Get the number of threads used to convert one picture.
+	 *
+	 * @return the number of threads, 0 for all available processors.
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	/**
+	 * Get the number of bands the output picture is split into.
+	 *
+	 * @return the number of bands, 1 if converted by a single thread.
+	 */
+	int getBandCount() {
+		return bands == null ? 1 : bands.length;
+	}
 
-		this.srcFormat = srcFormat;
-		this.dstFormat = dstFormat;
+	/**
+	 * Free all idle scaler contexts that are shared between resamplers. Contexts of
+	 * opened resamplers are not affected.
+	 */
+	public static void clearContextCache() {
+		ScalerContextCache.clear();
 	}
 
 	void resample(AVPicture srcPicture, AVPicture dstPicture) throws JavaAVException {
-		sws_scale(convertContext, new PointerPointer(srcPicture), srcPicture.linesize(), 0,
-				srcFormat.getHeight(), new PointerPointer(dstPicture), dstPicture.linesize());
+		if (bands == null) {
+			sws_scale(convertContext, srcPlanes.wrap(srcPicture), srcPicture.linesize(), 0,
+					srcFormat.getHeight(), dstPlanes.wrap(dstPicture), dstPicture.linesize());
+			return;
+		}
+
+		IntPointer srcLineSizes = srcPicture.linesize();
+		IntPointer dstLineSizes = dstPicture.linesize();
+
+		for (Band band : bands)
+			band.setPictures(srcPicture, srcLineSizes, dstPicture, dstLineSizes);
+
+		ExecutorService executor = getWorkers();
+
+		for (int i = 1; i < bands.length; i++)
+			bandResults[i] = executor.submit(bands[i]);
+
+		// the calling thread converts the first band
+		bands[0].run();
+
+		try {
+			for (int i = 1; i < bands.length; i++) {
+				bandResults[i].get();
+				bandResults[i] = null;
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new JavaAVException("Interrupted while converting picture.");
+		}
+		catch (ExecutionException e) {
+			throw new JavaAVException("Could not convert picture: " + e.getCause());
+		}
 	}
 
+	/**
+	 * Close this resampler. The scaler context is returned to the cache, thus it can be
+	 * used by other resamplers.
+	 */
 	public void close() {
 		if (convertContext != null) {
-			sws_freeContext(convertContext);
+			ScalerContextCache.release(contextKey, convertContext);
 			convertContext = null;
+			contextKey = null;
 		}
+
+		if (bands != null) {
+			for (Band band : bands)
+				band.close();
+
+			bands = null;
+			bandResults = null;
+		}
+
+		srcFormat = null;
+		dstFormat = null;
+	}
+
+
+	/**
+	 * Split the output picture into the specified number of horizontal bands. Band
+	 * borders are aligned to the vertical chroma subsampling of both formats. If the
+	 * picture is not scaled vertically, input and output bands cover the same rows,
+	 * so that the output equals a single-threaded conversion.
+	 *
+	 * @param srcFormat the input picture format.
+	 * @param dstFormat the output picture format.
+	 * @param count     the number of bands.
+	 *
+	 * @throws JavaAVException if a band scaler context could not be created.
+	 */
+	private void createBands(PictureFormat srcFormat, PictureFormat dstFormat, int count) throws JavaAVException {
+		int srcHeight = srcFormat.getHeight();
+		int dstHeight = dstFormat.getHeight();
+		int srcShift = av_pix_fmt_desc_get(srcFormat.getFormat().value()).log2_chroma_h();
+		int dstShift = av_pix_fmt_desc_get(dstFormat.getFormat().value()).log2_chroma_h();
+		int srcAlign = 1 << srcShift;
+		int dstAlign = 1 << dstShift;
+
+		bands = new Band[count];
+		bandResults = new Future<?>[count];
+
+		int srcY = 0;
+		int dstY = 0;
+
+		for (int i = 0; i < count; i++) {
+			int dstEnd = dstHeight;
+			int srcEnd = srcHeight;
+
+			if (i < count - 1 && srcHeight == dstHeight) {
+				// chroma subsampling is a power of two, the larger one satisfies both
+				int align = Math.max(srcAlign, dstAlign);
+
+				dstEnd = (int) ((long) dstHeight * (i + 1) / count) / align * align;
+				srcEnd = dstEnd;
+			}
+			else if (i < count - 1) {
+				dstEnd = (int) ((long) dstHeight * (i + 1) / count) / dstAlign * dstAlign;
+				srcEnd = (int) ((long) dstEnd * srcHeight / dstHeight) / srcAlign * srcAlign;
+			}
+
+			ScalerContextCache.Key key = new ScalerContextCache.Key(
+					srcFormat.getWidth(), srcEnd - srcY, srcFormat.getFormat().value(),
+					dstFormat.getWidth(), dstEnd - dstY, dstFormat.getFormat().value(), flags);
+
+			try {
+				bands[i] = new Band(key, ScalerContextCache.acquire(key), srcY, srcEnd - srcY, srcShift, dstY, dstShift);
+			}
+			catch (JavaAVException e) {
+				for (int j = 0; j < i; j++)
+					bands[j].close();
+
+				bands = null;
+				bandResults = null;
+
+				throw e;
+			}
+
+			srcY = srcEnd;
+			dstY = dstEnd;
+		}
+	}
+
+	/**
+	 * Check whether a conversion can be split into bands. Conversions without vertical
+	 * scaling are only split if the bands give the same output as one thread. This is
+	 * the case if chroma rows are not interpolated, thus the picture height must be a
+	 * multiple of the vertical chroma subsampling and the flags must not select the
+	 * generic scaler, which filters chroma rows across band borders.
+	 *
+	 * @param srcFormat the input picture format.
+	 * @param dstFormat the output picture format.
+	 * @param flags     the FFmpeg scaler flags.
+	 *
+	 * @return true if the picture can be converted in bands.
+	 */
+	private static boolean canSplit(PictureFormat srcFormat, PictureFormat dstFormat, int flags) {
+		if (srcFormat.getHeight() != dstFormat.getHeight())
+			return true;
+
+		int srcShift = av_pix_fmt_desc_get(srcFormat.getFormat().value()).log2_chroma_h();
+		int dstShift = av_pix_fmt_desc_get(dstFormat.getFormat().value()).log2_chroma_h();
+
+		if (srcShift == 0 && dstShift == 0)
+			return true;
+
+		int genericFlags = ScalerFlag.ACCURATE_RND.value() | ScalerFlag.FULL_CHROMA_INT.value();
+
+		if ((flags & genericFlags) != 0)
+			return false;
+
+		return srcFormat.getHeight() % (1 << Math.max(srcShift, dstShift)) == 0;
+	}
+
+	/**
+	 * Get the worker threads that convert picture bands. The threads are created on
+	 * first use.
+	 *
+	 * @return the shared worker threads.
+	 */
+	private static synchronized ExecutorService getWorkers() {
+		if (workers == null) {
+			final AtomicInteger counter = new AtomicInteger();
+
+			workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "JavaAV Picture Resampler " + counter.incrementAndGet());
+					thread.setDaemon(true);
+
+					return thread;
+				}
+			});
+		}
+
+		return workers;
+	}
+
+
+
+	/**
+	 * One horizontal band of the output picture that is converted with its own scaler
+	 * context.
+	 */
+	private static class Band implements Runnable {
+
+		/** The cache key of the scaler context */
+		private final ScalerContextCache.Key key;
+
+		/** The scaler context of this band */
+		private SwsContext context;
+
+		/** The first input row */
+		private final int srcY;
+
+		/** The number of input rows */
+		private final int srcHeight;
+
+		/** The vertical chroma subsampling of the input */
+		private final int srcShift;
+
+		/** The first output row */
+		private final int dstY;
+
+		/** The vertical chroma subsampling of the output */
+		private final int dstShift;
+
+		/** Pointers to the first input row of each plane */
+		private final PointerPointer srcPlanes = new PointerPointer(MAX_PLANES);
+
+		/** Pointers to the first output row of each plane */
+		private final PointerPointer dstPlanes = new PointerPointer(MAX_PLANES);
+
+		/** Reusable pointer to plane rows */
+		private final RowPointer row = new RowPointer();
+
+		/** The input line sizes */
+		private IntPointer srcLineSizes;
+
+		/** The output line sizes */
+		private IntPointer dstLineSizes;
+
+
+		Band(ScalerContextCache.Key key, SwsContext context, int srcY, int srcHeight, int srcShift, int dstY, int dstShift) {
+			this.key = key;
+			this.context = context;
+			this.srcY = srcY;
+			this.srcHeight = srcHeight;
+			this.srcShift = srcShift;
+			this.dstY = dstY;
+			this.dstShift = dstShift;
+		}
+
+		void setPictures(AVPicture srcPicture, IntPointer srcLineSizes, AVPicture dstPicture, IntPointer dstLineSizes) {
+			this.srcLineSizes = srcLineSizes;
+			this.dstLineSizes = dstLineSizes;
+
+			setRows(srcPlanes, srcPicture, srcLineSizes, srcY, srcShift);
+			setRows(dstPlanes, dstPicture, dstLineSizes, dstY, dstShift);
+		}
+
+		@Override
+		public void run() {
+			sws_scale(context, srcPlanes, srcLineSizes, 0, srcHeight, dstPlanes, dstLineSizes);
+		}
+
+		void close() {
+			if (context != null) {
+				ScalerContextCache.release(key, context);
+				context = null;
+			}
+		}
+
+		private void setRows(PointerPointer planes, AVPicture picture, IntPointer lineSizes, int y, int chromaShift) {
+			for (int i = 0; i < MAX_PLANES; i++) {
+				BytePointer data = picture.data(i);
+				long address = data != null ? data.address() : 0;
+
+				if (address != 0) {
+					// the chroma planes are subsampled vertically
+					int planeY = (i == 1 || i == 2) ? y >> chromaShift : y;
+					address += (long) planeY * lineSizes.get(i);
+				}
+
+				planes.put(i, row.at(address));
+			}
+		}
+
+	}
+
+
+	/**
+	 * Reusable pointer to a row of a picture plane.
+	 */
+	private static class RowPointer extends BytePointer {
+
+		RowPointer() {
+			super((Pointer) null);
+		}
+
+		RowPointer at(long rowAddress) {
+			address = rowAddress;
+			position = 0;
+
+			return this;
+		}
+
+	}
+
+
+	/**
+	 * Reusable view on the plane pointers of a picture. The plane pointers are the first
+	 * member of {@code AVPicture} and {@code AVFrame}, thus the view only has to point
+	 * to the picture. This avoids creating a new pointer for each converted picture.
+	 */
+	private static class PlanePointer extends PointerPointer<BytePointer> {
+
+		PlanePointer() {
+			super((Pointer) null);
+		}
+
+		PlanePointer wrap(Pointer picture) {
+			address = picture.address();
+			position = 0;
+			limit = 0;
+			capacity = 0;
+
+			return this;
+		}
+
 	}
 
 }
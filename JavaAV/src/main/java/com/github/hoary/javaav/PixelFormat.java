@@ -249,6 +249,31 @@ public enum PixelFormat {
 
 	private final int id;
 
+	/** The lowest FFmpeg id, the offset of the lookup table. */
+	private static final int ID_OFFSET;
+
+	/** Pixel formats indexed by FFmpeg id minus the offset, see {@link #byId(int)}. */
+	private static final PixelFormat[] ID_TABLE;
+
+	static {
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+
+		for (PixelFormat value : values()) {
+			min = Math.min(min, value.id);
+			max = Math.max(max, value.id);
+		}
+
+		ID_OFFSET = min;
+		ID_TABLE = new PixelFormat[max - min + 1];
+
+		// the first declared value wins for aliased ids
+		for (PixelFormat value : values()) {
+			if (ID_TABLE[value.id - ID_OFFSET] == null)
+				ID_TABLE[value.id - ID_OFFSET] = value;
+		}
+	}
+
 
 	private PixelFormat(int id) {
 		this.id = id;
@@ -259,12 +284,12 @@ public enum PixelFormat {
 	}
 
 	public static PixelFormat byId(int id) {
-		for (PixelFormat value : values()) {
-			if (value.id == id)
-				return value;
-		}
+		int index = id - ID_OFFSET;
+
+		if (index < 0 || index >= ID_TABLE.length)
+			return null;
 
-		return null;
+		return ID_TABLE[index];
 	}
 	
 }
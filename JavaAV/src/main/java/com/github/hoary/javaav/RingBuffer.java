@@ -19,150 +19,266 @@
  * along with JavaAV. If not, see <http://www.gnu.org/licenses/>.
  */
 
+
 package com.github.hoary.javaav;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@code RingBuffer} is a lock-free single-producer/single-consumer ring buffer with
+ * one direct memory buffer per audio plane. One thread may write into the buffer while
+ * another thread reads from it, e.g. a capture and a playback thread, without locking
+ * and without creating garbage. Each plane is tracked separately, thus planes may be
+ * written and read independently.
+ * <p/>
+ * Writing methods must only be called by the producer thread and reading methods,
+ * including {@link #clear()}, only by the consumer thread.
+ *
+ * @author Alex Andres
+ */
 public class RingBuffer {
 
-	/** Internal data storage. */
-	private ByteBuffer[] buffer;
+	/** The producer view of the internal data storage. */
+	private final ByteBuffer[] writeBuffer;
 
-	/** Position from where to start reading from the buffer. */
-	private int[] readPointer;
+	/** The consumer view of the internal data storage. */
+	private final ByteBuffer[] readBuffer;
 
-	/** Position from where to start writing into the buffer. */
-	private int[] writePointer;
+	/** The total number of bytes written to each plane. Only modified by the producer. */
+	private final AtomicLongArray written;
 
-	/** The number of bytes written to the buffer. */
-	private int[] bytesToWrite;
+	/** The total number of bytes read from each plane. Only modified by the consumer. */
+	private final AtomicLongArray read;
 
-	/** The number of bytes read from the buffer. */
-	private int[] bytesToRead;
+	/** The capacity of each plane in bytes. */
+	private final int capacity;
 
-	/** The number of channels. */
-	private int planes;
+	/** The number of planes. */
+	private final int planes;
 
 
 	/**
-	 * Creates a RingBuffer with a default buffer size of 1024 bytes.
+	 * Creates a RingBuffer with a default buffer size of 1024 bytes per plane.
+	 *
+	 * @param planes the number of planes.
 	 */
 	public RingBuffer(int planes) {
 		this(1024, planes);
 	}
 
 	/**
-	 * Creates a RingBuffer with the specified buffer size.
+	 * Creates a RingBuffer with the specified buffer size per plane.
 	 *
-	 * @param capacity buffer size in bytes
+	 * @param capacity buffer size of one plane in bytes.
+	 * @param planes   the number of planes.
 	 */
 	public RingBuffer(int capacity, int planes) {
 		if (capacity < 2) {
 			throw new IllegalArgumentException("Buffer should have at least the capacity of 2 bytes.");
 		}
+		if (planes < 1) {
+			throw new IllegalArgumentException("Buffer should have at least one plane.");
+		}
 
+		this.capacity = capacity;
 		this.planes = planes;
-		this.buffer = new ByteBuffer[planes];
-		this.readPointer = new int[planes];
-		this.writePointer = new int[planes];
-		this.bytesToRead = new int[planes];
-		this.bytesToWrite = new int[planes];
+		this.writeBuffer = new ByteBuffer[planes];
+		this.readBuffer = new ByteBuffer[planes];
+		this.written = new AtomicLongArray(planes);
+		this.read = new AtomicLongArray(planes);
 
 		for (int i = 0; i < planes; i++) {
-			buffer[i] = ByteBuffer.allocateDirect(capacity);
+			writeBuffer[i] = ByteBuffer.allocateDirect(capacity);
+			readBuffer[i] = writeBuffer[i].duplicate();
 		}
+	}
+
+	/**
+	 * Get the capacity of one plane in bytes.
+	 *
+	 * @return the plane capacity.
+	 */
+	public int capacity() {
+		return capacity;
+	}
 
-		clear();
+	/**
+	 * Get the number of planes.
+	 *
+	 * @return the number of planes.
+	 */
+	public int getPlaneCount() {
+		return planes;
 	}
 
 	/**
-	 * Resets the read and write pointers. The internal buffer remains unaffected.
+	 * Discards all readable data of all planes. Must only be called by the consumer.
 	 */
-	public synchronized void clear() {
+	public void clear() {
 		for (int i = 0; i < planes; i++) {
-			readPointer[i] = writePointer[i] = 0;
-			bytesToRead[i] = 0;
-			bytesToWrite[i] = buffer[i].capacity();
+			read.lazySet(i, written.get(i));
 		}
 	}
 
 	/**
-	 * Return the readable amount of bytes in buffer. Note: It is not
-	 * necessarily valid when data is written to the buffer or read from the
-	 * buffer. Another thread might have filled the buffer or emptied it in the
-	 * mean time.
-	 * 
-	 * @return currently available bytes to read
+	 * Return the readable amount of bytes in the first plane, see {@link #available(int)}.
+	 *
+	 * @return currently available bytes to read.
 	 */
 	public int available() {
-		return bytesToRead[0];
+		return available(0);
 	}
 
 	/**
-	 * Write as much data as possible to this buffer.
+	 * Return the readable amount of bytes in the specified plane. The consumer can read
+	 * at least this amount of bytes. The producer may add data in the mean time.
+	 *
+	 * @param plane the audio plane.
+	 *
+	 * @return currently available bytes to read.
+	 */
+	public int available(int plane) {
+		return (int) (written.get(plane) - read.get(plane));
+	}
+
+	/**
+	 * Return the writable amount of bytes in the specified plane. The producer can write
+	 * at least this amount of bytes. The consumer may free space in the mean time.
+	 *
+	 * @param plane the audio plane.
 	 *
-	 * @param plane  the audio channel.
+	 * @return currently free bytes to write.
+	 */
+	public int remaining(int plane) {
+		return capacity - available(plane);
+	}
+
+	/**
+	 * Write as much data as possible to this buffer. The position of the provided
+	 * buffer is advanced by the amount of data written.
+	 *
+	 * @param plane  the audio plane.
 	 * @param buffer data to be written.
 	 *
-	 * @return amount of data actually written
+	 * @return amount of data actually written.
 	 */
-	public synchronized int write(int plane, ByteBuffer buffer) {
-		byte[] data = new byte[buffer.limit()];
-		buffer.get(data);
+	public int write(int plane, ByteBuffer buffer) {
+		long writeCount = written.get(plane);
+		int free = capacity - (int) (writeCount - read.get(plane));
+		int length = Math.min(free, buffer.remaining());
+
+		if (length == 0)
+			return 0;
 
-		return write(plane, data);
+		ByteBuffer target = writeBuffer[plane];
+		int offset = (int) (writeCount % capacity);
+		int partLength = Math.min(length, capacity - offset);
+		int limit = buffer.limit();
+
+		target.limit(offset + partLength).position(offset);
+		buffer.limit(buffer.position() + partLength);
+		target.put(buffer);
+
+		if (partLength < length) {
+			target.limit(length - partLength).position(0);
+			buffer.limit(buffer.position() + length - partLength);
+			target.put(buffer);
+		}
+
+		buffer.limit(limit);
+
+		// publish the data to the consumer
+		written.lazySet(plane, writeCount + length);
+
+		return length;
 	}
 
 	/**
 	 * Write as much data as possible to this buffer.
 	 *
-	 * @param plane the audio channel.
+	 * @param plane the audio plane.
 	 * @param data  data to be written.
 	 *
-	 * @return amount of data actually written
+	 * @return amount of data actually written.
 	 */
-	public synchronized int write(int plane, byte data[]) {
+	public int write(int plane, byte data[]) {
 		return write(plane, data, 0, data.length);
 	}
 
 	/**
 	 * Write as much data as possible to this buffer.
 	 *
-	 * @param plane  the audio channel.
-	 * @param data   array holding data to be written
-	 * @param offset offset of data in array
-	 * @param length amount of data to write, starting from off.
+	 * @param plane  the audio plane.
+	 * @param data   array holding data to be written.
+	 * @param offset offset of data in array.
+	 * @param length amount of data to write, starting from offset.
 	 *
-	 * @return amount of data actually written
+	 * @return amount of data actually written.
 	 */
-	public synchronized int write(int plane, byte data[], int offset, int length) {
+	public int write(int plane, byte data[], int offset, int length) {
 		if (offset < 0 || length < 0 || length > data.length - offset) {
 			throw new IndexOutOfBoundsException();
 		}
 
-		if (bytesToWrite[plane] == 0)
+		long writeCount = written.get(plane);
+		int free = capacity - (int) (writeCount - read.get(plane));
+
+		if (free < length)
+			length = free;
+
+		if (length == 0)
 			return 0;
 
-		if (bytesToWrite[plane] < length)
-			length = bytesToWrite[plane];
+		ByteBuffer target = writeBuffer[plane];
+		int position = (int) (writeCount % capacity);
+		int partLength = Math.min(length, capacity - position);
 
-		buffer[plane].position(writePointer[plane]);
-		int partLength = buffer[plane].capacity() - writePointer[plane];
+		target.clear().position(position);
+		target.put(data, offset, partLength);
 
-		if (partLength > length) {
-			buffer[plane].put(data, offset, length);
-			writePointer[plane] += length;
+		if (partLength < length) {
+			target.position(0);
+			target.put(data, offset + partLength, length - partLength);
 		}
-		else {
-			buffer[plane].put(data, offset, partLength);
-			buffer[plane].position(0);
-			buffer[plane].put(data, offset + partLength, length - partLength);
-			writePointer[plane] = length - partLength;
+
+		// publish the data to the consumer
+		written.lazySet(plane, writeCount + length);
+
+		return length;
+	}
+
+	/**
+	 * Read as much data as possible from this buffer. The position of the provided
+	 * buffer is advanced by the amount of data read.
+	 *
+	 * @param plane  the audio plane.
+	 * @param buffer where to store the data.
+	 *
+	 * @return number of bytes read.
+	 */
+	public int read(int plane, ByteBuffer buffer) {
+		long readCount = read.get(plane);
+		int length = Math.min((int) (written.get(plane) - readCount), buffer.remaining());
+
+		if (length == 0)
+			return 0;
+
+		ByteBuffer source = readBuffer[plane];
+		int offset = (int) (readCount % capacity);
+		int partLength = Math.min(length, capacity - offset);
+
+		source.limit(offset + partLength).position(offset);
+		buffer.put(source);
+
+		if (partLength < length) {
+			source.limit(length - partLength).position(0);
+			buffer.put(source);
 		}
 
-		bytesToRead[plane] += length;
-		bytesToWrite[plane] -= length;
+		// release the space to the producer
+		read.lazySet(plane, readCount + length);
 
 		return length;
 	}
@@ -170,53 +286,56 @@ public class RingBuffer {
 	/**
 	 * Read as much data as possible from this buffer.
 	 *
-	 * @param plane the audio channel.
+	 * @param plane the audio plane.
 	 * @param data  where to store the data.
 	 *
 	 * @return number of bytes read.
 	 *
 	 * @throws IOException if data array could not be filled.
 	 */
-	public synchronized int read(int plane, byte data[]) throws IOException {
+	public int read(int plane, byte data[]) throws IOException {
 		return read(plane, data, 0, data.length);
 	}
 
 	/**
 	 * Read as much data as possible from this buffer.
 	 *
-	 * @param plane  the audio channel.
+	 * @param plane  the audio plane.
 	 * @param data   where to store the read data.
 	 * @param offset offset of data in array.
 	 * @param length amount of data to read.
 	 *
 	 * @return Amount of data read.
+	 *
+	 * @throws IOException if data array could not be filled.
 	 */
-	public synchronized int read(int plane, byte data[], int offset, int length) throws IOException {
+	public int read(int plane, byte data[], int offset, int length) throws IOException {
 		if (offset < 0 || length < 0 || length > data.length - offset)
 			throw new IndexOutOfBoundsException();
 
-		if (bytesToRead[plane] == 0)
+		long readCount = read.get(plane);
+		int readable = (int) (written.get(plane) - readCount);
+
+		if (readable < length)
+			length = readable;
+
+		if (length == 0)
 			return 0;
 
-		if (bytesToRead[plane] < length)
-			length = bytesToRead[plane];
+		ByteBuffer source = readBuffer[plane];
+		int position = (int) (readCount % capacity);
+		int partLength = Math.min(length, capacity - position);
 
-		buffer[plane].position(readPointer[plane]);
-		int partLength = buffer[plane].capacity() - readPointer[plane];
+		source.clear().position(position);
+		source.get(data, offset, partLength);
 
-		if (partLength > length) {
-			buffer[plane].get(data, offset, length);
-			readPointer[plane] += length;
-		}
-		else {
-			buffer[plane].get(data, offset, partLength);
-			buffer[plane].position(0);
-			buffer[plane].get(data, partLength, length - partLength);
-			readPointer[plane] = length - partLength;
+		if (partLength < length) {
+			source.position(0);
+			source.get(data, offset + partLength, length - partLength);
 		}
 
-		bytesToRead[plane] -= length;
-		bytesToWrite[plane] += length;
+		// release the space to the producer
+		read.lazySet(plane, readCount + length);
 
 		return length;
 	}
@@ -52,6 +52,31 @@ public enum SampleFormat {
 
 	private final int id;
 
+	/** The lowest FFmpeg id, the offset of the lookup table. */
+	private static final int ID_OFFSET;
+
+	/** Sample formats indexed by FFmpeg id minus the offset, see {@link #byId(int)}. */
+	private static final SampleFormat[] ID_TABLE;
+
+	static {
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+
+		for (SampleFormat value : values()) {
+			min = Math.min(min, value.id);
+			max = Math.max(max, value.id);
+		}
+
+		ID_OFFSET = min;
+		ID_TABLE = new SampleFormat[max - min + 1];
+
+		// the first declared value wins for aliased ids
+		for (SampleFormat value : values()) {
+			if (ID_TABLE[value.id - ID_OFFSET] == null)
+				ID_TABLE[value.id - ID_OFFSET] = value;
+		}
+	}
+
 
 	private SampleFormat(int id) {
 		this.id = id;
@@ -62,12 +87,12 @@ public enum SampleFormat {
 	}
 
 	public static SampleFormat byId(int id) {
-		for (SampleFormat value : values()) {
-			if (value.id == id)
-				return value;
-		}
+		int index = id - ID_OFFSET;
+
+		if (index < 0 || index >= ID_TABLE.length)
+			return null;
 
-		return null;
+		return ID_TABLE[index];
 	}
 	
 }
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2013 Alex Andres
+ *
+ * This file is part of JavaAV.
+ *
+ * JavaAV is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version (subject to the "Classpath"
+ * exception as provided in the LICENSE file that accompanied
+ * this code).
+ *
+ * JavaAV is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaAV. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.github.hoary.javaav;
+
+import org.bytedeco.javacpp.swscale.SwsContext;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.bytedeco.javacpp.swscale.sws_freeContext;
+import static org.bytedeco.javacpp.swscale.sws_getContext;
+
+/**
+ * {@code ScalerContextCache} shares scaler contexts between {@code PictureResampler}s.
+ * Contexts are keyed by input format, output format and scaler flags. A scaler
+ * context can only be used by one thread at a time, thus a context is taken from the
+ * cache for exclusive use and returned afterwards. Many streams with the same geometry
+ * this way share the setup cost of the scaler.
+ * <p/>
+ * The number of idle contexts is bounded per key and in total. If the total limit
+ * is exceeded, the contexts of the least recently used key are freed first.
+ *
+ * @author Alex Andres
+ */
+final class ScalerContextCache {
+
+	/** The maximum number of idle contexts kept per key. */
+	private static final int MAX_IDLE_CONTEXTS = 8;
+
+	/** The maximum number of idle contexts kept for all keys. */
+	private static final int MAX_TOTAL_IDLE_CONTEXTS = 32;
+
+	/** Idle contexts mapped by format and flags, in least recently used order. */
+	private static final Map<Key, ArrayDeque<SwsContext>> idleContexts = new LinkedHashMap<Key, ArrayDeque<SwsContext>>(16, 0.75f, true);
+
+	/** The number of idle contexts of all keys. */
+	private static int idleCount = 0;
+
+
+	private ScalerContextCache() {
+
+	}
+
+	/**
+	 * Get a scaler context for exclusive use. Returns an idle context if available,
+	 * otherwise a new context is created.
+	 *
+	 * @param key the formats and flags of the context.
+	 *
+	 * @return a scaler context.
+	 *
+	 * @throws JavaAVException if the context could not be created.
+	 */
+	static SwsContext acquire(Key key) throws JavaAVException {
+		synchronized (idleContexts) {
+			ArrayDeque<SwsContext> contexts = idleContexts.get(key);
+
+			if (contexts != null) {
+				SwsContext context = contexts.poll();
+
+				if (contexts.isEmpty())
+					idleContexts.remove(key);
+
+				idleCount--;
+
+				return context;
+			}
+		}
+
+		SwsContext context = sws_getContext(key.srcWidth, key.srcHeight, key.srcFormat,
+				key.dstWidth, key.dstHeight, key.dstFormat, key.flags, null, null, (double[]) null);
+
+		if (context == null || context.isNull())
+			throw new JavaAVException("Could not initialize the image conversion context.");
+
+		return context;
+	}
+
+	/**
+	 * Return a context to the cache. The context is freed if enough idle contexts
+	 * with the same key are available. If the cache is full, idle contexts of the
+	 * least recently used keys are freed.
+	 *
+	 * @param key     the formats and flags of the context.
+	 * @param context the context to return.
+	 */
+	static void release(Key key, SwsContext context) {
+		List<SwsContext> evicted = new ArrayList<SwsContext>();
+
+		synchronized (idleContexts) {
+			ArrayDeque<SwsContext> contexts = idleContexts.get(key);
+
+			if (contexts == null) {
+				contexts = new ArrayDeque<SwsContext>();
+				idleContexts.put(key, contexts);
+			}
+
+			if (contexts.size() < MAX_IDLE_CONTEXTS) {
+				contexts.add(context);
+				idleCount++;
+			}
+			else {
+				evicted.add(context);
+			}
+
+			Iterator<ArrayDeque<SwsContext>> iter = idleContexts.values().iterator();
+
+			while (idleCount > MAX_TOTAL_IDLE_CONTEXTS && iter.hasNext()) {
+				ArrayDeque<SwsContext> oldest = iter.next();
+
+				while (idleCount > MAX_TOTAL_IDLE_CONTEXTS && !oldest.isEmpty()) {
+					evicted.add(oldest.poll());
+					idleCount--;
+				}
+
+				if (oldest.isEmpty())
+					iter.remove();
+			}
+		}
+
+		for (SwsContext evictedContext : evicted)
+			sws_freeContext(evictedContext);
+	}
+
+	/**
+	 * Free all idle contexts. Contexts in use are freed when they are returned.
+	 */
+	static void clear() {
+		List<SwsContext> evicted = new ArrayList<SwsContext>();
+
+		synchronized (idleContexts) {
+			for (ArrayDeque<SwsContext> contexts : idleContexts.values())
+				evicted.addAll(contexts);
+
+			idleContexts.clear();
+			idleCount = 0;
+		}
+
+		for (SwsContext context : evicted)
+			sws_freeContext(context);
+	}
+
+	/**
+	 * Get the number of idle contexts of all keys.
+	 *
+	 * @return the number of idle contexts.
+	 */
+	static int getIdleCount() {
+		synchronized (idleContexts) {
+			return idleCount;
+		}
+	}
+
+
+	/**
+	 * Identifies scaler contexts with equal formats and flags.
+	 */
+	static class Key {
+
+		private final int srcWidth;
+
+		private final int srcHeight;
+
+		private final int srcFormat;
+
+		private final int dstWidth;
+
+		private final int dstHeight;
+
+		private final int dstFormat;
+
+		private final int flags;
+
+
+		Key(PictureFormat srcFormat, PictureFormat dstFormat, int flags) {
+			this(srcFormat.getWidth(), srcFormat.getHeight(), srcFormat.getFormat().value(),
+					dstFormat.getWidth(), dstFormat.getHeight(), dstFormat.getFormat().value(), flags);
+		}
+
+		Key(int srcWidth, int srcHeight, int srcFormat, int dstWidth, int dstHeight, int dstFormat, int flags) {
+			this.srcWidth = srcWidth;
+			this.srcHeight = srcHeight;
+			this.srcFormat = srcFormat;
+			this.dstWidth = dstWidth;
+			this.dstHeight = dstHeight;
+			this.dstFormat = dstFormat;
+			this.flags = flags;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+
+			Key other = (Key) obj;
+
+			return srcWidth == other.srcWidth && srcHeight == other.srcHeight &&
+					srcFormat == other.srcFormat && dstWidth == other.dstWidth &&
+					dstHeight == other.dstHeight && dstFormat == other.dstFormat &&
+					flags == other.flags;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = srcWidth;
+			result = 31 * result + srcHeight;
+			result = 31 * result + srcFormat;
+			result = 31 * result + dstWidth;
+			result = 31 * result + dstHeight;
+			result = 31 * result + dstFormat;
+			result = 31 * result + flags;
+
+			return result;
+		}
+
+	}
+
+}
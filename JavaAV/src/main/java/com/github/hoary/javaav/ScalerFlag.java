@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2013 Alex Andres
+ *
+ * This file is part of JavaAV.
+ *
+ * JavaAV is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version (subject to the "Classpath"
+ * exception as provided in the LICENSE file that accompanied
+ * this code).
+ *
+ * JavaAV is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaAV. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.github.hoary.javaav;
+
+import org.bytedeco.javacpp.swscale;
+
+/**
+ * Enumeration of scaler flags used to convert pictures. The flags select the scaling
+ * algorithm and conversion accuracy. Only one scaling algorithm should be selected.
+ *
+ * @author Alex Andres
+ */
+public enum ScalerFlag {
+
+	/** Fast bilinear scaling, the cheapest algorithm apart from point sampling. */
+	FAST_BILINEAR       (swscale.SWS_FAST_BILINEAR),
+
+	/** Bilinear scaling. */
+	BILINEAR            (swscale.SWS_BILINEAR),
+
+	/** Bicubic scaling. */
+	BICUBIC             (swscale.SWS_BICUBIC),
+
+	/** Experimental scaling. */
+	X                   (swscale.SWS_X),
+
+	/** Nearest neighbor scaling. */
+	POINT               (swscale.SWS_POINT),
+
+	/** Averaging area scaling. */
+	AREA                (swscale.SWS_AREA),
+
+	/** Bicubic scaling for luma and bilinear scaling for chroma. */
+	BICUBLIN            (swscale.SWS_BICUBLIN),
+
+	/** Gaussian scaling. */
+	GAUSS               (swscale.SWS_GAUSS),
+
+	/** Sinc scaling. */
+	SINC                (swscale.SWS_SINC),
+
+	/** Lanczos scaling. */
+	LANCZOS             (swscale.SWS_LANCZOS),
+
+	/** Natural bicubic spline scaling. */
+	SPLINE              (swscale.SWS_SPLINE),
+
+	/** Interpolate chroma horizontally to full resolution on output. */
+	FULL_CHROMA_INT     (swscale.SWS_FULL_CHR_H_INT),
+
+	/** Read chroma horizontally at full resolution on input. */
+	FULL_CHROMA_INP     (swscale.SWS_FULL_CHR_H_INP),
+
+	/** Use accurate rounding instead of faster approximations. */
+	ACCURATE_RND        (swscale.SWS_ACCURATE_RND),
+
+	/** Produce bit-exact output across platforms. */
+	BITEXACT            (swscale.SWS_BITEXACT),
+
+	/** Use error diffusion dithering. */
+	ERROR_DIFFUSION     (swscale.SWS_ERROR_DIFFUSION);
+
+
+	/** FFmpeg scaler flag id. */
+	private final int id;
+
+
+	/**
+	 * Create a new {@code ScalerFlag}.
+	 *
+	 * @param id FFmpeg scaler flag id.
+	 */
+	private ScalerFlag(int id) {
+		this.id = id;
+	}
+
+	/**
+	 * Get the scaler flag id defined in FFmpeg.
+	 *
+	 * @return FFmpeg scaler flag id.
+	 */
+	public final int value() {
+		return id;
+	}
+
+	/**
+	 * Get a {@code ScalerFlag} that matches to the specified FFmpeg id.
+	 *
+	 * @param id FFmpeg scaler flag id.
+	 *
+	 * @return matching scaler flag, or {@code null} if id is not defined.
+	 */
+	public static ScalerFlag byId(int id) {
+		for (ScalerFlag value : values()) {
+			if (value.id == id)
+				return value;
+		}
+
+		return null;
+	}
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2013 Alex Andres
+ *
+ * This file is part of JavaAV.
+ *
+ * JavaAV is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version (subject to the "Classpath"
+ * exception as provided in the LICENSE file that accompanied
+ * this code).
+ *
+ * JavaAV is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaAV. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.github.hoary.javaav;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Enumeration of predefined scaler configurations that trade conversion speed for
+ * picture quality.
+ *
+ * @author Alex Andres
+ */
+public enum ScalerProfile {
+
+	/** Cheapest conversion, e.g. for thumbnails and previews. */
+	PREVIEW     (ScalerFlag.FAST_BILINEAR),
+
+	/** Balanced speed and quality, the default configuration. */
+	BALANCED    (ScalerFlag.BILINEAR),
+
+	/** Sharper scaling at moderate cost. */
+	QUALITY     (ScalerFlag.BICUBIC, ScalerFlag.ACCURATE_RND),
+
+	/** Best quality with full chroma resolution, e.g. for masters and archives. */
+	ARCHIVE     (ScalerFlag.LANCZOS, ScalerFlag.ACCURATE_RND, ScalerFlag.FULL_CHROMA_INT, ScalerFlag.FULL_CHROMA_INP);
+
+
+	/** The scaler flags of this profile. */
+	private final Set<ScalerFlag> flags;
+
+
+	/**
+	 * Create a new {@code ScalerProfile}.
+	 *
+	 * @param algorithm the scaling algorithm.
+	 * @param options   additional scaler flags.
+	 */
+	private ScalerProfile(ScalerFlag algorithm, ScalerFlag... options) {
+		this.flags = Collections.unmodifiableSet(EnumSet.of(algorithm, options));
+	}
+
+	/**
+	 * Get the scaler flags of this profile.
+	 *
+	 * @return the scaler flags.
+	 */
+	public Set<ScalerFlag> getFlags() {
+		return flags;
+	}
+
+	/**
+	 * Get the combined FFmpeg scaler flags of this profile.
+	 *
+	 * @return FFmpeg scaler flags.
+	 */
+	public final int value() {
+		int value = 0;
+
+		for (ScalerFlag flag : flags)
+			value |= flag.value();
+
+		return value;
+	}
+
+}
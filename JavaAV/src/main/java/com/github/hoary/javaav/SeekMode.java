@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2013 Alex Andres
+ *
+ * This file is part of JavaAV.
+ *
+ * JavaAV is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version (subject to the "Classpath"
+ * exception as provided in the LICENSE file that accompanied
+ * this code).
+ *
+ * JavaAV is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaAV. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.hoary.javaav;
+
+/**
+ * Enumeration of seek modes used by {@link Demuxer#seek(long, SeekMode)}. The seek mode
+ * determines at which frame decoding continues after seeking.
+ *
+ * @author Alex Andres
+ */
+public enum SeekMode {
+
+	/** Seek to the keyframe that is nearest to the target timestamp. */
+	KEYFRAME,
+
+	/**
+	 * Seek to the target timestamp exactly. Decoding starts at the preceding keyframe
+	 * and all frames before the target timestamp are dropped.
+	 */
+	EXACT,
+
+	/** Seek to the keyframe at or before the target timestamp. */
+	BACKWARD,
+
+	/**
+	 * Seek to any frame near the target timestamp. The frames may not be decodable
+	 * without artifacts until the next keyframe.
+	 */
+	ANY
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2013 Alex Andres
+ *
+ * This file is part of JavaAV.
+ *
+ * JavaAV is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version (subject to the "Classpath"
+ * exception as provided in the LICENSE file that accompanied
+ * this code).
+ *
+ * JavaAV is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaAV. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.github.hoary.javaav;
+
+/**
+ * Enumeration of startup modes that define what is initialized when the native
+ * libraries are loaded, see {@link JavaAV#setStartupMode(StartupMode)}.
+ *
+ * @author Alex Andres
+ */
+public enum StartupMode {
+
+	/**
+	 * Register all formats, codecs and devices, initialize the network protocols
+	 * and index all codecs at once.
+	 */
+	EAGER,
+
+	/**
+	 * Register formats and codecs only. Devices are registered when a format is
+	 * requested that is not a file format, network protocols are initialized when a
+	 * network location is opened and codecs are indexed on the first lookup. Suited
+	 * for short-lived processes that transcode files.
+	 */
+	LAZY
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2013 Alex Andres
+ *
+ * This file is part of JavaAV.
+ *
+ * JavaAV is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version (subject to the "Classpath"
+ * exception as provided in the LICENSE file that accompanied
+ * this code).
+ *
+ * JavaAV is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaAV. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.github.hoary.javaav;
+
+/**
+ * {@code ThreadBudget} limits the number of codec threads of all encoders and
+ * decoders in this process to a number of cores. Multi-threaded coders request their
+ * threads when they are opened and return them when they are closed. Coders with
+ * automatic thread count share the budget with all other multi-threaded coders, so
+ * that running many coders in parallel does not oversubscribe the machine.
+ * <p/>
+ * By default the budget is the number of available processors. Threads are granted
+ * when a coder is opened and cannot be moved to coders opened later. Therefore each
+ * coder with automatic thread count is limited to a fair share of the budget, which
+ * is the budget divided by the number of expected concurrent coders. By default four
+ * concurrent coders are expected, so that parallel {@code Muxer}s and
+ * {@code Demuxer}s receive the same number of threads without any setup. Processes
+ * that run a single coder at a time may call {@code setExpectedCoders(1)} to grant
+ * all cores to that coder, see {@link #setExpectedCoders(int)}.
+ *
+ * @author Alex Andres
+ */
+public final class ThreadBudget {
+
+	/** The default number of coders expected to run concurrently. */
+	private static final int DEFAULT_EXPECTED_CODERS = 4;
+
+	/** The number of cores available to codec threads. */
+	private static int cores = Runtime.getRuntime().availableProcessors();
+
+	/** The number of coders expected to run concurrently. */
+	private static int expectedCoders = DEFAULT_EXPECTED_CODERS;
+
+	/** The number of opened multi-threaded coders. */
+	private static int activeCoders = 0;
+
+	/** The number of threads used by opened coders. */
+	private static int usedThreads = 0;
+
+
+	private ThreadBudget() {
+	}
+
+	/**
+	 * Set the number of cores available to codec threads of this process. Already
+	 * opened coders keep their threads.
+	 *
+	 * @param cores the number of cores.
+	 *
+	 * @throws JavaAVException if the number of cores is not positive.
+	 */
+	public static synchronized void setCores(int cores) throws JavaAVException {
+		if (cores < 1)
+			throw new JavaAVException("Invalid number of cores: " + cores);
+
+		ThreadBudget.cores = cores;
+	}
+
+	/**
+	 * Get the number of cores available to codec threads of this process.
+	 *
+	 * @return the number of cores.
+	 */
+	public static synchronized int getCores() {
+		return cores;
+	}
+
+	/**
+	 * Set the number of coders expected to run concurrently. Coders with automatic
+	 * thread count receive at most {@code cores / expectedCoders} threads, even if
+	 * fewer coders are opened yet. Default is 4.
+	 *
+	 * @param expectedCoders the number of concurrent coders.
+	 *
+	 * @throws JavaAVException if the number of coders is not positive.
+	 */
+	public static synchronized void setExpectedCoders(int expectedCoders) throws JavaAVException {
+		if (expectedCoders < 1)
+			throw new JavaAVException("Invalid number of expected coders: " + expectedCoders);
+
+		ThreadBudget.expectedCoders = expectedCoders;
+	}
+
+	/**
+	 * Get the number of coders expected to run concurrently.
+	 *
+	 * @return the number of concurrent coders.
+	 */
+	public static synchronized int getExpectedCoders() {
+		return expectedCoders;
+	}
+
+	/**
+	 * Get the number of threads used by all opened coders.
+	 *
+	 * @return the number of used threads.
+	 */
+	public static synchronized int getUsedThreads() {
+		return usedThreads;
+	}
+
+	/**
+	 * Get the number of opened multi-threaded coders.
+	 *
+	 * @return the number of multi-threaded coders.
+	 */
+	public static synchronized int getActiveCoders() {
+		return activeCoders;
+	}
+
+	/**
+	 * Request threads for a coder that is about to be opened. A coder with automatic
+	 * thread count receives the budget divided by the number of expected or opened
+	 * coders, whichever is larger, limited by the number of cores not used by other
+	 * coders. An explicit thread count is limited by the number of unused cores.
+	 * Each coder receives at least one thread.
+	 *
+	 * @param requested the requested number of threads, or 0 for automatic.
+	 *
+	 * @return the number of threads the coder may use.
+	 */
+	static synchronized int acquire(int requested) {
+		activeCoders++;
+
+		int available = Math.max(1, cores - usedThreads);
+		int threads;
+
+		if (requested > 0)
+			threads = Math.min(requested, available);
+		else
+			threads = Math.max(1, Math.min(available, cores / Math.max(expectedCoders, activeCoders)));
+
+		usedThreads += threads;
+
+		return threads;
+	}
+
+	/**
+	 * Return threads of a closed coder to the budget.
+	 *
+	 * @param threads the number of threads received with {@link #acquire(int)}.
+	 */
+	static synchronized void release(int threads) {
+		activeCoders = Math.max(0, activeCoders - 1);
+		usedThreads = Math.max(0, usedThreads - threads);
+	}
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2013 Alex Andres
+ *
+ * This file is part of JavaAV.
+ *
+ * JavaAV is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version (subject to the "Classpath"
+ * exception as provided in the LICENSE file that accompanied
+ * this code).
+ *
+ * JavaAV is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaAV. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.github.hoary.javaav;
+
+import org.bytedeco.javacpp.avcodec;
+
+/**
+ * Enumeration of threading modes used by codecs to encode or decode in parallel.
+ *
+ * @author Alex Andres
+ */
+public enum ThreadType {
+
+	/**
+	 * Decode or encode more than one frame at once. Each thread adds one frame of
+	 * delay, thus frame threading increases latency. Decoders with frame threading
+	 * must be drained at the end of input to retrieve the delayed frames.
+	 */
+	FRAME   (avcodec.AVCodecContext.FF_THREAD_FRAME),
+
+	/**
+	 * Decode or encode more than one part of a single frame at once. Does not add
+	 * delay, but scales only with the number of slices in the stream.
+	 */
+	SLICE   (avcodec.AVCodecContext.FF_THREAD_SLICE);
+
+
+	private final int id;
+
+
+	private ThreadType(int id) {
+		this.id = id;
+	}
+
+	/**
+	 * Get the thread type id defined in FFmpeg.
+	 *
+	 * @return FFmpeg thread type id.
+	 */
+	public final int value() {
+		return id;
+	}
+
+	/**
+	 * Get a {@code ThreadType} that matches to the specified FFmpeg id.
+	 *
+	 * @param id FFmpeg thread type id.
+	 *
+	 * @return matching thread type, or {@code null} if id is not defined.
+	 */
+	public static ThreadType byId(int id) {
+		for (ThreadType value : values()) {
+			if (value.id == id)
+				return value;
+		}
+
+		return null;
+	}
+
+}
@@ -21,28 +21,112 @@
 
 package com.github.hoary.javaav;
 
+import org.bytedeco.javacpp.BytePointer;
+
 import java.awt.image.BufferedImage;
 import java.nio.ByteBuffer;
 
+import static org.bytedeco.javacpp.avutil.AVFrame;
+import static org.bytedeco.javacpp.avutil.av_frame_clone;
+import static org.bytedeco.javacpp.avutil.av_pix_fmt_count_planes;
+import static org.bytedeco.javacpp.avutil.av_pix_fmt_desc_get;
+
+/**
+ * {@code VideoFrame} holds the image data of a single video frame. Packed pixel
+ * formats, e.g. BGR24, are stored in a single plane. Planar pixel formats, e.g.
+ * YUV420P or NV12, may be stored in one plane per component, each with its own line
+ * size. The line size of a plane may be larger than the visible width due to padding.
+ * <p/>
+ * Frames returned by a {@code Decoder} own reference counted buffers, which are not
+ * modified by subsequent decoding. Such frames can be passed to other threads or be
+ * queued without copying. Call {@link #release()} as soon as the image data is no
+ * longer needed to return the buffers to the decoder.
+ *
+ * @author Alex Andres
+ */
 public class VideoFrame extends MediaFrame {
 
-	private ByteBuffer data;
+	private ByteBuffer[] planes;
+
+	private int[] lineSizes;
 
 	private PixelFormat format;
 
 	private int width;
 	private int height;
 
+	/** The frame that owns the image data, if reference counted. */
+	private AVFrame avFrame;
+
 
 	public VideoFrame() {
 		this(null, 0, 0, null);
 	}
 
 	public VideoFrame(ByteBuffer data, int width, int height, PixelFormat format) {
-		this.data = data;
 		this.width = width;
 		this.height = height;
 		this.format = format;
+
+		if (data != null) {
+			planes = new ByteBuffer[] { data };
+			lineSizes = new int[] { width > 0 && height > 0 ? data.capacity() / (width * height) * width : 0 };
+		}
+		else {
+			planes = new ByteBuffer[0];
+			lineSizes = new int[0];
+		}
+	}
+
+	/**
+	 * Create a new {@code VideoFrame} with image data stored in separate planes.
+	 *
+	 * @param planes    the image planes, e.g. Y, U and V for YUV420P.
+	 * @param lineSizes the line size in bytes of each plane.
+	 * @param width     the image width.
+	 * @param height    the image height.
+	 * @param format    the pixel format of the image data.
+	 */
+	public VideoFrame(ByteBuffer[] planes, int[] lineSizes, int width, int height, PixelFormat format) {
+		if (planes.length != lineSizes.length)
+			throw new IllegalArgumentException("Number of planes and line sizes does not match.");
+
+		this.planes = planes;
+		this.lineSizes = lineSizes;
+		this.width = width;
+		this.height = height;
+		this.format = format;
+	}
+
+	/**
+	 * Create a new {@code VideoFrame} that takes ownership of the buffer references
+	 * of the specified frame.
+	 *
+	 * @param frame the frame with reference counted buffers.
+	 */
+	VideoFrame(FrameReference frame) {
+		this.avFrame = frame;
+		this.width = frame.width();
+		this.height = frame.height();
+		this.format = PixelFormat.byId(frame.format());
+
+		int planeCount = av_pix_fmt_count_planes(frame.format());
+		int chromaShift = av_pix_fmt_desc_get(frame.format()).log2_chroma_h();
+
+		planes = new ByteBuffer[planeCount];
+		lineSizes = new int[planeCount];
+
+		for (int i = 0; i < planeCount; i++) {
+			// chroma planes may be sub-sampled vertically, round up
+			int planeHeight = (i == 1 || i == 2) ? -((-height) >> chromaShift) : height;
+			int lineSize = frame.linesize(i);
+
+			BytePointer data = frame.data(i);
+			data.position(0).capacity(lineSize * planeHeight);
+
+			planes[i] = data.asByteBuffer();
+			lineSizes[i] = lineSize;
+		}
 	}
 
 	public static VideoFrame create(BufferedImage image) {
@@ -53,8 +137,45 @@ public class VideoFrame extends MediaFrame {
 		return new VideoFrame(Image.createImageBuffer(image), width, height, format);
 	}
 
+	/**
+	 * Get the image data of the first plane. For packed pixel formats this is the
+	 * whole image.
+	 *
+	 * @return the image data of the first plane, or {@code null} if empty.
+	 */
 	public ByteBuffer getData() {
-		return data;
+		return planes.length > 0 ? planes[0] : null;
+	}
+
+	/**
+	 * Get the number of image planes.
+	 *
+	 * @return the number of planes.
+	 */
+	public int getPlaneCount() {
+		return planes.length;
+	}
+
+	/**
+	 * Get the image data of the specified plane.
+	 *
+	 * @param plane the plane index.
+	 *
+	 * @return the image data of the plane.
+	 */
+	public ByteBuffer getPlane(int plane) {
+		return planes[plane];
+	}
+
+	/**
+	 * Get the line size of the specified plane.
+	 *
+	 * @param plane the plane index.
+	 *
+	 * @return the line size of the plane in bytes.
+	 */
+	public int getLineSize(int plane) {
+		return lineSizes[plane];
 	}
 
 	public int getWidth() {
@@ -73,6 +194,43 @@ public class VideoFrame extends MediaFrame {
 		return new PictureFormat(width, height, format);
 	}
 
+	/**
+	 * Create a new {@code VideoFrame} that references the same image data as this
+	 * frame. Both frames must be released independently. The image data is shared,
+	 * thus it must not be modified while referenced by more than one frame.
+	 *
+	 * @return a new reference to the image data of this frame.
+	 *
+	 * @throws JavaAVException if this frame is not reference counted or the reference
+	 * could not be created.
+	 */
+	public VideoFrame createReference() throws JavaAVException {
+		if (avFrame == null)
+			throw new JavaAVException("Could not create reference, frame is not reference counted.");
+
+		VideoFrame frame = new VideoFrame(new FrameReference(av_frame_clone(avFrame)));
+		frame.setKeyFrame(isKeyFrame());
+		frame.setTimestamp(getTimestamp());
+
+		return frame;
+	}
+
+	/**
+	 * Release the image data of this frame. After releasing, the frame is empty.
+	 * Frames that do not own reference counted buffers are not affected.
+	 */
+	@Override
+	public void release() {
+		if (avFrame == null)
+			return;
+
+		avFrame.deallocate();
+		avFrame = null;
+
+		planes = new ByteBuffer[0];
+		lineSizes = new int[0];
+	}
+
 	@Override
 	public Type getType() {
 		return Type.VIDEO;
@@ -80,7 +238,7 @@ public class VideoFrame extends MediaFrame {
 
 	@Override
 	public boolean hasFrame() {
-		return data != null && data.capacity() > 1;
+		return planes.length > 0 && planes[0] != null && planes[0].capacity() > 1;
 	}
 	
 }
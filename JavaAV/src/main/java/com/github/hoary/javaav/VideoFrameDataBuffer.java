@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2013 Alex Andres
+ *
+ * This file is part of JavaAV.
+ *
+ * JavaAV is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version (subject to the "Classpath"
+ * exception as provided in the LICENSE file that accompanied
+ * this code).
+ *
+ * JavaAV is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with JavaAV. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.github.hoary.javaav;
+
+import java.awt.image.DataBuffer;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@code DataBuffer} that views the first plane of a {@code VideoFrame} without
+ * copying its pixels. Samples are read from and written to the direct buffer of the
+ * frame, thus a {@code VideoFrameDataBuffer} must not be used after the frame has
+ * been released.
+ *
+ * @author Alex Andres
+ */
+public class VideoFrameDataBuffer extends DataBuffer {
+
+	/** The viewed frame plane. */
+	private final ByteBuffer data;
+
+
+	/**
+	 * Creates a new {@code VideoFrameDataBuffer} that views the first plane of the
+	 * specified frame.
+	 *
+	 * @param frame the frame to view.
+	 */
+	public VideoFrameDataBuffer(VideoFrame frame) {
+		super(TYPE_BYTE, frame.getPlane(0).capacity());
+
+		this.data = frame.getPlane(0);
+	}
+
+	@Override
+	public int getElem(int bank, int i) {
+		return data.get(i + offsets[bank]) & 0xFF;
+	}
+
+	@Override
+	public void setElem(int bank, int i, int val) {
+		data.put(i + offsets[bank], (byte) val);
+	}
+
+}
@@ -0,0 +1,120 @@
+package com.github.hoary.javaav;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.junit.Assert;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unit test for the asynchronous camera capture. A lavfi test source stands in
+ * for a capture device.
+ */
+public class CameraTest extends TestCase {
+
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public CameraTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(CameraTest.class);
+	}
+
+	/**
+	 * Test that a slow consumer gets the newest frame and that replaced frames are
+	 * counted as dropped.
+	 */
+	public void testLatestFrameCapture() throws Exception {
+		final AtomicLong notified = new AtomicLong();
+
+		Camera camera = new Camera("testsrc=size=320x240:rate=100", "lavfi");
+		camera.addCameraListener(new CameraListener() {
+
+			@Override
+			public void frameCaptured(Camera camera, VideoFrame frame) {
+				notified.incrementAndGet();
+			}
+		});
+		camera.open(320, 240, 100);
+		camera.startCapture();
+
+		try {
+			long lastTimestamp = -1;
+
+			for (int i = 0; i < 3; i++) {
+				// consume slower than the source produces
+				Thread.sleep(100);
+
+				VideoFrame frame = camera.takeFrame(1000);
+
+				Assert.assertNotNull(frame);
+				Assert.assertEquals(320, frame.getWidth());
+				Assert.assertEquals(240, frame.getHeight());
+				Assert.assertTrue(frame.getTimestamp() > lastTimestamp);
+
+				lastTimestamp = frame.getTimestamp();
+				frame.release();
+			}
+
+			Assert.assertTrue(camera.getDroppedFrameCount() > 0);
+			Assert.assertTrue(camera.getCapturedFrameCount() >= 3 + camera.getDroppedFrameCount());
+			Assert.assertTrue(notified.get() >= camera.getCapturedFrameCount());
+
+			Assert.assertNotNull(camera.getImage(null));
+		}
+		finally {
+			camera.close();
+		}
+
+		Assert.assertFalse(camera.isCapturing());
+		Assert.assertNull(camera.takeFrame(10));
+	}
+
+	/**
+	 * Test that a failing listener neither stops capturing nor blocks consumers.
+	 */
+	public void testFailingListener() throws Exception {
+		final AtomicLong notified = new AtomicLong();
+
+		Camera camera = new Camera("testsrc=size=320x240:rate=100", "lavfi");
+		camera.addCameraListener(new CameraListener() {
+
+			@Override
+			public void frameCaptured(Camera camera, VideoFrame frame) {
+				notified.incrementAndGet();
+
+				throw new IllegalStateException("Listener failure");
+			}
+		});
+		camera.open(320, 240, 100);
+		camera.startCapture();
+
+		try {
+			for (int i = 0; i < 3; i++) {
+				VideoFrame frame = camera.takeFrame(1000);
+
+				Assert.assertNotNull(frame);
+				frame.release();
+			}
+
+			Assert.assertTrue(notified.get() >= 3);
+			Assert.assertTrue(camera.isCapturing());
+		}
+		finally {
+			camera.close();
+		}
+
+		Assert.assertFalse(camera.isCapturing());
+		Assert.assertNull(camera.takeFrame(0));
+	}
+
+}
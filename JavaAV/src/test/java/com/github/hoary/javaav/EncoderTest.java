@@ -80,4 +80,52 @@ public class EncoderTest extends TestCase {
 
 		encoder.close();
 	}
+
+	/**
+	 * Test scaler flags changed while encoding.
+	 */
+	public void testScalerFlags() {
+		VideoFrame frame = null;
+		try {
+			frame = VideoFrame.create(ImageIO.read(new File("src/test/resources/test.png")));
+		}
+		catch (IOException e) {
+			Assert.fail("Image could not be loaded.");
+		}
+
+		Encoder encoder = null;
+		try {
+			encoder = new Encoder(CodecID.H264);
+			encoder.setMediaType(MediaType.VIDEO);
+			encoder.setPixelFormat(PixelFormat.YUV420P);
+			encoder.setImageWidth(320);
+			encoder.setImageHeight(240);
+			encoder.setBitrate(400000);
+			encoder.setFramerate(25);
+			encoder.setScalerProfile(ScalerProfile.PREVIEW);
+
+			// returned flags must not change the encoder configuration
+			encoder.getScalerFlags().clear();
+			Assert.assertEquals(ScalerProfile.PREVIEW.getFlags(), encoder.getScalerFlags());
+
+			encoder.open(null);
+
+			for (int i = 0; i < 10; i++)
+				encoder.encodeVideo(frame);
+
+			encoder.setScalerProfile(ScalerProfile.ARCHIVE);
+
+			for (int i = 0; i < 10; i++)
+				encoder.encodeVideo(frame);
+		}
+		catch (JavaAVException e) {
+			Assert.fail("Could not encode video frame: " + e.getMessage());
+		}
+		finally {
+			if (encoder != null)
+				encoder.close();
+		}
+
+		Assert.assertEquals(ScalerProfile.ARCHIVE.getFlags(), encoder.getScalerFlags());
+	}
 }
@@ -0,0 +1,249 @@
+package com.github.hoary.javaav;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.junit.Assert;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Unit test for image conversion.
+ */
+public class ImageTest extends TestCase {
+
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public ImageTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(ImageTest.class);
+	}
+
+	/**
+	 * Test copying rows with equal strides.
+	 */
+	public void testCopyEqualStride() {
+		byte[] src = new byte[] { 1, 2, 3, 4, 5, 6, -7, -8 };
+		byte[] dst = new byte[8];
+
+		Image.copy(ByteBuffer.wrap(src), 4, ByteBuffer.wrap(dst), 4, false);
+
+		Assert.assertArrayEquals(src, dst);
+	}
+
+	/**
+	 * Test copying rows into a destination with padded rows and back.
+	 */
+	public void testCopyPaddedStride() {
+		short[] src = new short[] { 1, 2, 3, 4, 5, 6 };
+		short[] padded = new short[10];
+		short[] dst = new short[6];
+
+		Image.copy(ShortBuffer.wrap(src), 3, ShortBuffer.wrap(padded), 5, true);
+
+		Assert.assertArrayEquals(new short[] { 1, 2, 3, 0, 0, 4, 5, 6, 0, 0 }, padded);
+
+		Image.copy(ShortBuffer.wrap(padded), 5, ShortBuffer.wrap(dst), 3, true);
+
+		Assert.assertArrayEquals(src, dst);
+	}
+
+	/**
+	 * Test copying starting at buffer positions and ending at buffer limits.
+	 */
+	public void testCopyPositionAndLimit() {
+		int[] src = new int[] { 9, 9, 1, 2, 3, 4, 5, 6 };
+		int[] dst = new int[6];
+
+		IntBuffer srcBuf = IntBuffer.wrap(src, 2, 6);
+		IntBuffer dstBuf = IntBuffer.wrap(dst);
+		dstBuf.limit(4);
+
+		Image.copy(srcBuf, 2, dstBuf, 2);
+
+		Assert.assertArrayEquals(new int[] { 1, 2, 3, 4, 0, 0 }, dst);
+		Assert.assertEquals(8, srcBuf.limit());
+
+		float[] srcFloat = new float[] { 1, 2, 3, 4 };
+		float[] dstFloat = new float[6];
+		Image.copy(FloatBuffer.wrap(srcFloat), 2, FloatBuffer.wrap(dstFloat), 3);
+
+		Assert.assertArrayEquals(new float[] { 1, 2, 0, 3, 4, 0 }, dstFloat, 0);
+
+		double[] srcDouble = new double[] { 1, 2, 0, 3, 4, 0 };
+		double[] dstDouble = new double[4];
+		Image.copy(DoubleBuffer.wrap(srcDouble), 3, DoubleBuffer.wrap(dstDouble), 2);
+
+		Assert.assertArrayEquals(new double[] { 1, 2, 3, 4 }, dstDouble, 0);
+	}
+
+	/**
+	 * Test converting pixel data into an image and back.
+	 */
+	public void testImageRoundTrip() {
+		int width = 5;
+		int height = 3;
+		ByteBuffer data = ByteBuffer.allocateDirect(width * height * 3);
+
+		for (int i = 0; i < data.capacity(); i++)
+			data.put(i, (byte) (i * 17));
+
+		BufferedImage image = Image.createImage(data, width, height, BufferedImage.TYPE_3BYTE_BGR);
+		byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+
+		for (int i = 0; i < pixels.length; i++)
+			Assert.assertEquals((byte) (i * 17), pixels[i]);
+
+		ByteBuffer buffer = Image.createImageBuffer(image);
+
+		Assert.assertEquals(0, buffer.position());
+		Assert.assertEquals(data.capacity(), buffer.capacity());
+
+		for (int i = 0; i < buffer.capacity(); i++)
+			Assert.assertEquals((byte) (i * 17), buffer.get(i));
+	}
+
+	/**
+	 * Test copying frames with padded rows into a reused image.
+	 */
+	public void testImageReuse() {
+		int width = 4;
+		int height = 2;
+		int lineSize = 16;
+		ByteBuffer data = ByteBuffer.allocateDirect(lineSize * height);
+
+		for (int i = 0; i < data.capacity(); i++)
+			data.put(i, (byte) i);
+
+		VideoFrame frame = new VideoFrame(new ByteBuffer[] { data }, new int[] { lineSize }, width, height, PixelFormat.BGR24);
+
+		BufferedImage image = Image.createImage(frame, BufferedImage.TYPE_3BYTE_BGR, null);
+		byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width * 3; x++)
+				Assert.assertEquals((byte) (y * lineSize + x), pixels[y * width * 3 + x]);
+		}
+
+		Assert.assertSame(image, Image.createImage(frame, BufferedImage.TYPE_3BYTE_BGR, image));
+		Assert.assertNotSame(image, Image.createImage(frame, BufferedImage.TYPE_INT_RGB, image));
+	}
+
+	/**
+	 * Test copying frames with padded rows into a short-backed image.
+	 */
+	public void testImagePaddedShortRows() {
+		int width = 3;
+		int height = 2;
+		int lineSize = 8;
+		ByteBuffer data = ByteBuffer.allocateDirect(lineSize * height);
+		ShortBuffer samples = data.asShortBuffer();
+
+		for (int i = 0; i < samples.capacity(); i++)
+			samples.put(i, (short) (i + 1));
+
+		VideoFrame frame = new VideoFrame(new ByteBuffer[] { data }, new int[] { lineSize }, width, height, PixelFormat.GRAY16);
+
+		BufferedImage image = Image.createImage(frame, BufferedImage.TYPE_USHORT_GRAY);
+		short[] pixels = ((DataBufferUShort) image.getRaster().getDataBuffer()).getData();
+
+		Assert.assertArrayEquals(new short[] { 1, 2, 3, 5, 6, 7 }, pixels);
+	}
+
+	/**
+	 * Test converting a short-backed image into a frame and back.
+	 */
+	public void testShortImageRoundTrip() {
+		int width = 5;
+		int height = 3;
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_USHORT_GRAY);
+		short[] pixels = ((DataBufferUShort) image.getRaster().getDataBuffer()).getData();
+
+		for (int i = 0; i < pixels.length; i++)
+			pixels[i] = (short) (i * 1000 + 1);
+
+		ByteBuffer buffer = Image.createImageBuffer(image);
+
+		Assert.assertEquals(width * height * 2, buffer.capacity());
+
+		for (int i = 0; i < pixels.length; i++)
+			Assert.assertEquals(pixels[i], buffer.getShort(i * 2));
+
+		VideoFrame frame = VideoFrame.create(image);
+		BufferedImage copy = Image.createImage(frame, BufferedImage.TYPE_USHORT_GRAY);
+
+		Assert.assertArrayEquals(pixels, ((DataBufferUShort) copy.getRaster().getDataBuffer()).getData());
+	}
+
+	/**
+	 * Test converting an int-backed image into a frame and back.
+	 */
+	public void testIntImageRoundTrip() {
+		int width = 5;
+		int height = 3;
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+		for (int i = 0; i < pixels.length; i++)
+			pixels[i] = i * 0x010203 + 0x102030;
+
+		ByteBuffer buffer = Image.createImageBuffer(image);
+
+		Assert.assertEquals(width * height * 4, buffer.capacity());
+
+		for (int i = 0; i < pixels.length; i++)
+			Assert.assertEquals(pixels[i], buffer.getInt(i * 4));
+
+		VideoFrame frame = VideoFrame.create(image);
+
+		Assert.assertEquals(PixelFormat._0RGB, frame.getPixelFormat());
+
+		BufferedImage copy = Image.createImage(frame, BufferedImage.TYPE_INT_RGB);
+
+		Assert.assertArrayEquals(pixels, ((DataBufferInt) copy.getRaster().getDataBuffer()).getData());
+	}
+
+	/**
+	 * Test viewing frame data as an image without copying.
+	 */
+	public void testImageView() throws JavaAVException {
+		int width = 2;
+		int height = 2;
+		int lineSize = 8;
+		ByteBuffer data = ByteBuffer.allocateDirect(lineSize * height);
+
+		// blue, green, red pixel components
+		data.put(lineSize + 3, (byte) 0x10);
+		data.put(lineSize + 4, (byte) 0x20);
+		data.put(lineSize + 5, (byte) 0x30);
+
+		VideoFrame frame = new VideoFrame(new ByteBuffer[] { data }, new int[] { lineSize }, width, height, PixelFormat.BGR24);
+		BufferedImage image = Image.createImageView(frame);
+
+		Assert.assertEquals(0xFF302010, image.getRGB(1, 1));
+
+		image.setRGB(0, 1, 0x405060);
+
+		Assert.assertEquals(0x60, data.get(lineSize));
+		Assert.assertEquals(0x50, data.get(lineSize + 1));
+		Assert.assertEquals(0x40, data.get(lineSize + 2));
+	}
+
+}
@@ -0,0 +1,187 @@
+package com.github.hoary.javaav;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.Loader;
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.javacpp.avutil;
+import org.junit.Assert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.bytedeco.javacpp.avutil.AV_LOG_DEBUG;
+import static org.bytedeco.javacpp.avutil.AV_LOG_INFO;
+
+/**
+ * Unit test for the log callback.
+ */
+public class LogCallbackTest extends TestCase {
+
+	/** Argument list placeholder, test messages have no conversions. */
+	private Pointer args;
+
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public LogCallbackTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(LogCallbackTest.class);
+	}
+
+	@Override
+	protected void setUp() {
+		Loader.load(avutil.class);
+
+		args = new BytePointer(64);
+	}
+
+	@Override
+	protected void tearDown() {
+		args.deallocate();
+	}
+
+	/**
+	 * Test logging on the calling thread.
+	 */
+	public void testSynchronous() {
+		RecordingCallback callback = new RecordingCallback();
+
+		callback.call(null, AV_LOG_INFO, "first\n", args);
+		callback.call(null, AV_LOG_DEBUG, "filtered\n", args);
+		callback.call(null, AV_LOG_INFO, "second\n", args);
+
+		Assert.assertEquals(2, callback.messages.size());
+		Assert.assertEquals("first", callback.messages.get(0));
+		Assert.assertEquals("second", callback.messages.get(1));
+		Assert.assertEquals(Thread.currentThread(), callback.threads.get(0));
+		Assert.assertEquals(0, callback.getDroppedRecordCount());
+
+		callback.close();
+	}
+
+	/**
+	 * Test queued messages and dropped messages while the log thread is blocked.
+	 */
+	public void testQueue() throws InterruptedException {
+		RecordingCallback callback = new RecordingCallback(2);
+		callback.block();
+
+		// wait until the log thread has taken the first message
+		callback.call(null, AV_LOG_INFO, "message 0\n", args);
+		Assert.assertTrue(callback.entered.await(5, TimeUnit.SECONDS));
+
+		for (int i = 1; i < 5; i++)
+			callback.call(null, AV_LOG_INFO, "message " + i + "\n", args);
+
+		Assert.assertEquals(2, callback.getDroppedRecordCount());
+
+		callback.unblock();
+		callback.close();
+
+		Assert.assertEquals(3, callback.messages.size());
+
+		for (int i = 0; i < 3; i++) {
+			Assert.assertEquals("message " + i, callback.messages.get(i));
+			Assert.assertNotSame(Thread.currentThread(), callback.threads.get(i));
+		}
+	}
+
+	/**
+	 * Test that closing flushes all queued messages and that messages logged after
+	 * closing start a new log thread.
+	 */
+	public void testClose() {
+		RecordingCallback callback = new RecordingCallback(16);
+
+		// closing without a log thread has no effect
+		callback.close();
+
+		for (int i = 0; i < 10; i++)
+			callback.call(null, AV_LOG_INFO, "message " + i + "\n", args);
+
+		callback.close();
+
+		Assert.assertEquals(10, callback.messages.size());
+
+		callback.call(null, AV_LOG_INFO, "message 10\n", args);
+		callback.close();
+
+		Assert.assertEquals(11, callback.messages.size());
+		Assert.assertEquals("message 10", callback.messages.get(10));
+		Assert.assertNotSame(callback.threads.get(0), callback.threads.get(10));
+		Assert.assertEquals(0, callback.getDroppedRecordCount());
+	}
+
+
+
+	/**
+	 * Log callback that records messages instead of passing them to SLF4J.
+	 */
+	private static class RecordingCallback extends LogCallback {
+
+		final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+		final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+
+		final CountDownLatch entered = new CountDownLatch(1);
+
+		private volatile CountDownLatch blocker;
+
+
+		RecordingCallback() {
+			super();
+		}
+
+		RecordingCallback(int queueCapacity) {
+			super(queueCapacity);
+		}
+
+		void block() {
+			blocker = new CountDownLatch(1);
+		}
+
+		void unblock() {
+			blocker.countDown();
+		}
+
+		@Override
+		boolean isEnabled(int level) {
+			return true;
+		}
+
+		@Override
+		void log(int level, String message) {
+			messages.add(message);
+			threads.add(Thread.currentThread());
+
+			entered.countDown();
+
+			CountDownLatch latch = blocker;
+
+			if (latch != null) {
+				try {
+					latch.await();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+	}
+
+}
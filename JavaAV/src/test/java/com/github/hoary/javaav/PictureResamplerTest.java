@@ -0,0 +1,115 @@
+package com.github.hoary.javaav;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.avcodec.AVPicture;
+import org.junit.Assert;
+
+import static org.bytedeco.javacpp.avcodec.avpicture_alloc;
+import static org.bytedeco.javacpp.avcodec.avpicture_free;
+import static org.bytedeco.javacpp.avcodec.avpicture_get_size;
+
+/**
+ * Unit test for the picture resampler.
+ */
+public class PictureResamplerTest extends TestCase {
+
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public PictureResamplerTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(PictureResamplerTest.class);
+	}
+
+	/**
+	 * Test that converting in bands gives the same output as a single thread.
+	 */
+	public void testBandedConversion() throws JavaAVException {
+		// heights that are not a multiple of the band count and chroma subsampling
+		int[] heights = { 128, 250, 257 };
+
+		for (ScalerProfile profile : ScalerProfile.values()) {
+			for (int height : heights) {
+				PictureFormat srcFormat = new PictureFormat(96, height, PixelFormat.YUV420P);
+				PictureFormat dstFormat = new PictureFormat(96, height, PixelFormat.BGR24);
+
+				byte[] expected = convert(srcFormat, dstFormat, profile, 1);
+
+				for (int threads = 2; threads <= 4; threads++) {
+					Assert.assertArrayEquals(profile + ", height " + height + ", threads " + threads,
+							expected, convert(srcFormat, dstFormat, profile, threads));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test that format conversions are split into bands where possible.
+	 */
+	public void testBandCount() throws JavaAVException {
+		PictureResampler resampler = new PictureResampler();
+		resampler.setThreadCount(3);
+		resampler.open(new PictureFormat(96, 250, PixelFormat.YUV420P), new PictureFormat(96, 250, PixelFormat.BGR24));
+
+		Assert.assertEquals(3, resampler.getBandCount());
+
+		resampler.close();
+
+		// odd heights interpolate chroma rows, thus a single thread is used
+		resampler.open(new PictureFormat(96, 257, PixelFormat.YUV420P), new PictureFormat(96, 257, PixelFormat.BGR24));
+
+		Assert.assertEquals(1, resampler.getBandCount());
+
+		resampler.close();
+	}
+
+	private byte[] convert(PictureFormat srcFormat, PictureFormat dstFormat, ScalerProfile profile, int threads) throws JavaAVException {
+		int width = srcFormat.getWidth();
+		int height = srcFormat.getHeight();
+		int srcPixelFormat = srcFormat.getFormat().value();
+		int dstPixelFormat = dstFormat.getFormat().value();
+
+		AVPicture src = new AVPicture();
+		AVPicture dst = new AVPicture();
+
+		Assert.assertTrue(avpicture_alloc(src, srcPixelFormat, width, height) >= 0);
+		Assert.assertTrue(avpicture_alloc(dst, dstPixelFormat, width, height) >= 0);
+
+		// a pattern that differs in each row of all planes
+		for (int plane = 0; plane < 3; plane++) {
+			int planeHeight = plane == 0 ? height : (height + 1) / 2;
+			int lineSize = src.linesize(plane);
+			BytePointer data = src.data(plane);
+
+			for (int i = 0; i < planeHeight * lineSize; i++)
+				data.put(i, (byte) (i / lineSize * 7 + i % lineSize * 3 + plane * 50));
+		}
+
+		PictureResampler resampler = new PictureResampler();
+		resampler.setProfile(profile);
+		resampler.setThreadCount(threads);
+		resampler.open(srcFormat, dstFormat);
+		resampler.resample(src, dst);
+		resampler.close();
+
+		byte[] output = new byte[avpicture_get_size(dstPixelFormat, width, height)];
+		dst.data(0).get(output);
+
+		avpicture_free(src);
+		avpicture_free(dst);
+
+		return output;
+	}
+
+}
@@ -0,0 +1,130 @@
+package com.github.hoary.javaav;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.junit.Assert;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Unit test for the ring buffer.
+ */
+public class RingBufferTest extends TestCase {
+
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public RingBufferTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(RingBufferTest.class);
+	}
+
+	/**
+	 * Test writing and reading across the end of the buffer.
+	 */
+	public void testWrapAround() throws Exception {
+		RingBuffer buffer = new RingBuffer(8, 2);
+
+		Assert.assertEquals(6, buffer.write(0, new byte[] { 0, 1, 2, 3, 4, 5 }));
+		Assert.assertEquals(6, buffer.available(0));
+		Assert.assertEquals(0, buffer.available(1));
+
+		byte[] data = new byte[4];
+		Assert.assertEquals(4, buffer.read(0, data));
+		Assert.assertArrayEquals(new byte[] { 0, 1, 2, 3 }, data);
+
+		ByteBuffer input = ByteBuffer.allocateDirect(8);
+		input.put(new byte[] { 6, 7, 8, 9, 10, 11, 12, 13 }).flip();
+
+		// only six bytes are free
+		Assert.assertEquals(6, buffer.write(0, input));
+		Assert.assertEquals(2, input.remaining());
+		Assert.assertEquals(0, buffer.remaining(0));
+
+		ByteBuffer output = ByteBuffer.allocate(16);
+		Assert.assertEquals(8, buffer.read(0, output));
+		output.flip();
+
+		for (int i = 4; i < 12; i++)
+			Assert.assertEquals(i, output.get());
+
+		Assert.assertEquals(0, buffer.available(0));
+	}
+
+	/**
+	 * Test that clear discards readable data.
+	 */
+	public void testClear() throws Exception {
+		RingBuffer buffer = new RingBuffer(4, 1);
+		buffer.write(0, new byte[] { 1, 2, 3 });
+		buffer.clear();
+
+		Assert.assertEquals(0, buffer.available());
+		Assert.assertEquals(4, buffer.remaining(0));
+		Assert.assertEquals(0, buffer.read(0, new byte[4]));
+	}
+
+	/**
+	 * Test a producer and a consumer thread exchanging data.
+	 */
+	public void testProducerConsumer() throws Exception {
+		final int total = 1000000;
+		final RingBuffer buffer = new RingBuffer(1024, 1);
+
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				ByteBuffer data = ByteBuffer.allocate(100);
+				int value = 0;
+
+				while (value < total) {
+					data.clear();
+
+					while (data.hasRemaining() && value + data.position() < total)
+						data.put((byte) (value + data.position()));
+
+					data.flip();
+
+					while (data.hasRemaining()) {
+						if (buffer.write(0, data) == 0)
+							Thread.yield();
+					}
+
+					value += data.limit();
+				}
+			}
+		});
+		producer.start();
+
+		ByteBuffer data = ByteBuffer.allocate(333);
+		int value = 0;
+
+		while (value < total) {
+			data.clear();
+
+			if (buffer.read(0, data) == 0)
+				Thread.yield();
+
+			data.flip();
+
+			while (data.hasRemaining()) {
+				Assert.assertEquals((byte) value, data.get());
+				value++;
+			}
+		}
+
+		producer.join();
+
+		Assert.assertEquals(0, buffer.available());
+	}
+
+}
@@ -0,0 +1,58 @@
+package com.github.hoary.javaav;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.bytedeco.javacpp.swscale.SwsContext;
+import org.junit.Assert;
+
+/**
+ * Unit test for the scaler context cache.
+ */
+public class ScalerContextCacheTest extends TestCase {
+
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public ScalerContextCacheTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(ScalerContextCacheTest.class);
+	}
+
+	/**
+	 * Test that idle contexts are bounded in total and reused by equal keys.
+	 */
+	public void testBoundedCache() throws JavaAVException {
+		ScalerContextCache.clear();
+
+		int format = PixelFormat.YUV420P.value();
+		int flags = ScalerFlag.BILINEAR.value();
+
+		for (int i = 0; i < 40; i++) {
+			ScalerContextCache.Key key = new ScalerContextCache.Key(16, 16 + 2 * i, format, 16, 16, format, flags);
+			ScalerContextCache.release(key, ScalerContextCache.acquire(key));
+		}
+
+		Assert.assertEquals(32, ScalerContextCache.getIdleCount());
+
+		// the most recently used key is still cached
+		ScalerContextCache.Key key = new ScalerContextCache.Key(16, 16 + 2 * 39, format, 16, 16, format, flags);
+		SwsContext context = ScalerContextCache.acquire(key);
+
+		Assert.assertEquals(31, ScalerContextCache.getIdleCount());
+
+		ScalerContextCache.release(key, context);
+		ScalerContextCache.clear();
+
+		Assert.assertEquals(0, ScalerContextCache.getIdleCount());
+	}
+
+}
@@ -0,0 +1,152 @@
+package com.github.hoary.javaav;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.junit.Assert;
+
+/**
+ * Unit test for the codec thread budget.
+ */
+public class ThreadBudgetTest extends TestCase {
+
+	private int cores;
+
+	private int expectedCoders;
+
+
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public ThreadBudgetTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(ThreadBudgetTest.class);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		cores = ThreadBudget.getCores();
+		expectedCoders = ThreadBudget.getExpectedCoders();
+
+		ThreadBudget.setCores(8);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		ThreadBudget.setCores(cores);
+		ThreadBudget.setExpectedCoders(expectedCoders);
+	}
+
+	/**
+	 * Test that automatic coders receive a fair share without any setup.
+	 */
+	public void testFairShare() {
+		int[] threads = new int[4];
+
+		for (int i = 0; i < threads.length; i++)
+			threads[i] = ThreadBudget.acquire(0);
+
+		for (int count : threads)
+			Assert.assertEquals(2, count);
+
+		Assert.assertEquals(8, ThreadBudget.getUsedThreads());
+		Assert.assertEquals(4, ThreadBudget.getActiveCoders());
+
+		// the budget is exhausted, each coder receives at least one thread
+		int extra = ThreadBudget.acquire(0);
+
+		Assert.assertEquals(1, extra);
+
+		ThreadBudget.release(extra);
+
+		for (int count : threads)
+			ThreadBudget.release(count);
+
+		Assert.assertEquals(0, ThreadBudget.getUsedThreads());
+		Assert.assertEquals(0, ThreadBudget.getActiveCoders());
+	}
+
+	/**
+	 * Test that the fair share follows the number of expected coders.
+	 */
+	public void testExpectedCoders() throws JavaAVException {
+		ThreadBudget.setExpectedCoders(2);
+
+		int first = ThreadBudget.acquire(0);
+		int second = ThreadBudget.acquire(0);
+
+		Assert.assertEquals(4, first);
+		Assert.assertEquals(4, second);
+
+		ThreadBudget.release(first);
+		ThreadBudget.release(second);
+
+		// a single coder may use all cores
+		ThreadBudget.setExpectedCoders(1);
+
+		int single = ThreadBudget.acquire(0);
+
+		Assert.assertEquals(8, single);
+
+		ThreadBudget.release(single);
+
+		Assert.assertEquals(0, ThreadBudget.getUsedThreads());
+		Assert.assertEquals(0, ThreadBudget.getActiveCoders());
+	}
+
+	/**
+	 * Test that automatic decoders share the budget like encoders.
+	 */
+	public void testDecoders() throws JavaAVException {
+		Decoder[] decoders = new Decoder[4];
+
+		for (int i = 0; i < decoders.length; i++) {
+			decoders[i] = new Decoder(CodecID.H264);
+			decoders[i].setThreadCount(0);
+			decoders[i].open(null);
+		}
+
+		for (Decoder decoder : decoders)
+			Assert.assertEquals(2, decoder.getThreadCount());
+
+		Assert.assertEquals(8, ThreadBudget.getUsedThreads());
+
+		for (Decoder decoder : decoders) {
+			decoder.close();
+
+			Assert.assertEquals(0, decoder.getThreadCount());
+		}
+
+		Assert.assertEquals(0, ThreadBudget.getUsedThreads());
+		Assert.assertEquals(0, ThreadBudget.getActiveCoders());
+	}
+
+	/**
+	 * Test explicit thread counts.
+	 */
+	public void testAcquireRelease() {
+		int automatic = ThreadBudget.acquire(0);
+
+		Assert.assertEquals(2, automatic);
+
+		// explicit thread counts are limited by unused cores
+		int explicit = ThreadBudget.acquire(16);
+
+		Assert.assertEquals(6, explicit);
+
+		ThreadBudget.release(automatic);
+		ThreadBudget.release(explicit);
+
+		Assert.assertEquals(0, ThreadBudget.getUsedThreads());
+		Assert.assertEquals(0, ThreadBudget.getActiveCoders());
+	}
+
+}